@@ -1,11 +1,51 @@
 package comeon;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.kohsuke.args4j.Argument;
 import org.kohsuke.args4j.Option;
 
+import comeon.core.UploadPolicies;
+
 final class Arguments {
   @Option(name = "--rescue", required = false, usage = "args.rescue")
   private Boolean rescue = false;
   
+  @Option(name = "--chunk-size", required = false, metaVar = "MB", usage = "args.chunksize")
+  private Integer chunkSize = 4;
+  
+  @Option(name = "--async-transport", required = false, usage = "args.asynctransport")
+  private Boolean asyncTransport = false;
+  
+  @Option(name = "--upload-order", required = false, usage = "args.uploadorder")
+  private UploadPolicies uploadOrder = UploadPolicies.Queued;
+  
+  @Option(name = "--headless", required = false, usage = "args.headless")
+  private Boolean headless = false;
+  
+  @Option(name = "--wiki", required = false, metaVar = "NAME", usage = "args.wiki")
+  private String wiki;
+  
+  @Option(name = "--template", required = false, metaVar = "FILE", usage = "args.template")
+  private String template;
+  
+  @Option(name = "--template-charset", required = false, metaVar = "CHARSET", usage = "args.templatecharset")
+  private String templateCharset = "UTF-8";
+  
+  @Option(name = "--metadata", required = false, metaVar = "CSV", usage = "args.metadata")
+  private File metadata;
+  
+  @Option(name = "--metadata-picture", required = false, metaVar = "EXPRESSION", usage = "args.metadatapicture")
+  private String metadataPicture;
+  
+  @Option(name = "--metadata-column", required = false, metaVar = "COLUMN", usage = "args.metadatacolumn")
+  private String metadataColumn;
+  
+  @Argument(required = false, multiValued = true, metaVar = "PICTURES", usage = "args.pictures")
+  private List<File> pictures = new ArrayList<>();
+  
   public Boolean getRescue() {
     return rescue;
   }
@@ -13,4 +53,92 @@ final class Arguments {
   public void setRescue(final Boolean rescue) {
     this.rescue = rescue;
   }
+  
+  public Integer getChunkSize() {
+    return chunkSize;
+  }
+  
+  public void setChunkSize(final Integer chunkSize) {
+    this.chunkSize = chunkSize;
+  }
+  
+  public Boolean getAsyncTransport() {
+    return asyncTransport;
+  }
+  
+  public void setAsyncTransport(final Boolean asyncTransport) {
+    this.asyncTransport = asyncTransport;
+  }
+  
+  public UploadPolicies getUploadOrder() {
+    return uploadOrder;
+  }
+  
+  public void setUploadOrder(final UploadPolicies uploadOrder) {
+    this.uploadOrder = uploadOrder;
+  }
+  
+  public Boolean getHeadless() {
+    return headless;
+  }
+  
+  public void setHeadless(final Boolean headless) {
+    this.headless = headless;
+  }
+  
+  public String getWiki() {
+    return wiki;
+  }
+  
+  public void setWiki(final String wiki) {
+    this.wiki = wiki;
+  }
+  
+  public String getTemplate() {
+    return template;
+  }
+  
+  public void setTemplate(final String template) {
+    this.template = template;
+  }
+  
+  public String getTemplateCharset() {
+    return templateCharset;
+  }
+  
+  public void setTemplateCharset(final String templateCharset) {
+    this.templateCharset = templateCharset;
+  }
+  
+  public File getMetadata() {
+    return metadata;
+  }
+  
+  public void setMetadata(final File metadata) {
+    this.metadata = metadata;
+  }
+  
+  public String getMetadataPicture() {
+    return metadataPicture;
+  }
+  
+  public void setMetadataPicture(final String metadataPicture) {
+    this.metadataPicture = metadataPicture;
+  }
+  
+  public String getMetadataColumn() {
+    return metadataColumn;
+  }
+  
+  public void setMetadataColumn(final String metadataColumn) {
+    this.metadataColumn = metadataColumn;
+  }
+  
+  public List<File> getPictures() {
+    return pictures;
+  }
+  
+  public void setPictures(final List<File> pictures) {
+    this.pictures = pictures;
+  }
 }
@@ -0,0 +1,183 @@
+package comeon;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import au.com.bytecode.opencsv.CSVParser;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.eventbus.EventBus;
+import com.google.inject.Injector;
+
+import comeon.core.Core;
+import comeon.core.extmetadata.CsvMetadataSource;
+import comeon.core.extmetadata.ExternalMetadataSource;
+import comeon.core.extmetadata.KeyTransformer;
+import comeon.core.extmetadata.NullMetadataSource;
+import comeon.model.Template;
+import comeon.model.Wiki;
+import comeon.templates.Templates;
+import comeon.templates.velocity.VelocityTemplate;
+import comeon.wikis.Wikis;
+
+/**
+ * Reads, renders and uploads pictures without any user interface, each picture being uploaded as soon as it is read.
+ * Progress is printed on the standard output by a {@link ProgressPrinter}, logs go to the standard error.
+ */
+final class BatchMode {
+  private static final Logger LOGGER = LoggerFactory.getLogger(BatchMode.class);
+
+  static final int STATUS_SUCCESS = 0;
+
+  /**
+   * Some pictures could not be read or uploaded.
+   */
+  static final int STATUS_FAILURES = 1;
+
+  /**
+   * Nothing was uploaded because of the arguments or the preferences.
+   */
+  static final int STATUS_ERROR = 2;
+
+  private static final FileFilter PICTURES_FILTER = new FileFilter() {
+    @Override
+    public boolean accept(final File file) {
+      return file.isFile() && isPicture(file);
+    }
+  };
+
+  private final Arguments arguments;
+
+  private final Injector injector;
+
+  private final EventBus bus;
+
+  BatchMode(final Arguments arguments, final Injector injector, final EventBus bus) {
+    this.arguments = arguments;
+    this.injector = injector;
+    this.bus = bus;
+  }
+
+  /**
+   * @return the exit status.
+   */
+  int run() {
+    final File[] files;
+    final Template template;
+    final ExternalMetadataSource<?> metadataSource;
+    try {
+      files = listPictures();
+      template = getTemplate();
+      metadataSource = getMetadataSource();
+      if (arguments.getWiki() != null) {
+        final Wikis wikis = injector.getInstance(Wikis.class);
+        // Only for this run, the user interface keeps the wiki it had.
+        wikis.useWiki(getWiki(wikis));
+      }
+    } catch (final IllegalArgumentException | IOException e) {
+      LOGGER.error(e.getMessage());
+      return STATUS_ERROR;
+    }
+    final ProgressPrinter printer = new ProgressPrinter(System.out, files.length);
+    bus.register(printer);
+    injector.getInstance(Core.class).pipelinePictures(files, template, metadataSource);
+    return printer.printSummary();
+  }
+
+  /**
+   * Arguments are pictures, folders whose pictures are all uploaded, or text files listing one picture per line.
+   */
+  private File[] listPictures() throws IOException {
+    final List<File> pictures = new ArrayList<>();
+    for (final File argument : arguments.getPictures()) {
+      if (argument.isDirectory()) {
+        final File[] children = argument.listFiles(PICTURES_FILTER);
+        if (children == null) {
+          throw new IOException("Can't list " + argument);
+        }
+        Arrays.sort(children);
+        pictures.addAll(Arrays.asList(children));
+      } else if (!argument.isFile()) {
+        throw new IllegalArgumentException("No such file: " + argument);
+      } else if (isPicture(argument)) {
+        pictures.add(argument);
+      } else {
+        for (final String line : Files.readAllLines(argument.toPath(), Charsets.UTF_8)) {
+          if (!line.trim().isEmpty()) {
+            pictures.add(new File(line.trim()));
+          }
+        }
+      }
+    }
+    if (pictures.isEmpty()) {
+      throw new IllegalArgumentException("No pictures to upload");
+    }
+    return pictures.toArray(new File[pictures.size()]);
+  }
+
+  private static boolean isPicture(final File file) {
+    final String name = file.getName().toLowerCase(Locale.ENGLISH);
+    return name.endsWith(".jpg") || name.endsWith(".jpeg");
+  }
+
+  /**
+   * @return the template of this name from the preferences, or else the Velocity template in this file.
+   */
+  private Template getTemplate() throws IOException {
+    final String nameOrFile = arguments.getTemplate();
+    if (Strings.isNullOrEmpty(nameOrFile)) {
+      throw new IllegalArgumentException("--template is required");
+    }
+    for (final Template template : injector.getInstance(Templates.class).getTemplates()) {
+      if (template.getName().equals(nameOrFile)) {
+        return template;
+      }
+    }
+    final Path file = Paths.get(nameOrFile).toAbsolutePath();
+    if (!Files.isRegularFile(file)) {
+      throw new IllegalArgumentException("No template named or at " + nameOrFile);
+    }
+    final Charset charset = Charset.forName(arguments.getTemplateCharset());
+    return new Template(file.getFileName().toString(), "", file, charset, Template.read(file, charset),
+        injector.getInstance(VelocityTemplate.class));
+  }
+
+  private ExternalMetadataSource<?> getMetadataSource() {
+    final File metadata = arguments.getMetadata();
+    if (metadata == null) {
+      return new NullMetadataSource();
+    } else if (!metadata.isFile()) {
+      throw new IllegalArgumentException("No such file: " + metadata);
+    } else if (arguments.getMetadataPicture() == null || arguments.getMetadataColumn() == null) {
+      throw new IllegalArgumentException("--metadata requires --metadata-picture and --metadata-column");
+    }
+    return new CsvMetadataSource(arguments.getMetadataPicture(), arguments.getMetadataColumn(), metadata.toPath(),
+        CSVParser.DEFAULT_SEPARATOR, CSVParser.DEFAULT_QUOTE_CHARACTER, CSVParser.DEFAULT_ESCAPE_CHARACTER, 0,
+        CSVParser.DEFAULT_STRICT_QUOTES, CSVParser.DEFAULT_IGNORE_LEADING_WHITESPACE, Charsets.UTF_8,
+        new KeyTransformer(".*", "${0}"));
+  }
+
+  private Wiki getWiki(final Wikis wikis) {
+    final List<String> names = new ArrayList<>();
+    for (final Wiki wiki : wikis.getWikis()) {
+      if (wiki.getName().equals(arguments.getWiki())) {
+        return wiki;
+      }
+      names.add(wiki.getName());
+    }
+    throw new IllegalArgumentException("No wiki named " + arguments.getWiki() + " among " + names);
+  }
+}
@@ -3,8 +3,10 @@ package comeon;
 import java.awt.SplashScreen;
 import java.io.IOException;
 import java.io.StringWriter;
+import java.text.MessageFormat;
 import java.util.Arrays;
 import java.util.List;
+import java.util.ResourceBundle;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.prefs.BackingStoreException;
@@ -13,10 +15,8 @@ import java.util.prefs.Preferences;
 
 import javax.swing.SwingUtilities;
 
-import org.apache.http.conn.ClientConnectionManager;
 import org.apache.http.impl.client.AbstractHttpClient;
 import org.apache.http.impl.client.DefaultHttpClient;
-import org.apache.http.impl.conn.PoolingClientConnectionManager;
 import org.apache.http.params.CoreProtocolPNames;
 import org.kohsuke.args4j.CmdLineException;
 import org.kohsuke.args4j.CmdLineParser;
@@ -25,18 +25,32 @@ import org.slf4j.LoggerFactory;
 import org.slf4j.bridge.SLF4JBridgeHandler;
 
 import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
 import com.google.common.eventbus.EventBus;
 import com.google.inject.AbstractModule;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
+import com.google.inject.Module;
 import com.google.inject.multibindings.MapBinder;
 import com.google.inject.multibindings.Multibinder;
+import com.google.inject.name.Names;
 import comeon.core.Core;
 import comeon.core.CoreImpl;
+import comeon.core.FileMetadataCache;
+import comeon.core.FileThumbnailStore;
+import comeon.core.FileUploadJournal;
+import comeon.core.MetadataCache;
 import comeon.core.PicturesBatchFactory;
 import comeon.core.RealPicturesBatchFactory;
+import comeon.core.ThumbnailStore;
+import comeon.core.UploadJournal;
+import comeon.core.UploadPolicy;
 import comeon.core.WithPreferences;
+import comeon.mediawiki.AsyncMediaWikiFactory;
+import comeon.mediawiki.BandwidthLimiter;
+import comeon.mediawiki.ConnectionPool;
 import comeon.mediawiki.MediaWikiFactory;
+import comeon.mediawiki.RealMediaWikiFactory;
 import comeon.model.TemplateKind;
 import comeon.model.processors.DefaultPostProcessor;
 import comeon.model.processors.GpsPreProcessor;
@@ -48,29 +62,12 @@ import comeon.templates.Templates;
 import comeon.templates.TemplatesImpl;
 import comeon.templates.velocity.VelocityTemplate;
 import comeon.ui.UI;
+import comeon.ui.UIModule;
 import comeon.ui.actions.AbortAction;
-import comeon.ui.actions.AboutAction;
 import comeon.ui.actions.AddPicturesAction;
-import comeon.ui.actions.HelpManualAction;
-import comeon.ui.actions.PreferencesAction;
-import comeon.ui.actions.QuitAction;
+import comeon.ui.actions.ReadingMonitor;
 import comeon.ui.actions.TransferMonitor;
 import comeon.ui.actions.UploadPicturesAction;
-import comeon.ui.menu.EditMenu;
-import comeon.ui.menu.FileMenu;
-import comeon.ui.menu.HelpMenu;
-import comeon.ui.menu.MenuBar;
-import comeon.ui.preferences.main.PreferencesController;
-import comeon.ui.preferences.main.PreferencesDialog;
-import comeon.ui.preferences.main.PreferencesModel;
-import comeon.ui.preferences.main.PreferencesPanel;
-import comeon.ui.preferences.main.TemplatesListPanel;
-import comeon.ui.preferences.main.WikisListPanel;
-import comeon.ui.preferences.templates.TemplateSubController;
-import comeon.ui.preferences.templates.TemplateSubPanel;
-import comeon.ui.preferences.wikis.WikiSubController;
-import comeon.ui.preferences.wikis.WikiSubPanel;
-import comeon.ui.toolbar.Toolbar;
 import comeon.wikis.Wikis;
 import comeon.wikis.WikisImpl;
 
@@ -78,19 +75,29 @@ public final class ComeOn extends AbstractModule {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(ComeOn.class);
   
+  /**
+   * Messages shared by the user interface and the headless mode, which must not load Swing classes.
+   */
+  static final ResourceBundle BUNDLE = ResourceBundle.getBundle("comeon.ui.comeon");
+  
+  private static final long BYTES_PER_MEGABYTE = 1024 * 1024;
+  
   private final EventBus bus;
 
   private final Preferences preferences;
 
-  public ComeOn() {
+  private final Arguments arguments;
+
+  public ComeOn(final Arguments arguments) {
+    this.arguments = arguments;
     this.bus = new EventBus();
     this.preferences = Preferences.userNodeForPackage(ComeOn.class);
   }
   
-  private DefaultHttpClient configureHttpClient() {
-    final ClientConnectionManager connectionManager = new PoolingClientConnectionManager();
-    final DefaultHttpClient client = new DefaultHttpClient(connectionManager);
-    final String userAgentString = UI.BUNDLE.getString("useragent");
+  private DefaultHttpClient configureHttpClient(final ConnectionPool connectionPool) {
+    final DefaultHttpClient client = new DefaultHttpClient(connectionPool.getConnectionManager());
+    client.setKeepAliveStrategy(connectionPool.getKeepAliveStrategy());
+    final String userAgentString = BUNDLE.getString("useragent");
     client.getParams().setParameter(CoreProtocolPNames.USER_AGENT, userAgentString);
     LOGGER.info("ComeOn! uses \"{}\" as User-Agent", userAgentString);
     return client;
@@ -102,7 +109,18 @@ public final class ComeOn extends AbstractModule {
     bind(Templates.class).to(TemplatesImpl.class);
     bind(Wikis.class).to(WikisImpl.class);
     bind(PicturesBatchFactory.class).to(RealPicturesBatchFactory.class);
-    bind(MediaWikiFactory.class);
+    bind(MetadataCache.class).to(FileMetadataCache.class);
+    bind(ThumbnailStore.class).to(FileThumbnailStore.class);
+    bind(UploadJournal.class).to(FileUploadJournal.class);
+    if (arguments.getAsyncTransport()) {
+      bind(MediaWikiFactory.class).to(AsyncMediaWikiFactory.class);
+    } else {
+      bind(MediaWikiFactory.class).to(RealMediaWikiFactory.class);
+    }
+    bindConstant().annotatedWith(Names.named(MediaWikiFactory.CHUNK_SIZE)).to(
+        arguments.getChunkSize() * BYTES_PER_MEGABYTE);
+    bindConstant().annotatedWith(Names.named(MediaWikiFactory.UPLOAD_COMMENT)).to(
+        MessageFormat.format(BUNDLE.getString("upload.comment"), BUNDLE.getString("comeon")));
     
     Multibinder<PreProcessor> preProcessorsBinder = Multibinder.newSetBinder(binder(), PreProcessor.class);
     preProcessorsBinder.addBinding().to(GpsPreProcessor.class);
@@ -117,39 +135,11 @@ public final class ComeOn extends AbstractModule {
     MapBinder<String, TemplateKind> templateKinds = MapBinder.newMapBinder(binder(), String.class, TemplateKind.class);
     templateKinds.addBinding(VelocityTemplate.class.getSimpleName()).to(VelocityTemplate.class);
     
-    bind(AbstractHttpClient.class).toInstance(configureHttpClient());
-    
-    bind(UI.class);
-    
-    bind(PreferencesDialog.class);
-    bind(PreferencesController.class);
-    bind(PreferencesModel.class);
-    bind(PreferencesPanel.class);
-    bind(TemplatesListPanel.class);
-    bind(WikisListPanel.class);
-    
-    bind(TemplateSubController.class);
-    bind(TemplateSubPanel.class);
-    
-    bind(WikiSubController.class);
-    bind(WikiSubPanel.class);
-    
-    bind(MenuBar.class);
-    bind(FileMenu.class);
-    bind(EditMenu.class);
-    bind(HelpMenu.class);
-    
-    bind(Toolbar.class);
-    
-    bind(TransferMonitor.class);
-    
-    bind(AddPicturesAction.class);
-    bind(UploadPicturesAction.class);
-    bind(AboutAction.class);
-    bind(PreferencesAction.class);
-    bind(QuitAction.class);
-    bind(HelpManualAction.class);
-    bind(AbortAction.class);
+    final ConnectionPool connectionPool = new ConnectionPool();
+    bind(ConnectionPool.class).toInstance(connectionPool);
+    bind(AbstractHttpClient.class).toInstance(configureHttpClient(connectionPool));
+    bind(BandwidthLimiter.class).toInstance(new BandwidthLimiter(preferences));
+    bind(UploadPolicy.class).toInstance(arguments.getUploadOrder());
     
     bind(EventBus.class).toInstance(bus);
   }
@@ -169,7 +159,7 @@ public final class ComeOn extends AbstractModule {
     try {
       Preferences.importPreferences(WikisImpl.class.getResourceAsStream("defaultPreferences.xml"));
     } catch (final InvalidPreferencesFormatException | IOException e) {
-      LOGGER.warn(UI.BUNDLE.getString("error.preferences.cantloaddefault.message"), e);
+      LOGGER.warn(BUNDLE.getString("error.preferences.cantloaddefault.message"), e);
     }
   }
   
@@ -181,12 +171,18 @@ public final class ComeOn extends AbstractModule {
     final CmdLineParser parser = new CmdLineParser(arguments);
     try {
       parser.parseArgument(args);
-      final ComeOn comeOn = new ComeOn();
+      if (arguments.getHeadless()) {
+        System.setProperty("java.awt.headless", Boolean.TRUE.toString());
+      }
+      final ComeOn comeOn = new ComeOn(arguments);
       if (arguments.getRescue()) {
         comeOn.resetPreferences();
       } else {
         comeOn.checkPreferences();
       }
+      if (arguments.getHeadless()) {
+        System.exit(new BatchMode(arguments, comeOn.createInjector(), comeOn.bus).run());
+      }
       final UI ui = assemble(comeOn);
       SwingUtilities.invokeLater(new Runnable() {
         @Override
@@ -200,18 +196,25 @@ public final class ComeOn extends AbstractModule {
       });
     } catch (final CmdLineException e) {
       final StringWriter usageBuffer = new StringWriter();
-      usageBuffer.append(UI.BUNDLE.getString("comeon"));
+      usageBuffer.append(BUNDLE.getString("comeon"));
       usageBuffer.append(" – ");
-      usageBuffer.append(UI.BUNDLE.getString("args.usage"));
+      usageBuffer.append(BUNDLE.getString("args.usage"));
       usageBuffer.append('\n');
-      parser.printUsage(usageBuffer, UI.BUNDLE);
+      parser.printUsage(usageBuffer, BUNDLE);
       System.err.println(usageBuffer.toString());
       usageBuffer.close();
+      if (arguments.getHeadless()) {
+        System.exit(BatchMode.STATUS_ERROR);
+      }
     }
   }
 
-  private static UI assemble(final ComeOn comeOn) throws BackingStoreException {
-    final Injector injector = Guice.createInjector(comeOn);
+  /**
+   * @param modules
+   *          installed on top of the core bindings.
+   */
+  private Injector createInjector(final Module... modules) throws BackingStoreException {
+    final Injector injector = Guice.createInjector(Lists.asList(this, modules));
     final List<WithPreferences> withPrefs = Arrays.asList(
         injector.getInstance(Templates.class),
         injector.getInstance(Wikis.class)
@@ -219,13 +222,19 @@ public final class ComeOn extends AbstractModule {
     for (final WithPreferences withPref : withPrefs) {
       withPref.loadPreferences();
     }
+    bus.register(injector.getInstance(Core.class));
+    return injector;
+  }
+
+  private static UI assemble(final ComeOn comeOn) throws BackingStoreException {
+    final Injector injector = comeOn.createInjector(new UIModule());
     final UI ui = injector.getInstance(UI.class);
     comeOn.bus.register(ui);
-    comeOn.bus.register(injector.getInstance(Core.class));
     comeOn.bus.register(injector.getInstance(AddPicturesAction.class));
     comeOn.bus.register(injector.getInstance(UploadPicturesAction.class));
     comeOn.bus.register(injector.getInstance(AbortAction.class));
     comeOn.bus.register(injector.getInstance(TransferMonitor.class));
+    comeOn.bus.register(injector.getInstance(ReadingMonitor.class));
     return ui;
   }
 
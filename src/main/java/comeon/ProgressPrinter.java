@@ -0,0 +1,104 @@
+package comeon;
+
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Joiner;
+import com.google.common.eventbus.Subscribe;
+
+import comeon.core.events.PictureDuplicateEvent;
+import comeon.core.events.PictureTransferDoneEvent;
+import comeon.core.events.PictureTransferFailedEvent;
+import comeon.core.events.PictureTransferStartingEvent;
+import comeon.core.events.PicturesAddedEvent;
+import comeon.model.Picture;
+import comeon.model.Picture.State;
+
+/**
+ * Prints the progress of a headless batch, one tab-separated line per step: what happened, to which file and any
+ * detail. The last line is {@code done} followed by the number of pictures uploaded, skipped because the journal has
+ * them as uploaded, already on the wiki, failed and unreadable.
+ */
+final class ProgressPrinter {
+  private static final Joiner FIELDS = Joiner.on('\t').useForNull("");
+
+  private static final CharMatcher SEPARATORS = CharMatcher.anyOf("\t\r\n");
+
+  private final PrintStream out;
+
+  private final int total;
+
+  private final AtomicInteger read;
+
+  private final AtomicInteger uploaded;
+
+  private final AtomicInteger skipped;
+
+  private final AtomicInteger duplicates;
+
+  private final AtomicInteger failed;
+
+  ProgressPrinter(final PrintStream out, final int total) {
+    this.out = out;
+    this.total = total;
+    this.read = new AtomicInteger();
+    this.uploaded = new AtomicInteger();
+    this.skipped = new AtomicInteger();
+    this.duplicates = new AtomicInteger();
+    this.failed = new AtomicInteger();
+  }
+
+  @Subscribe
+  public void picturesAdded(final PicturesAddedEvent event) {
+    read.addAndGet(event.getPictures().size());
+    for (final Picture picture : event.getPictures()) {
+      if (State.UploadedSuccessfully.equals(picture.getState())) {
+        skipped.incrementAndGet();
+        print("skipped", picture.getFileName());
+      } else {
+        print("read", picture.getFileName());
+      }
+    }
+  }
+
+  @Subscribe
+  public void transferStarting(final PictureTransferStartingEvent event) {
+    print("uploading", event.getPicture().getFileName());
+  }
+
+  @Subscribe
+  public void transferDone(final PictureTransferDoneEvent event) {
+    uploaded.incrementAndGet();
+    print("uploaded", event.getPicture().getFileName());
+  }
+
+  @Subscribe
+  public void transferFailed(final PictureTransferFailedEvent event) {
+    failed.incrementAndGet();
+    print("failed", event.getPicture().getFileName(), event.getCause().getLocalizedMessage());
+  }
+
+  @Subscribe
+  public void duplicateFound(final PictureDuplicateEvent event) {
+    duplicates.incrementAndGet();
+    print("duplicate", event.getPicture().getFileName(), Joiner.on(',').join(event.getExistingFiles()));
+  }
+
+  /**
+   * @return the exit status of the batch.
+   */
+  int printSummary() {
+    final int unread = total - read.get();
+    print("done", uploaded, skipped, duplicates, failed, unread);
+    return failed.get() + unread > 0 ? BatchMode.STATUS_FAILURES : BatchMode.STATUS_SUCCESS;
+  }
+
+  private synchronized void print(final Object... fields) {
+    final Object[] cleaned = new Object[fields.length];
+    for (int i = 0; i < fields.length; i++) {
+      cleaned[i] = fields[i] == null ? null : SEPARATORS.replaceFrom(fields[i].toString(), ' ');
+    }
+    out.println(FIELDS.join(cleaned));
+  }
+}
@@ -0,0 +1,76 @@
+package comeon.core;
+
+import org.apache.commons.beanutils.DynaBean;
+import org.apache.commons.beanutils.DynaClass;
+
+/**
+ * Tag values of one metadata directory, stored in schema order. Like a {@link org.apache.commons.beanutils.LazyDynaBean}
+ * with {@code returnNull} set, unknown properties read as {@code null} so that templates can refer to tags that a
+ * given picture lacks.
+ */
+final class CompactDynaBean implements DynaBean {
+  private final DirectorySchema schema;
+
+  private final String[] values;
+
+  CompactDynaBean(final DirectorySchema schema, final String[] values) {
+    if (values.length != schema.size()) {
+      throw new IllegalArgumentException("Expected " + schema.size() + " values, got " + values.length);
+    }
+    this.schema = schema;
+    this.values = values;
+  }
+
+  @Override
+  public DynaClass getDynaClass() {
+    return schema;
+  }
+
+  @Override
+  public Object get(final String name) {
+    final int index = schema.indexOf(name);
+    return index < 0 ? null : values[index];
+  }
+
+  @Override
+  public void set(final String name, final Object value) {
+    final int index = schema.indexOf(name);
+    if (index < 0) {
+      throw new IllegalArgumentException("No property " + name + " in " + schema.getName());
+    }
+    values[index] = value == null ? null : MetadataSchemas.intern(value.toString());
+  }
+
+  /**
+   * Tags are neither mapped nor indexed, so reads of mapped or indexed values find nothing.
+   */
+  @Override
+  public boolean contains(final String name, final String key) {
+    return false;
+  }
+
+  @Override
+  public Object get(final String name, final int index) {
+    return null;
+  }
+
+  @Override
+  public Object get(final String name, final String key) {
+    return null;
+  }
+
+  @Override
+  public void remove(final String name, final String key) {
+    throw new IllegalArgumentException("Non-mapped property for '" + name + "(" + key + ")'");
+  }
+
+  @Override
+  public void set(final String name, final int index, final Object value) {
+    throw new IllegalArgumentException("Non-indexed property for '" + name + "[" + index + "]'");
+  }
+
+  @Override
+  public void set(final String name, final String key, final Object value) {
+    throw new IllegalArgumentException("Non-mapped property for '" + name + "(" + key + ")'");
+  }
+}
@@ -13,6 +13,8 @@ public interface Core {
 
   void addPictures(File[] files, Template defautTemplate, ExternalMetadataSource<?> externalMetadataSource);
 
+  void abortReading();
+
   void removePicture(Picture picture);
   
   List<Picture> getPictures();
@@ -21,5 +23,10 @@ public interface Core {
   
   void uploadPictures();
 
+  /**
+   * Uploads each picture as soon as it has been read and its template rendered, without waiting for the others.
+   */
+  void pipelinePictures(File[] files, Template defautTemplate, ExternalMetadataSource<?> externalMetadataSource);
+
   void abort();
 }
\ No newline at end of file
@@ -5,27 +5,44 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import comeon.core.events.PictureDuplicateEvent;
+import comeon.core.events.PictureRemovedEvent;
 import comeon.core.events.PictureTransferDoneEvent;
 import comeon.core.events.PictureTransferFailedEvent;
 import comeon.core.events.PictureTransferStartingEvent;
+import comeon.core.events.PicturesAddedEvent;
+import comeon.core.events.ReadingDoneEvent;
+import comeon.core.events.ReadingProgressEvent;
+import comeon.core.events.ReadingStartingEvent;
 import comeon.core.events.UploadDoneEvent;
+import comeon.core.events.UploadQueuedEvent;
 import comeon.core.events.UploadStartingEvent;
 import comeon.core.extmetadata.ExternalMetadataSource;
+import comeon.mediawiki.CorruptedUploadException;
 import comeon.mediawiki.FailedLoginException;
 import comeon.mediawiki.FailedLogoutException;
 import comeon.mediawiki.FailedUploadException;
@@ -36,8 +53,6 @@ import comeon.model.Picture;
 import comeon.model.Picture.State;
 import comeon.model.Template;
 import comeon.model.Wiki;
-import comeon.ui.actions.PictureRemovedEvent;
-import comeon.ui.actions.PicturesAddedEvent;
 import comeon.wikis.ActiveWikiChangeEvent;
 import comeon.wikis.Wikis;
 
@@ -45,9 +60,14 @@ import comeon.wikis.Wikis;
 public final class CoreImpl implements Core {
   private static final Logger LOGGER = LoggerFactory.getLogger(CoreImpl.class);
 
+  /**
+   * How long exiting waits for the wiki to close the session.
+   */
+  private static final long LOGOUT_TIMEOUT = TimeUnit.SECONDS.toMillis(5);
+
   private final List<Picture> pictures;
 
-  private final ExecutorService pool;
+  private final UploadScheduler uploadScheduler;
 
   private final Wikis wikis;
 
@@ -57,37 +77,154 @@ public final class CoreImpl implements Core {
   
   private final MediaWikiFactory mediaWikiFactory;
   
+  private final ThumbnailGenerator thumbnailGenerator;
+  
+  private final UploadJournal journal;
+  
+  private final RetryPolicy retryPolicy;
+  
+  private final DuplicateFinder duplicateFinder;
+  
+  private final PreflightCheck preflightCheck;
+  
+  /**
+   * Queues retries once their delay has elapsed, so that waiting uploads hold no upload slot.
+   */
+  private final ScheduledExecutorService retryTimer;
+  
+  /**
+   * Replays the journal when the active wiki changes, away from whoever posted the change since it may hash files.
+   */
+  private final ExecutorService journalReplayer;
+  
   private final Queue<Future<Void>> currentTasks;
 
-  private MediaWiki activeMediaWiki;
+  private final Queue<PicturesBatch> currentBatches;
+
+  private final Queue<Pipeline> currentPipelines;
+
+  private volatile MediaWiki activeMediaWiki;
 
   @Inject
-  private CoreImpl(final Wikis wikis, final ExecutorService pool, final EventBus bus,
-      final PicturesBatchFactory picturesBatchFactory, final MediaWikiFactory mediaWikiFactory) {
-    this.pictures = new ArrayList<>();
+  private CoreImpl(final Wikis wikis, final UploadScheduler uploadScheduler, final EventBus bus,
+      final PicturesBatchFactory picturesBatchFactory, final MediaWikiFactory mediaWikiFactory,
+      final ThumbnailGenerator thumbnailGenerator, final UploadJournal journal, final RetryPolicy retryPolicy,
+      final DuplicateFinder duplicateFinder, final PreflightCheck preflightCheck) {
+    this.pictures = new CopyOnWriteArrayList<>();
     this.currentTasks = new ConcurrentLinkedQueue<>();
-    this.pool = pool;
+    this.currentBatches = new ConcurrentLinkedQueue<>();
+    this.currentPipelines = new ConcurrentLinkedQueue<>();
+    this.uploadScheduler = uploadScheduler;
     this.bus = bus;
     this.wikis = wikis;
     this.picturesBatchFactory = picturesBatchFactory;
     this.mediaWikiFactory = mediaWikiFactory;
+    this.thumbnailGenerator = thumbnailGenerator;
+    this.journal = journal;
+    this.retryPolicy = retryPolicy;
+    this.duplicateFinder = duplicateFinder;
+    this.preflightCheck = preflightCheck;
+    this.retryTimer = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+        .setNameFormat("upload-retry").setDaemon(true).build());
+    this.journalReplayer = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+        .setNameFormat("journal-replay").setDaemon(true).build());
     final Wiki activeWiki = wikis.getActiveWiki();
     if (activeWiki == null) {
       throw new IllegalStateException("There must be one active wiki.");
     } else {
       this.activeMediaWiki = mediaWikiFactory.build(activeWiki);
     }
+    // Sessions outlive batches, so that the next one doesn't pay for a new login.
+    Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+      @Override
+      public void run() {
+        logout();
+      }
+    }, "logout"));
+  }
+
+  /**
+   * Logs out on a thread of its own, so that a wiki that doesn't answer can't hold exiting back.
+   */
+  private void logout() {
+    final MediaWiki mediaWiki = activeMediaWiki;
+    final Thread thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          mediaWiki.logout();
+        } catch (final FailedLogoutException e) {
+          LOGGER.warn("Couldn't close Mediawiki session properly", e);
+        }
+      }
+    }, "logout-" + mediaWiki.getName());
+    thread.setDaemon(true);
+    thread.start();
+    try {
+      thread.join(LOGOUT_TIMEOUT);
+      if (thread.isAlive()) {
+        LOGGER.warn("{} didn't close the session within {} ms, leaving it open", mediaWiki.getName(), LOGOUT_TIMEOUT);
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
   }
 
   @Override
   public void addPictures(final File[] files, final Template defautTemplate,
       final ExternalMetadataSource<?> externalMetadataSource) {
     externalMetadataSource.loadMetadata();
-    final PicturesBatch picturesReader = picturesBatchFactory.makePicturesBatch(files, defautTemplate,
-        externalMetadataSource);
-    final List<Picture> newPictures = picturesReader.readFiles(wikis.getActiveWiki().getUser()).getPictures();
-    this.pictures.addAll(newPictures);
-    bus.post(new PicturesAddedEvent(Collections.unmodifiableList(newPictures)));
+    readPictures(picturesBatchFactory.makePicturesBatch(files, defautTemplate, externalMetadataSource), files.length,
+        null);
+  }
+
+  /**
+   * @param next
+   *          if not null, gets the pictures once they are known to the core.
+   */
+  private void readPictures(final PicturesBatch picturesReader, final int fileCount,
+      final PicturesBatch.Listener next) {
+    currentBatches.add(picturesReader);
+    bus.post(new ReadingStartingEvent(fileCount));
+    try {
+      picturesReader.readFiles(wikis.getActiveWiki().getUser(), new PicturesBatch.Listener() {
+        @Override
+        public void picturesRead(final List<Picture> newPictures, final int processed, final int total) {
+          if (!newPictures.isEmpty()) {
+            final String wikiUrl = wikis.getActiveWiki().getUrl();
+            for (final Picture picture : newPictures) {
+              replayJournal(wikiUrl, picture);
+            }
+            pictures.addAll(newPictures);
+            bus.post(new PicturesAddedEvent(Collections.unmodifiableList(newPictures)));
+            for (final Picture picture : newPictures) {
+              if (!picture.hasThumbnail()) {
+                thumbnailGenerator.generate(picture);
+              }
+            }
+          }
+          bus.post(new ReadingProgressEvent(processed, total));
+          if (next != null) {
+            next.picturesRead(newPictures, processed, total);
+          }
+        }
+      });
+    } finally {
+      currentBatches.remove(picturesReader);
+      bus.post(new ReadingDoneEvent(picturesReader.isCancelled()));
+    }
+  }
+
+  private void replayJournal(final String wikiUrl, final Picture picture) {
+    final State journaledState = journal.replay(wikiUrl, picture);
+    picture.setState(journaledState == null ? State.ToBeUploaded : journaledState);
+  }
+
+  @Override
+  public void abortReading() {
+    for (final PicturesBatch batch : currentBatches) {
+      batch.cancel();
+    }
   }
 
   @Override
@@ -102,7 +239,7 @@ public final class CoreImpl implements Core {
   }
 
   private boolean shouldUpload(final Picture picture) {
-    return !State.UploadedSuccessfully.equals(picture.getState());
+    return !State.UploadedSuccessfully.equals(picture.getState()) && !State.Duplicate.equals(picture.getState());
   }
 
   @Override
@@ -120,32 +257,177 @@ public final class CoreImpl implements Core {
     return picturesToBeUploaded;
   }
 
+  /**
+   * Makes one attempt at uploading a picture each time it runs. Failed attempts that may be retried are queued again
+   * in the upload scheduler after their delay, the future returned by {@link #submit()} completes with the last one.
+   */
   private class UploadTask implements Callable<Void> {
     private final Logger taskLogger = LoggerFactory.getLogger(UploadTask.class);
     
     private final Picture picture;
     
-    public UploadTask(final Picture picture) {
+    private final String sha1;
+    
+    private final String wikiUrl;
+    
+    private final ProgressListenerAdapter progressListener;
+    
+    private final SettableFuture<Void> outcome;
+    
+    private int attempt;
+    
+    private boolean sessionRenewed;
+    
+    private boolean renewSession;
+    
+    /**
+     * The queued attempt, or the delay before it. Guarded by this task.
+     */
+    private Future<?> next;
+    
+    /**
+     * Whether an attempt is under way. Guarded by this task.
+     */
+    private boolean running;
+    
+    /**
+     * Why the previous attempt failed. Guarded by this task.
+     */
+    private Exception lastFailure;
+    
+    /**
+     * @param sha1
+     *          hexadecimal SHA-1 of the picture's file, or {@code null} if it isn't known.
+     */
+    public UploadTask(final Picture picture, final String sha1, final String wikiUrl) {
       this.picture = picture;
+      this.sha1 = sha1;
+      this.wikiUrl = wikiUrl;
+      this.progressListener = new ProgressListenerAdapter();
+      this.outcome = SettableFuture.create();
+      this.attempt = 1;
+    }
+    
+    /**
+     * @return the outcome of the upload, cancelling it cancels the attempt under way or the next one.
+     */
+    public Future<Void> submit() {
+      outcome.addListener(new Runnable() {
+        @Override
+        public void run() {
+          if (outcome.isCancelled()) {
+            cancelled();
+          }
+        }
+      }, MoreExecutors.sameThreadExecutor());
+      queue();
+      return outcome;
+    }
+    
+    private synchronized void queue() {
+      if (!outcome.isCancelled()) {
+        next = uploadScheduler.submit(picture, this);
+      }
     }
     
     @Override
     public Void call() throws Exception {
-      try {
+      synchronized (this) {
+        if (outcome.isCancelled()) {
+          return null;
+        }
+        running = true;
+      }
+      if (attempt == 1) {
         taskLogger.debug("Starting upload of {}", picture.getFileName());
-        final ProgressListenerAdapter progressListener = new ProgressListenerAdapter();
         bus.post(new PictureTransferStartingEvent(picture, progressListener));
-        activeMediaWiki.upload(picture, progressListener);
+        journal.record(wikiUrl, picture, UploadJournal.Outcome.Started, sha1);
+      }
+      try {
+        if (renewSession) {
+          activeMediaWiki.login();
+          renewSession = false;
+        }
+        final long start = System.nanoTime();
+        final String sentHash = activeMediaWiki.upload(picture, sha1, progressListener);
+        uploadScheduler.uploadSucceeded(picture.getFile().length(), System.nanoTime() - start);
+        journal.record(wikiUrl, picture, UploadJournal.Outcome.Uploaded, sentHash);
         picture.setState(State.UploadedSuccessfully);
         bus.post(new PictureTransferDoneEvent(picture));
         taskLogger.debug("Finished upload of {}", picture.getFileName());
+        outcome.set(null);
+      } catch (final CorruptedUploadException e) {
+        // Sending the file again would only add a revision to the damaged one.
+        fail(e);
       } catch (final NotLoggedInException | FailedLoginException | FailedUploadException | IOException e) {
-        taskLogger.warn("Failed upload of {}", picture.getFileName(), e);
-        picture.setState(State.FailedUpload);
-        bus.post(new PictureTransferFailedEvent(picture, e));
+        uploadScheduler.uploadFailed(e);
+        final long delay;
+        if (!sessionRenewed && retryPolicy.isSessionLost(e)) {
+          sessionRenewed = true;
+          renewSession = true;
+          delay = 0;
+        } else {
+          delay = retryPolicy.getDelay(attempt, e);
+        }
+        if (delay == RetryPolicy.NO_RETRY) {
+          fail(e);
+        } else {
+          retryLater(e, delay);
+        }
       }
       return null;
     }
+
+    private void retryLater(final Exception e, final long delay) {
+      synchronized (this) {
+        if (!outcome.isCancelled()) {
+          taskLogger.info("Attempt {} to upload {} failed, trying again in {} ms", attempt, picture.getFileName(),
+              delay, e);
+          attempt++;
+          lastFailure = e;
+          running = false;
+          next = retryTimer.schedule(new Runnable() {
+            @Override
+            public void run() {
+              queue();
+            }
+          }, delay, TimeUnit.MILLISECONDS);
+          return;
+        }
+      }
+      fail(e);
+    }
+
+    /**
+     * Interrupts the attempt under way, which then fails on its own, or fails the upload if it was waiting to retry.
+     */
+    private void cancelled() {
+      final Future<?> pending;
+      final Exception failure;
+      synchronized (this) {
+        pending = next;
+        failure = running ? null : lastFailure;
+      }
+      if (pending != null) {
+        pending.cancel(true);
+      }
+      if (failure != null) {
+        fail(failure);
+      }
+    }
+
+    private void fail(final Exception e) {
+      taskLogger.warn("Failed upload of {}", picture.getFileName(), e);
+      if (e instanceof CorruptedUploadException) {
+        journal.record(wikiUrl, picture, UploadJournal.Outcome.Corrupted, ((CorruptedUploadException) e).getSentHash());
+        picture.setState(State.FailedVerification);
+      } else {
+        journal.record(wikiUrl, picture, UploadJournal.Outcome.Failed, sha1);
+        picture.setState(State.FailedUpload);
+      }
+      bus.post(new PictureTransferFailedEvent(picture, e));
+      outcome.set(null);
+    }
     
     @Override
     public boolean equals(final Object obj) {
@@ -167,41 +449,153 @@ public final class CoreImpl implements Core {
     final List<Picture> picturesToBeUploaded = this.filterPicturesToBeUploaded();
     LOGGER.info("Uploading {} pictures to {}.", picturesToBeUploaded.size(), activeMediaWiki.getName());
     bus.post(new UploadStartingEvent(picturesToBeUploaded));
-    final List<Future<Void>> tasks = new ArrayList<>(picturesToBeUploaded.size());
-    for (final Picture picture : picturesToBeUploaded) {
-      final UploadTask task = new UploadTask(picture);
-      final Future<Void> taskResult = pool.submit(task);
-      tasks.add(taskResult);
+    activeMediaWiki.prepare();
+    final String wikiUrl = wikis.getActiveWiki().getUrl();
+    try {
+      awaitUploads(submitUploads(picturesToBeUploaded, wikiUrl));
+    } catch (final CancellationException e) {
+      LOGGER.debug("Duplicate search was cancelled", e);
+    } catch (final InterruptedException e) {
+      Thread.interrupted();
+      LOGGER.warn("We were interrupted while waiting for uploads to complete", e);
+    } finally {
+      bus.post(new UploadDoneEvent());
+      LOGGER.info("Upload done.");
     }
-    currentTasks.addAll(tasks);
+  }
+
+  @Override
+  public void pipelinePictures(final File[] files, final Template defautTemplate,
+      final ExternalMetadataSource<?> externalMetadataSource) {
+    externalMetadataSource.loadMetadata();
+    final Pipeline pipeline = new Pipeline(picturesBatchFactory.makePicturesBatch(files, defautTemplate,
+        externalMetadataSource), wikis.getActiveWiki().getUrl());
+    LOGGER.info("Uploading {} files to {} as soon as they are read.", files.length, activeMediaWiki.getName());
+    bus.post(new UploadStartingEvent(Collections.<Picture> emptyList()));
+    activeMediaWiki.prepare();
+    currentPipelines.add(pipeline);
     try {
-      for (final Future<Void> task : tasks) {
-        try {
-          task.get();
-        } catch (final CancellationException e) {
-          LOGGER.debug("Task was cancelled", e);
-        } catch (final ExecutionException e) {
-          LOGGER.warn("Task execution failed", e);
-        } finally {
-          currentTasks.remove(task);
-        }
-      }
+      readPictures(pipeline.batch, files.length, pipeline);
+      awaitUploads(pipeline.tasks);
     } catch (final InterruptedException e) {
       Thread.interrupted();
       LOGGER.warn("We were interrupted while waiting for uploads to complete", e);
     } finally {
-      try {
-        activeMediaWiki.logout();
-      } catch (final FailedLogoutException e) {
-        LOGGER.warn("Couldn't close Mediawiki session properly", e);
-      }
+      currentPipelines.remove(pipeline);
       bus.post(new UploadDoneEvent());
       LOGGER.info("Upload done.");
     }
   }
-  
+
+  /**
+   * Sends the pictures that aren't already on the wiki and that it would accept to the upload scheduler, each as soon
+   * as its own duplicate lookup is done. A picture that is already on the wiki is reported as such even if the wiki
+   * would also refuse it.
+   * 
+   * @return the uploads, which are also current tasks.
+   */
+  private List<Future<Void>> submitUploads(final List<Picture> picturesToBeUploaded, final String wikiUrl)
+      throws InterruptedException {
+    final MediaWiki mediaWiki = activeMediaWiki;
+    final Map<Picture, FailedUploadException> rejections = preflightCheck.check(mediaWiki, picturesToBeUploaded);
+    final List<Future<Void>> tasks = Collections.synchronizedList(new ArrayList<Future<Void>>(
+        picturesToBeUploaded.size()));
+    final AtomicInteger rejected = new AtomicInteger();
+    duplicateFinder.find(mediaWiki, picturesToBeUploaded, new DuplicateFinder.Listener() {
+      @Override
+      public void lookedUp(final Picture picture, final String sha1, final List<String> existingFiles) {
+        final FailedUploadException rejection = rejections.get(picture);
+        if (!existingFiles.isEmpty()) {
+          LOGGER.info("{} is already on {} as {}", picture.getFileName(), mediaWiki.getName(), existingFiles);
+          picture.setState(State.Duplicate);
+          bus.post(new PictureDuplicateEvent(picture, existingFiles));
+        } else if (rejection != null) {
+          LOGGER.warn("{} would be refused by {}", picture.getFileName(), mediaWiki.getName(), rejection);
+          rejected.incrementAndGet();
+          picture.setState(State.FailedUpload);
+          bus.post(new PictureTransferFailedEvent(picture, rejection));
+        } else {
+          final Future<Void> task = new UploadTask(picture, sha1, wikiUrl).submit();
+          tasks.add(task);
+          currentTasks.add(task);
+        }
+      }
+    });
+    if (rejected.get() > 0) {
+      LOGGER.warn("{} of {} pictures won't be uploaded to {}", rejected.get(), picturesToBeUploaded.size(),
+          mediaWiki.getName());
+    }
+    return tasks;
+  }
+
+  private void awaitUploads(final List<Future<Void>> tasks) throws InterruptedException {
+    for (final Future<Void> task : tasks) {
+      try {
+        task.get();
+      } catch (final CancellationException e) {
+        LOGGER.debug("Task was cancelled", e);
+      } catch (final ExecutionException e) {
+        LOGGER.warn("Task execution failed", e);
+      } finally {
+        currentTasks.remove(task);
+      }
+    }
+  }
+
+  /**
+   * Checks and queues each chunk of pictures as soon as it is read. Chunks are handed over on the reading thread, so
+   * waiting for room in the upload scheduler also holds reading back.
+   */
+  private final class Pipeline implements PicturesBatch.Listener {
+    private final PicturesBatch batch;
+
+    private final String wikiUrl;
+
+    private final List<Future<Void>> tasks;
+
+    Pipeline(final PicturesBatch batch, final String wikiUrl) {
+      this.batch = batch;
+      this.wikiUrl = wikiUrl;
+      this.tasks = new ArrayList<>();
+    }
+
+    @Override
+    public void picturesRead(final List<Picture> newPictures, final int processed, final int total) {
+      final List<Picture> picturesToBeUploaded = new ArrayList<>(newPictures.size());
+      for (final Picture picture : newPictures) {
+        if (shouldUpload(picture)) {
+          picturesToBeUploaded.add(picture);
+        }
+      }
+      if (picturesToBeUploaded.isEmpty() || batch.isCancelled()) {
+        return;
+      }
+      try {
+        uploadScheduler.awaitCapacity();
+        bus.post(new UploadQueuedEvent(picturesToBeUploaded));
+        final List<Future<Void>> submitted = submitUploads(picturesToBeUploaded, wikiUrl);
+        tasks.addAll(submitted);
+        // abort() cancels the batch before the tasks it knows of, these may have been submitted in between.
+        if (batch.isCancelled()) {
+          for (final Future<Void> task : submitted) {
+            task.cancel(true);
+          }
+        }
+      } catch (final CancellationException e) {
+        LOGGER.debug("Duplicate search was cancelled", e);
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        batch.cancel();
+      }
+    }
+  }
+
   @Override
   public void abort() {
+    for (final Pipeline pipeline : currentPipelines) {
+      pipeline.batch.cancel();
+    }
+    duplicateFinder.cancel();
     for (final Future<Void> task : currentTasks) {
       if (task.cancel(true)) {
         currentTasks.remove(task);
@@ -222,5 +616,19 @@ public final class CoreImpl implements Core {
     for (final Picture picture : pictures) {
       picture.renderTemplate(wikis.getActiveWiki().getUser());
     }
+    final String wikiUrl = wikis.getActiveWiki().getUrl();
+    final List<Picture> replayedPictures = new ArrayList<>(pictures);
+    journalReplayer.execute(new Runnable() {
+      @Override
+      public void run() {
+        for (final Picture picture : replayedPictures) {
+          if (!wikiUrl.equals(wikis.getActiveWiki().getUrl())) {
+            // Another change follows, whose replay supersedes this one.
+            return;
+          }
+          replayJournal(wikiUrl, picture);
+        }
+      }
+    });
   }
 }
@@ -0,0 +1,89 @@
+package comeon.core;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.beanutils.DynaBean;
+import org.apache.commons.beanutils.DynaClass;
+import org.apache.commons.beanutils.DynaProperty;
+
+/**
+ * Immutable description of a metadata directory: its name and ordered tag names. Instances are shared by all the
+ * pictures whose directory has the same tags, see {@link MetadataSchemas}.
+ */
+final class DirectorySchema implements DynaClass {
+  private final String name;
+
+  private final String[] tagNames;
+
+  private final DynaProperty[] properties;
+
+  private final Map<String, Integer> indexes;
+
+  private final int hashCode;
+
+  DirectorySchema(final String name, final String[] tagNames) {
+    this.name = name;
+    this.tagNames = tagNames.clone();
+    this.properties = new DynaProperty[tagNames.length];
+    this.indexes = new HashMap<>(tagNames.length * 2);
+    for (int i = 0; i < tagNames.length; i++) {
+      properties[i] = new DynaProperty(tagNames[i], String.class);
+      indexes.put(tagNames[i], i);
+    }
+    this.hashCode = 31 * name.hashCode() + Arrays.hashCode(tagNames);
+  }
+
+  @Override
+  public String getName() {
+    return name;
+  }
+
+  @Override
+  public DynaProperty getDynaProperty(final String name) {
+    final Integer index = indexes.get(name);
+    return index == null ? null : properties[index];
+  }
+
+  @Override
+  public DynaProperty[] getDynaProperties() {
+    return properties.clone();
+  }
+
+  @Override
+  public DynaBean newInstance() {
+    return new CompactDynaBean(this, new String[tagNames.length]);
+  }
+
+  int size() {
+    return tagNames.length;
+  }
+
+  /**
+   * @return the position of this property in the values array, or -1 if the directory has no such tag.
+   */
+  int indexOf(final String name) {
+    final Integer index = indexes.get(name);
+    return index == null ? -1 : index;
+  }
+
+  @Override
+  public int hashCode() {
+    return hashCode;
+  }
+
+  @Override
+  public boolean equals(final Object obj) {
+    final boolean equal;
+    if (this == obj) {
+      equal = true;
+    } else if (obj instanceof DirectorySchema) {
+      final DirectorySchema other = (DirectorySchema) obj;
+      equal = hashCode == other.hashCode && name.equals(other.name) && Arrays.equals(tagNames, other.tagNames);
+    } else {
+      equal = false;
+    }
+    return equal;
+  }
+}
@@ -0,0 +1,123 @@
+package comeon.core;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Singleton;
+import comeon.mediawiki.MediaWiki;
+import comeon.model.Picture;
+
+/**
+ * Finds the pictures whose content is already on the wiki before they are sent, by hashing them in parallel and
+ * looking their SHA-1 up on the wiki. Each picture is reported as soon as its own lookup ends, with its SHA-1 so that
+ * it needn't be read again to compute it.
+ */
+@Singleton
+public final class DuplicateFinder {
+  private static final Logger LOGGER = LoggerFactory.getLogger(DuplicateFinder.class);
+
+  /**
+   * Hashing is bound by the disk and lookups by the latency of the wiki, a few of each at a time keep both busy.
+   */
+  private static final int THREADS = Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()));
+
+  private final ExecutorService pool;
+
+  private final Queue<Future<Void>> pendingLookups;
+
+  public DuplicateFinder() {
+    this.pool = Executors.newFixedThreadPool(THREADS, new ThreadFactoryBuilder().setNameFormat("preflight-%d")
+        .setDaemon(true).build());
+    this.pendingLookups = new ConcurrentLinkedQueue<>();
+  }
+
+  /**
+   * Looks each picture up, and tells the listener about it from the lookup's thread as soon as it is done. Returns
+   * once every picture has been reported.
+   * 
+   * @throws CancellationException
+   *           if the search was cancelled.
+   */
+  public void find(final MediaWiki mediaWiki, final List<Picture> pictures, final Listener listener)
+      throws InterruptedException {
+    final List<Future<Void>> lookups = new ArrayList<>(pictures.size());
+    for (final Picture picture : pictures) {
+      final Future<Void> lookup = pool.submit(new Callable<Void>() {
+        @Override
+        public Void call() {
+          lookUp(mediaWiki, picture, listener);
+          return null;
+        }
+      });
+      lookups.add(lookup);
+      pendingLookups.add(lookup);
+    }
+    try {
+      for (final Future<Void> lookup : lookups) {
+        try {
+          lookup.get();
+        } catch (final ExecutionException e) {
+          LOGGER.warn("Couldn't report a lookup", e.getCause());
+        }
+      }
+    } finally {
+      for (final Future<Void> lookup : lookups) {
+        lookup.cancel(true);
+        pendingLookups.remove(lookup);
+      }
+    }
+  }
+
+  /**
+   * A picture that can't be read or looked up is reported as not on the wiki, so that it gets uploaded. A cancelled
+   * lookup reports nothing.
+   */
+  private static void lookUp(final MediaWiki mediaWiki, final Picture picture, final Listener listener) {
+    String sha1 = null;
+    List<String> existingFiles = Collections.emptyList();
+    try {
+      sha1 = Files.hash(picture.getFile(), Hashing.sha1()).toString();
+      existingFiles = mediaWiki.findDuplicates(sha1);
+    } catch (final IOException e) {
+      LOGGER.warn("Couldn't check whether {} is already on the wiki", picture.getFileName(), e);
+    }
+    if (!Thread.currentThread().isInterrupted()) {
+      listener.lookedUp(picture, sha1, existingFiles);
+    }
+  }
+
+  /**
+   * Cancels the searches in progress, if any.
+   */
+  public void cancel() {
+    for (final Future<Void> lookup : pendingLookups) {
+      lookup.cancel(true);
+    }
+  }
+
+  public interface Listener {
+    /**
+     * @param sha1
+     *          hexadecimal SHA-1 of the picture, or {@code null} if it couldn't be read.
+     * @param existingFiles
+     *          names of the files already on the wiki with this content, empty if there are none or it is unknown.
+     */
+    void lookedUp(Picture picture, String sha1, List<String> existingFiles);
+  }
+}
@@ -0,0 +1,104 @@
+package comeon.core;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Metadata as extracted from a picture file, before it is turned into template-friendly beans.
+ */
+public final class ExtractedMetadata {
+  private final List<DirectoryValues> directories;
+
+  private final Map<String, Object> processed;
+
+  private final byte[] thumbnail;
+
+  public ExtractedMetadata(final List<DirectoryValues> directories, final Map<String, Object> processed,
+      final byte[] thumbnail) {
+    this.directories = directories;
+    this.processed = processed;
+    this.thumbnail = thumbnail;
+  }
+
+  public List<DirectoryValues> getDirectories() {
+    return directories;
+  }
+
+  /**
+   * @return the values computed by the pre-processors.
+   */
+  public Map<String, Object> getProcessed() {
+    return processed;
+  }
+
+  public byte[] getThumbnail() {
+    return thumbnail;
+  }
+
+  public static final class DirectoryValues {
+    private final String key;
+
+    private final String name;
+
+    private final String[] tagNames;
+
+    private final String[] values;
+
+    public DirectoryValues(final String key, final String name, final String[] tagNames, final String[] values) {
+      this.key = key;
+      this.name = name;
+      this.tagNames = tagNames;
+      this.values = values;
+    }
+
+    public String getKey() {
+      return key;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public String[] getTagNames() {
+      return tagNames;
+    }
+
+    /**
+     * @return the tag descriptions, in the order of the tag names.
+     */
+    public String[] getValues() {
+      return values;
+    }
+
+    /**
+     * @return a copy restricted to the given tags, or this instance if it has no other tag.
+     */
+    DirectoryValues project(final Set<String> keptTagNames) {
+      final int[] kept = new int[tagNames.length];
+      int count = 0;
+      for (int i = 0; i < tagNames.length; i++) {
+        if (keptTagNames.contains(tagNames[i])) {
+          kept[count++] = i;
+        }
+      }
+      final DirectoryValues projected;
+      if (count == tagNames.length) {
+        projected = this;
+      } else {
+        final int[] indexes = Arrays.copyOf(kept, count);
+        final String[] keptNames = new String[count];
+        for (int i = 0; i < count; i++) {
+          keptNames[i] = tagNames[indexes[i]];
+        }
+        final String[] keptValues = new String[count];
+        for (int i = 0; i < count; i++) {
+          keptValues[i] = values[indexes[i]];
+        }
+        projected = new DirectoryValues(key, name, keptNames, keptValues);
+      }
+      return projected;
+    }
+  }
+}
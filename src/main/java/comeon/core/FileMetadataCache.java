@@ -0,0 +1,488 @@
+package comeon.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.drew.lang.GeoLocation;
+import com.google.common.base.Charsets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * Append-only metadata cache, stored in the user's ComeOn! directory. An in-memory index maps each absolute path to
+ * the latest record written for it. A record is only used if the file still has the size and modification time it
+ * had when the record was written, and if its payload matches its checksum: writes aren't forced to disk, so a crash
+ * may leave torn records behind. Superseded records are dropped when the cache is opened and mostly garbage.
+ */
+@Singleton
+public final class FileMetadataCache implements MetadataCache {
+  private static final Logger LOGGER = LoggerFactory.getLogger(FileMetadataCache.class);
+
+  private static final String FILE_NAME = "metadata.cache";
+
+  private static final long MAGIC = 0x434f4d454f4e4d43L;
+
+  private static final int VERSION = 2;
+
+  private static final int HEADER_LENGTH = 12;
+
+  private static final int RECORD_KEY_OVERHEAD = 2 + 8 + 8 + 4;
+
+  private static final long COMPACTION_THRESHOLD = 8 * 1024 * 1024;
+
+  /**
+   * Writes waiting for the writer thread. Each holds the whole metadata of a picture, thumbnail included.
+   */
+  private static final int WRITE_BACKLOG = 64;
+
+  private static final byte NULL = 0;
+
+  private static final byte STRING = 1;
+
+  private static final byte STRING_ARRAY = 2;
+
+  private static final byte GEOLOCATION = 3;
+
+  private final Map<String, Location> index;
+
+  private final FileChannel channel;
+
+  private final ExecutorService writer;
+
+  private final long compactionThreshold;
+
+  private long end;
+
+  @Inject
+  public FileMetadataCache() {
+    this(defaultLocation(), COMPACTION_THRESHOLD);
+  }
+
+  /**
+   * @param compactionThreshold
+   *          size above which the cache is compacted when opened, if it is mostly superseded records.
+   */
+  FileMetadataCache(final Path location, final long compactionThreshold) {
+    this.index = new ConcurrentHashMap<>();
+    this.compactionThreshold = compactionThreshold;
+    this.writer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(
+        WRITE_BACKLOG), new ThreadFactoryBuilder().setNameFormat("metadata-cache-writer").setDaemon(true)
+        .setPriority(Thread.MIN_PRIORITY).build());
+    this.channel = location == null ? null : open(location);
+  }
+
+  private static Path defaultLocation() {
+    try {
+      return LocalStorage.getDirectory().resolve(FILE_NAME);
+    } catch (final IOException e) {
+      LOGGER.warn("Metadata cache is unavailable", e);
+      return null;
+    }
+  }
+
+  @Override
+  public ExtractedMetadata get(final File file) {
+    final ExtractedMetadata metadata;
+    final Location location = index.get(file.getAbsolutePath());
+    if (channel == null || location == null || !location.matches(file)) {
+      metadata = null;
+    } else {
+      metadata = read(file, location);
+    }
+    return metadata;
+  }
+
+  /**
+   * Writes happen on a background thread: encoding describes every tag, which readers no longer do eagerly. When the
+   * writer falls behind, metadata is not cached rather than piling up in memory.
+   */
+  @Override
+  public void put(final File file, final ExtractedMetadata metadata) {
+    if (channel == null) {
+      return;
+    }
+    final long size = file.length();
+    final long modified = file.lastModified();
+    try {
+      writer.execute(new Runnable() {
+        @Override
+        public void run() {
+          write(file, size, modified, metadata);
+        }
+      });
+    } catch (final RejectedExecutionException e) {
+      LOGGER.debug("Metadata cache is busy, not caching {}", file);
+    }
+  }
+
+  private void write(final File file, final long size, final long modified, final ExtractedMetadata metadata) {
+    try {
+      final byte[] payload = encode(metadata);
+      final byte[] path = file.getAbsolutePath().getBytes(Charsets.UTF_8);
+      if (payload == null || path.length > 0xFFFF) {
+        LOGGER.debug("Metadata of {} can't be cached", file);
+        return;
+      }
+      final ByteBuffer record = ByteBuffer.allocate(4 + RECORD_KEY_OVERHEAD + path.length + payload.length);
+      record.putInt(RECORD_KEY_OVERHEAD + path.length + payload.length);
+      final int checksum = checksum(payload);
+      record.putShort((short) path.length).put(path).putLong(size).putLong(modified).putInt(checksum);
+      record.put(payload);
+      record.flip();
+      synchronized (this) {
+        final long position = end;
+        writeFully(record, position);
+        end += record.limit();
+        index.put(file.getAbsolutePath(), new Location(size, modified, checksum, position + 4 + RECORD_KEY_OVERHEAD
+            + path.length, payload.length));
+      }
+    } catch (final IOException | RuntimeException e) {
+      LOGGER.warn("Can't cache metadata of {}", file, e);
+    }
+  }
+
+  private ExtractedMetadata read(final File file, final Location location) {
+    try {
+      final ByteBuffer payload = ByteBuffer.allocate(location.length);
+      readFully(channel, payload, location.offset);
+      if (checksum(payload.array()) != location.checksum) {
+        LOGGER.warn("Cached metadata of {} is torn, dropping it", file);
+        index.remove(file.getAbsolutePath(), location);
+        return null;
+      }
+      return decode(new DataInputStream(new ByteArrayInputStream(payload.array())));
+    } catch (final IOException e) {
+      LOGGER.warn("Can't read cached metadata of {}", file, e);
+      return null;
+    }
+  }
+
+  private FileChannel open(final Path location) {
+    try {
+      FileChannel opened = FileChannel.open(location, StandardOpenOption.CREATE, StandardOpenOption.READ,
+          StandardOpenOption.WRITE);
+      if (!hasValidHeader(opened)) {
+        opened.truncate(0);
+        writeHeader(opened);
+      }
+      final long liveBytes = scan(opened);
+      if (opened.size() > compactionThreshold && liveBytes * 2 < opened.size()) {
+        opened = compact(location, opened);
+      }
+      this.end = opened.size();
+      LOGGER.debug("Opened metadata cache {} with {} entries", location, index.size());
+      return opened;
+    } catch (final IOException e) {
+      LOGGER.warn("Metadata cache is unavailable", e);
+      index.clear();
+      return null;
+    }
+  }
+
+  private static boolean hasValidHeader(final FileChannel channel) throws IOException {
+    final boolean valid;
+    if (channel.size() < HEADER_LENGTH) {
+      valid = false;
+    } else {
+      final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+      readFully(channel, header, 0);
+      header.flip();
+      valid = header.getLong() == MAGIC && header.getInt() == VERSION;
+    }
+    return valid;
+  }
+
+  private static void writeHeader(final FileChannel channel) throws IOException {
+    final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+    header.putLong(MAGIC).putInt(VERSION).flip();
+    while (header.hasRemaining()) {
+      channel.write(header, header.position());
+    }
+  }
+
+  /**
+   * Builds the index from record headers, skipping payloads. A truncated trailing record, left by a crash, is cut off.
+   * 
+   * @return the number of bytes used by live records.
+   */
+  private long scan(final FileChannel channel) throws IOException {
+    final long size = channel.size();
+    final ByteBuffer lengths = ByteBuffer.allocate(4 + 2);
+    final ByteBuffer stamps = ByteBuffer.allocate(8 + 8 + 4);
+    long position = HEADER_LENGTH;
+    long liveBytes = 0;
+    while (position < size) {
+      if (position + lengths.capacity() > size) {
+        break;
+      }
+      lengths.clear();
+      readFully(channel, lengths, position);
+      lengths.flip();
+      final int recordLength = lengths.getInt();
+      final int pathLength = lengths.getShort() & 0xFFFF;
+      if (recordLength < RECORD_KEY_OVERHEAD + pathLength || position + 4 + recordLength > size) {
+        break;
+      }
+      final ByteBuffer path = ByteBuffer.allocate(pathLength);
+      readFully(channel, path, position + lengths.capacity());
+      stamps.clear();
+      readFully(channel, stamps, position + lengths.capacity() + pathLength);
+      stamps.flip();
+      final long payloadOffset = position + 4 + RECORD_KEY_OVERHEAD + pathLength;
+      final Location location = new Location(stamps.getLong(), stamps.getLong(), stamps.getInt(), payloadOffset,
+          recordLength - RECORD_KEY_OVERHEAD - pathLength);
+      final Location previous = index.put(new String(path.array(), Charsets.UTF_8), location);
+      if (previous != null) {
+        liveBytes -= previous.recordLength(pathLength);
+      }
+      liveBytes += 4 + recordLength;
+      position += 4 + recordLength;
+    }
+    if (position < size) {
+      LOGGER.warn("Metadata cache has a truncated record, dropping it");
+      channel.truncate(position);
+    }
+    return liveBytes;
+  }
+
+  private FileChannel compact(final Path location, final FileChannel channel) throws IOException {
+    LOGGER.info("Compacting metadata cache");
+    final Path compacted = location.resolveSibling(FILE_NAME + ".tmp");
+    final Map<String, Location> compactedIndex = new HashMap<>(index.size());
+    try (final FileChannel target = FileChannel.open(compacted, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      writeHeader(target);
+      long position = HEADER_LENGTH;
+      for (final Map.Entry<String, Location> entry : index.entrySet()) {
+        final Location live = entry.getValue();
+        final byte[] path = entry.getKey().getBytes(Charsets.UTF_8);
+        final ByteBuffer key = ByteBuffer.allocate(4 + RECORD_KEY_OVERHEAD + path.length);
+        key.putInt(RECORD_KEY_OVERHEAD + path.length + live.length);
+        key.putShort((short) path.length).put(path).putLong(live.size).putLong(live.modified).putInt(live.checksum);
+        key.flip();
+        while (key.hasRemaining()) {
+          position += target.write(key, position);
+        }
+        target.position(position);
+        long transferred = 0;
+        while (transferred < live.length) {
+          transferred += channel.transferTo(live.offset + transferred, live.length - transferred, target);
+        }
+        compactedIndex.put(entry.getKey(), new Location(live.size, live.modified, live.checksum, position,
+            live.length));
+        position += live.length;
+      }
+      target.force(true);
+    }
+    channel.close();
+    Files.move(compacted, location, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    index.clear();
+    index.putAll(compactedIndex);
+    return FileChannel.open(location, StandardOpenOption.READ, StandardOpenOption.WRITE);
+  }
+
+  /**
+   * Waits for the pending writes, then closes the cache file.
+   */
+  void close() throws IOException, InterruptedException {
+    writer.shutdown();
+    writer.awaitTermination(1, TimeUnit.MINUTES);
+    if (channel != null) {
+      channel.close();
+    }
+  }
+
+  private static int checksum(final byte[] payload) {
+    final CRC32 crc = new CRC32();
+    crc.update(payload);
+    return (int) crc.getValue();
+  }
+
+  private void writeFully(final ByteBuffer buffer, final long position) throws IOException {
+    long written = 0;
+    while (buffer.hasRemaining()) {
+      written += channel.write(buffer, position + written);
+    }
+  }
+
+  private static void readFully(final FileChannel channel, final ByteBuffer buffer, final long position)
+      throws IOException {
+    long read = 0;
+    while (buffer.hasRemaining()) {
+      final int count = channel.read(buffer, position + read);
+      if (count < 0) {
+        throw new EOFException();
+      }
+      read += count;
+    }
+  }
+
+  private static byte[] encode(final ExtractedMetadata metadata) throws IOException {
+    final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    final DataOutputStream out = new DataOutputStream(buffer);
+    out.writeInt(metadata.getDirectories().size());
+    for (final ExtractedMetadata.DirectoryValues directory : metadata.getDirectories()) {
+      writeString(out, directory.getKey());
+      writeString(out, directory.getName());
+      final String[] tagNames = directory.getTagNames();
+      final String[] values = directory.getValues();
+      out.writeInt(tagNames.length);
+      for (int i = 0; i < tagNames.length; i++) {
+        writeString(out, tagNames[i]);
+        writeString(out, values[i]);
+      }
+    }
+    out.writeInt(metadata.getProcessed().size());
+    for (final Map.Entry<String, Object> entry : metadata.getProcessed().entrySet()) {
+      writeString(out, entry.getKey());
+      final Object value = entry.getValue();
+      if (value == null) {
+        out.writeByte(NULL);
+      } else if (value instanceof String) {
+        out.writeByte(STRING);
+        writeString(out, (String) value);
+      } else if (value instanceof String[]) {
+        final String[] values = (String[]) value;
+        out.writeByte(STRING_ARRAY);
+        out.writeInt(values.length);
+        for (final String element : values) {
+          writeString(out, element);
+        }
+      } else if (value instanceof GeoLocation) {
+        final GeoLocation location = (GeoLocation) value;
+        out.writeByte(GEOLOCATION);
+        out.writeDouble(location.getLatitude());
+        out.writeDouble(location.getLongitude());
+      } else {
+        return null;
+      }
+    }
+    out.writeInt(metadata.getThumbnail().length);
+    out.write(metadata.getThumbnail());
+    out.flush();
+    return buffer.toByteArray();
+  }
+
+  private static ExtractedMetadata decode(final DataInputStream in) throws IOException {
+    final int directoryCount = in.readInt();
+    final List<ExtractedMetadata.DirectoryValues> directories = new ArrayList<>(directoryCount);
+    for (int i = 0; i < directoryCount; i++) {
+      final String key = readString(in);
+      final String name = readString(in);
+      final int tagCount = in.readInt();
+      final String[] tagNames = new String[tagCount];
+      final String[] values = new String[tagCount];
+      for (int j = 0; j < tagCount; j++) {
+        tagNames[j] = readString(in);
+        values[j] = readString(in);
+      }
+      directories.add(new ExtractedMetadata.DirectoryValues(key, name, tagNames, values));
+    }
+    final int processedCount = in.readInt();
+    final Map<String, Object> processed = new HashMap<>(processedCount);
+    for (int i = 0; i < processedCount; i++) {
+      final String key = readString(in);
+      final byte type = in.readByte();
+      switch (type) {
+      case NULL:
+        processed.put(key, null);
+        break;
+      case STRING:
+        processed.put(key, readString(in));
+        break;
+      case STRING_ARRAY:
+        final String[] values = new String[in.readInt()];
+        for (int j = 0; j < values.length; j++) {
+          values[j] = readString(in);
+        }
+        processed.put(key, values);
+        break;
+      case GEOLOCATION:
+        processed.put(key, new GeoLocation(in.readDouble(), in.readDouble()));
+        break;
+      default:
+        throw new IOException("Unknown value type " + type);
+      }
+    }
+    final byte[] thumbnail = new byte[in.readInt()];
+    in.readFully(thumbnail);
+    return new ExtractedMetadata(directories, processed, thumbnail);
+  }
+
+  private static void writeString(final DataOutputStream out, final String value) throws IOException {
+    if (value == null) {
+      out.writeInt(-1);
+    } else {
+      final byte[] bytes = value.getBytes(Charsets.UTF_8);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+  }
+
+  private static String readString(final DataInputStream in) throws IOException {
+    final int length = in.readInt();
+    final String value;
+    if (length < 0) {
+      value = null;
+    } else {
+      final byte[] bytes = new byte[length];
+      in.readFully(bytes);
+      value = new String(bytes, Charsets.UTF_8);
+    }
+    return value;
+  }
+
+  private static final class Location {
+    private final long size;
+
+    private final long modified;
+
+    private final int checksum;
+
+    private final long offset;
+
+    private final int length;
+
+    Location(final long size, final long modified, final int checksum, final long offset, final int length) {
+      this.size = size;
+      this.modified = modified;
+      this.checksum = checksum;
+      this.offset = offset;
+      this.length = length;
+    }
+
+    boolean matches(final File file) {
+      return size == file.length() && modified == file.lastModified();
+    }
+
+    long recordLength(final int pathLength) {
+      return 4 + RECORD_KEY_OVERHEAD + pathLength + length;
+    }
+  }
+}
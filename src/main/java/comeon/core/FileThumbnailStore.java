@@ -0,0 +1,128 @@
+package comeon.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import comeon.model.Thumbnail;
+
+/**
+ * Keeps thumbnails in a temporary spill file for the session, so that their bytes don't stay on the heap. The file is
+ * deleted when the application exits. Thumbnails are kept in memory if the file can't be created.
+ */
+@Singleton
+public final class FileThumbnailStore implements ThumbnailStore {
+  private static final Logger LOGGER = LoggerFactory.getLogger(FileThumbnailStore.class);
+
+  private static final Thumbnail EMPTY = new HeapThumbnail(new byte[0]);
+
+  private final FileChannel channel;
+
+  private long end;
+
+  @Inject
+  public FileThumbnailStore() {
+    FileChannel spill;
+    try {
+      final Path file = Files.createTempFile("comeon-thumbnails", ".spill");
+      spill = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+          StandardOpenOption.DELETE_ON_CLOSE);
+      file.toFile().deleteOnExit();
+    } catch (final IOException e) {
+      LOGGER.warn("Can't create thumbnail spill file, thumbnails will be kept in memory", e);
+      spill = null;
+    }
+    this.channel = spill;
+    this.end = 0;
+  }
+
+  @Override
+  public Thumbnail store(final byte[] thumbnail) {
+    final Thumbnail stored;
+    if (thumbnail.length == 0) {
+      stored = EMPTY;
+    } else if (channel == null) {
+      stored = new HeapThumbnail(thumbnail);
+    } else {
+      stored = spill(thumbnail);
+    }
+    return stored;
+  }
+
+  private Thumbnail spill(final byte[] thumbnail) {
+    try {
+      final long position;
+      synchronized (this) {
+        position = end;
+        end += thumbnail.length;
+      }
+      final ByteBuffer buffer = ByteBuffer.wrap(thumbnail);
+      while (buffer.hasRemaining()) {
+        channel.write(buffer, position + buffer.position());
+      }
+      return new SpilledThumbnail(position, thumbnail.length);
+    } catch (final IOException e) {
+      LOGGER.warn("Can't spill thumbnail, keeping it in memory", e);
+      return new HeapThumbnail(thumbnail);
+    }
+  }
+
+  private final class SpilledThumbnail implements Thumbnail {
+    private final long position;
+
+    private final int length;
+
+    private SpilledThumbnail(final long position, final int length) {
+      this.position = position;
+      this.length = length;
+    }
+
+    @Override
+    public byte[] getBytes() {
+      final ByteBuffer buffer = ByteBuffer.allocate(length);
+      try {
+        while (buffer.hasRemaining()) {
+          if (channel.read(buffer, position + buffer.position()) < 0) {
+            throw new IOException("Thumbnail spill file is truncated");
+          }
+        }
+        return buffer.array();
+      } catch (final IOException e) {
+        LOGGER.warn("Can't read spilled thumbnail", e);
+        return new byte[0];
+      }
+    }
+
+    @Override
+    public boolean isEmpty() {
+      return length == 0;
+    }
+  }
+
+  private static final class HeapThumbnail implements Thumbnail {
+    private final byte[] bytes;
+
+    private HeapThumbnail(final byte[] bytes) {
+      this.bytes = bytes;
+    }
+
+    @Override
+    public byte[] getBytes() {
+      return bytes;
+    }
+
+    @Override
+    public boolean isEmpty() {
+      return bytes.length == 0;
+    }
+  }
+}
@@ -0,0 +1,447 @@
+package comeon.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.io.BaseEncoding;
+import com.google.common.hash.Hashing;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import comeon.model.Picture;
+import comeon.model.Picture.State;
+
+/**
+ * Append-only upload journal, stored in the user's ComeOn! directory. Each record holds the identity of a file (path,
+ * size and modification time), the SHA-1 of its content as sent by the last upload that got that far, the SHA-1 of its
+ * rendered description, and the outcome of its last upload to a wiki. The journal never reads the files itself while
+ * recording. Records are checksummed and forced to disk as they are written, so that a crash at worst loses a
+ * torn trailing record. Only the latest record of each file is live; the journal is rewritten when it is mostly
+ * superseded records.
+ */
+@Singleton
+public final class FileUploadJournal implements UploadJournal {
+  private static final Logger LOGGER = LoggerFactory.getLogger(FileUploadJournal.class);
+
+  private static final String FILE_NAME = "uploads.journal";
+
+  private static final long MAGIC = 0x434f4d454f4e554aL;
+
+  private static final int VERSION = 1;
+
+  private static final byte[] NO_HASH = new byte[0];
+
+  private static final int HEADER_LENGTH = 12;
+
+  private static final int RECORD_OVERHEAD = 4 + 4;
+
+  private static final long COMPACTION_THRESHOLD = 1024 * 1024;
+
+  private final Path location;
+
+  private final Map<String, Entry> index;
+
+  private FileChannel channel;
+
+  private long end;
+
+  private long liveBytes;
+
+  @Inject
+  public FileUploadJournal() {
+    this(defaultLocation());
+  }
+
+  FileUploadJournal(final Path location) {
+    this.location = location;
+    this.index = new HashMap<>();
+    if (location != null) {
+      open();
+    }
+  }
+
+  private static Path defaultLocation() {
+    try {
+      return LocalStorage.getDirectory().resolve(FILE_NAME);
+    } catch (final IOException e) {
+      LOGGER.warn("Upload journal is unavailable", e);
+      return null;
+    }
+  }
+
+  /**
+   * The SHA-1 of the last record is kept when none is given and the file still has the same size and modification
+   * time.
+   */
+  @Override
+  public void record(final String wikiUrl, final Picture picture, final Outcome outcome, final String sha1) {
+    if (!isOpen()) {
+      return;
+    }
+    final File file = picture.getFile();
+    final String path = file.getAbsolutePath();
+    final long size = file.length();
+    final long modified = file.lastModified();
+    try {
+      final Entry previous = get(wikiUrl, path);
+      final byte[] contentHash;
+      if (sha1 != null) {
+        contentHash = BaseEncoding.base16().lowerCase().decode(sha1.toLowerCase(Locale.ENGLISH));
+      } else if (previous != null && previous.size == size && previous.modified == modified) {
+        contentHash = previous.contentHash;
+      } else {
+        contentHash = NO_HASH;
+      }
+      final Entry entry = new Entry(wikiUrl, path, size, modified, contentHash, hash(picture.getRenderedTemplate()),
+          outcome);
+      synchronized (this) {
+        if (channel == null) {
+          return;
+        }
+        append(entry);
+        if (end > COMPACTION_THRESHOLD && liveBytes * 2 < end) {
+          compact();
+        }
+      }
+    } catch (final IOException e) {
+      LOGGER.warn("Can't journal upload of {}", file, e);
+    }
+  }
+
+  @Override
+  public State replay(final String wikiUrl, final Picture picture) {
+    final File file = picture.getFile();
+    final Entry entry = get(wikiUrl, file.getAbsolutePath());
+    final State state;
+    if (entry == null || !isUnchanged(entry, file)) {
+      state = null;
+    } else {
+      switch (entry.outcome) {
+      case Uploaded:
+        if (!Arrays.equals(entry.pageHash, hash(picture.getRenderedTemplate()))) {
+          LOGGER.info("{} was uploaded with a different description", file);
+        }
+        state = State.UploadedSuccessfully;
+        break;
+      case Started:
+        LOGGER.warn("Upload of {} was interrupted, it may or may not have reached the wiki", file);
+        state = State.FailedUpload;
+        break;
+      case Failed:
+        state = State.FailedUpload;
+        break;
+      case Corrupted:
+        state = State.FailedVerification;
+        break;
+      default:
+        state = null;
+        break;
+      }
+    }
+    return state;
+  }
+
+  private synchronized boolean isOpen() {
+    return channel != null;
+  }
+
+  private synchronized Entry get(final String wikiUrl, final String path) {
+    return index.get(key(wikiUrl, path));
+  }
+
+  /**
+   * Closes the journal file, later records are dropped.
+   */
+  synchronized void close() {
+    closeQuietly();
+  }
+
+  /**
+   * Size and modification time are trusted when they match. A file with the same size but a new modification time,
+   * for instance after being copied, is hashed again if the journal has the SHA-1 of what was sent.
+   */
+  private static boolean isUnchanged(final Entry entry, final File file) {
+    final boolean unchanged;
+    if (entry.size != file.length()) {
+      unchanged = false;
+    } else if (entry.modified == file.lastModified()) {
+      unchanged = true;
+    } else if (entry.contentHash.length == 0) {
+      unchanged = false;
+    } else {
+      try {
+        unchanged = Arrays.equals(entry.contentHash, hash(file));
+      } catch (final IOException e) {
+        LOGGER.warn("Can't hash {}", file, e);
+        return false;
+      }
+    }
+    return unchanged;
+  }
+
+  private void open() {
+    try {
+      FileChannel opened = FileChannel.open(location, StandardOpenOption.CREATE, StandardOpenOption.READ,
+          StandardOpenOption.WRITE);
+      if (!hasValidHeader(opened)) {
+        opened.truncate(0);
+        writeHeader(opened);
+        opened.force(true);
+      }
+      this.channel = opened;
+      scan();
+      if (end > COMPACTION_THRESHOLD && liveBytes * 2 < end) {
+        compact();
+      }
+      LOGGER.debug("Opened upload journal {} with {} entries", location, index.size());
+    } catch (final IOException e) {
+      LOGGER.warn("Upload journal is unavailable", e);
+      index.clear();
+      closeQuietly();
+    }
+  }
+
+  private static boolean hasValidHeader(final FileChannel channel) throws IOException {
+    final boolean valid;
+    if (channel.size() < HEADER_LENGTH) {
+      valid = false;
+    } else {
+      final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+      readFully(channel, header, 0);
+      header.flip();
+      valid = header.getLong() == MAGIC && header.getInt() == VERSION;
+    }
+    return valid;
+  }
+
+  private static void writeHeader(final FileChannel channel) throws IOException {
+    final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+    header.putLong(MAGIC).putInt(VERSION).flip();
+    writeFully(channel, header, 0);
+  }
+
+  /**
+   * Replays the journal into the index. Replay stops at the first record that is truncated or fails its checksum:
+   * records are forced to disk one by one, so that can only be the last one, torn by a crash.
+   */
+  private void scan() throws IOException {
+    final long size = channel.size();
+    final ByteBuffer prefix = ByteBuffer.allocate(RECORD_OVERHEAD);
+    long position = HEADER_LENGTH;
+    while (position + RECORD_OVERHEAD <= size) {
+      prefix.clear();
+      readFully(channel, prefix, position);
+      prefix.flip();
+      final int length = prefix.getInt();
+      final int checksum = prefix.getInt();
+      if (length <= 0 || position + RECORD_OVERHEAD + length > size) {
+        break;
+      }
+      final ByteBuffer payload = ByteBuffer.allocate(length);
+      readFully(channel, payload, position + RECORD_OVERHEAD);
+      if (checksum(payload.array()) != checksum) {
+        break;
+      }
+      final Entry entry = decode(payload.array());
+      if (entry == null) {
+        LOGGER.warn("Upload journal has a record of an unknown outcome, skipping it");
+      } else {
+        index(entry, RECORD_OVERHEAD + length);
+      }
+      position += RECORD_OVERHEAD + length;
+    }
+    if (position < size) {
+      LOGGER.warn("Upload journal has a torn record, dropping it");
+      channel.truncate(position);
+      channel.force(true);
+    }
+    this.end = position;
+  }
+
+  private void append(final Entry entry) throws IOException {
+    final byte[] payload = encode(entry);
+    final ByteBuffer record = ByteBuffer.allocate(RECORD_OVERHEAD + payload.length);
+    record.putInt(payload.length).putInt(checksum(payload)).put(payload).flip();
+    writeFully(channel, record, end);
+    channel.force(false);
+    end += record.limit();
+    index(entry, record.limit());
+  }
+
+  private void index(final Entry entry, final int recordLength) {
+    entry.recordLength = recordLength;
+    final Entry previous = index.put(key(entry.wikiUrl, entry.path), entry);
+    if (previous != null) {
+      liveBytes -= previous.recordLength;
+    }
+    liveBytes += recordLength;
+  }
+
+  private void compact() throws IOException {
+    LOGGER.info("Compacting upload journal");
+    final Path compacted = location.resolveSibling(FILE_NAME + ".tmp");
+    try (final FileChannel target = FileChannel.open(compacted, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      writeHeader(target);
+      long position = HEADER_LENGTH;
+      for (final Entry entry : index.values()) {
+        final byte[] payload = encode(entry);
+        final ByteBuffer record = ByteBuffer.allocate(RECORD_OVERHEAD + payload.length);
+        record.putInt(payload.length).putInt(checksum(payload)).put(payload).flip();
+        writeFully(target, record, position);
+        position += record.limit();
+      }
+      target.force(true);
+    }
+    channel.close();
+    Files.move(compacted, location, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    this.channel = FileChannel.open(location, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    index.clear();
+    liveBytes = 0;
+    scan();
+  }
+
+  private void closeQuietly() {
+    if (channel != null) {
+      try {
+        channel.close();
+      } catch (final IOException e) {
+        LOGGER.debug("Can't close upload journal", e);
+      }
+      channel = null;
+    }
+  }
+
+  private static String key(final String wikiUrl, final String path) {
+    return wikiUrl + '\n' + path;
+  }
+
+  private static byte[] hash(final File file) throws IOException {
+    return com.google.common.io.Files.hash(file, Hashing.sha1()).asBytes();
+  }
+
+  private static byte[] hash(final String text) {
+    return Hashing.sha1().hashString(Strings.nullToEmpty(text), Charsets.UTF_8).asBytes();
+  }
+
+  private static int checksum(final byte[] payload) {
+    final CRC32 crc = new CRC32();
+    crc.update(payload);
+    return (int) crc.getValue();
+  }
+
+  private static void writeFully(final FileChannel channel, final ByteBuffer buffer, final long position)
+      throws IOException {
+    long written = 0;
+    while (buffer.hasRemaining()) {
+      written += channel.write(buffer, position + written);
+    }
+  }
+
+  private static void readFully(final FileChannel channel, final ByteBuffer buffer, final long position)
+      throws IOException {
+    long read = 0;
+    while (buffer.hasRemaining()) {
+      final int count = channel.read(buffer, position + read);
+      if (count < 0) {
+        throw new EOFException();
+      }
+      read += count;
+    }
+  }
+
+  private static byte[] encode(final Entry entry) throws IOException {
+    final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    final DataOutputStream out = new DataOutputStream(buffer);
+    out.writeUTF(entry.wikiUrl);
+    out.writeUTF(entry.path);
+    out.writeLong(entry.size);
+    out.writeLong(entry.modified);
+    writeBytes(out, entry.contentHash);
+    writeBytes(out, entry.pageHash);
+    out.writeByte(entry.outcome.ordinal());
+    out.flush();
+    return buffer.toByteArray();
+  }
+
+  /**
+   * @return the entry, or {@code null} if its outcome is unknown to this version.
+   */
+  private static Entry decode(final byte[] payload) throws IOException {
+    final DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+    final String wikiUrl = in.readUTF();
+    final String path = in.readUTF();
+    final long size = in.readLong();
+    final long modified = in.readLong();
+    final byte[] contentHash = readBytes(in);
+    final byte[] pageHash = readBytes(in);
+    final int outcome = in.readUnsignedByte();
+    final Entry entry;
+    if (outcome < Outcome.values().length) {
+      entry = new Entry(wikiUrl, path, size, modified, contentHash, pageHash, Outcome.values()[outcome]);
+    } else {
+      entry = null;
+    }
+    return entry;
+  }
+
+  private static void writeBytes(final DataOutputStream out, final byte[] bytes) throws IOException {
+    out.writeByte(bytes.length);
+    out.write(bytes);
+  }
+
+  private static byte[] readBytes(final DataInputStream in) throws IOException {
+    final byte[] bytes = new byte[in.readUnsignedByte()];
+    in.readFully(bytes);
+    return bytes;
+  }
+
+  private static final class Entry {
+    private final String wikiUrl;
+
+    private final String path;
+
+    private final long size;
+
+    private final long modified;
+
+    private final byte[] contentHash;
+
+    private final byte[] pageHash;
+
+    private final Outcome outcome;
+
+    private int recordLength;
+
+    Entry(final String wikiUrl, final String path, final long size, final long modified, final byte[] contentHash,
+        final byte[] pageHash, final Outcome outcome) {
+      this.wikiUrl = wikiUrl;
+      this.path = path;
+      this.size = size;
+      this.modified = modified;
+      this.contentHash = contentHash;
+      this.pageHash = pageHash;
+      this.outcome = outcome;
+    }
+  }
+}
@@ -0,0 +1,130 @@
+package comeon.core;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import com.drew.imaging.ImageMetadataReader;
+import com.drew.imaging.ImageProcessingException;
+import com.drew.metadata.Metadata;
+
+/**
+ * Reads metadata from the segments in front of the JPEG scan data only, so that I/O doesn't depend on the image size.
+ * Other formats are handed over to {@link ImageMetadataReader} as a whole.
+ */
+final class HeaderMetadataReader {
+  private static final int MARKER_PREFIX = 0xFF;
+
+  private static final int SOI = 0xD8;
+
+  private static final int SOS = 0xDA;
+
+  private static final int EOI = 0xD9;
+
+  private static final int TEM = 0x01;
+
+  private static final int RST0 = 0xD0;
+
+  private static final int RST7 = 0xD7;
+
+  private HeaderMetadataReader() {
+    super();
+  }
+
+  static Metadata readMetadata(final File file) throws ImageProcessingException, IOException {
+    final byte[] headers;
+    try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      headers = readJpegHeaders(channel);
+    }
+    final Metadata metadata;
+    if (headers == null) {
+      metadata = ImageMetadataReader.readMetadata(file);
+    } else {
+      metadata = ImageMetadataReader.readMetadata(new BufferedInputStream(new ByteArrayInputStream(headers)), false);
+    }
+    return metadata;
+  }
+
+  /**
+   * @return SOI, every segment up to and including the SOS header, then EOI; or {@code null} if this isn't a JPEG
+   *         file or its segments can't be walked.
+   */
+  static byte[] readJpegHeaders(final FileChannel channel) throws IOException {
+    final long size = channel.size();
+    final ByteBuffer marker = ByteBuffer.allocate(4);
+    marker.limit(2);
+    if (size < 4 || !readFully(channel, marker, 0) || (marker.get(0) & 0xFF) != MARKER_PREFIX
+        || (marker.get(1) & 0xFF) != SOI) {
+      return null;
+    }
+    final ByteArrayOutputStream headers = new ByteArrayOutputStream(64 * 1024);
+    headers.write(MARKER_PREFIX);
+    headers.write(SOI);
+    long position = 2;
+    while (true) {
+      marker.clear();
+      marker.limit(2);
+      if (!readFully(channel, marker, position)) {
+        return null;
+      }
+      position += 2;
+      if ((marker.get(0) & 0xFF) != MARKER_PREFIX) {
+        return null;
+      }
+      final int type = marker.get(1) & 0xFF;
+      if (type == MARKER_PREFIX) {
+        // Fill byte, the marker type comes next
+        position--;
+        continue;
+      }
+      if (type == EOI) {
+        break;
+      }
+      if (type == TEM || (type >= RST0 && type <= RST7)) {
+        continue;
+      }
+      marker.clear();
+      marker.limit(2);
+      if (!readFully(channel, marker, position)) {
+        return null;
+      }
+      final int length = ((marker.get(0) & 0xFF) << 8) | (marker.get(1) & 0xFF);
+      if (length < 2 || position + length > size) {
+        return null;
+      }
+      final ByteBuffer segment = ByteBuffer.allocate(length);
+      readFully(channel, segment, position);
+      headers.write(MARKER_PREFIX);
+      headers.write(type);
+      headers.write(segment.array(), 0, length);
+      position += length;
+      if (type == SOS) {
+        break;
+      }
+    }
+    headers.write(MARKER_PREFIX);
+    headers.write(EOI);
+    return headers.toByteArray();
+  }
+
+  /**
+   * @return {@code false} if the end of the file was reached first.
+   */
+  private static boolean readFully(final FileChannel channel, final ByteBuffer buffer, final long position)
+      throws IOException {
+    long read = 0;
+    while (buffer.hasRemaining()) {
+      final int count = channel.read(buffer, position + read);
+      if (count < 0) {
+        return false;
+      }
+      read += count;
+    }
+    return true;
+  }
+}
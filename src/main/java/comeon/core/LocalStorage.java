@@ -0,0 +1,20 @@
+package comeon.core;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+public final class LocalStorage {
+  private static final String DIRECTORY_NAME = ".comeon";
+
+  private LocalStorage() {
+    super();
+  }
+
+  public static Path getDirectory() throws IOException {
+    final Path directory = Paths.get(System.getProperty("user.home"), DIRECTORY_NAME);
+    Files.createDirectories(directory);
+    return directory;
+  }
+}
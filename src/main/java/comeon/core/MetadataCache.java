@@ -0,0 +1,13 @@
+package comeon.core;
+
+import java.io.File;
+
+public interface MetadataCache {
+  /**
+   * @return the metadata previously stored for this file, or {@code null} if there is none or if the file changed
+   *         since.
+   */
+  ExtractedMetadata get(File file);
+
+  void put(File file, ExtractedMetadata metadata);
+}
@@ -1,6 +1,9 @@
 package comeon.core;
 
+import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -11,22 +14,31 @@ import com.drew.metadata.TagDescriptor;
 final class MetadataHelper {
   private static final Logger LOGGER = LoggerFactory.getLogger(MetadataHelper.class);
 
+  private static final ConcurrentMap<Class<?>, Constructor<?>> DESCRIPTOR_CONSTRUCTORS = new ConcurrentHashMap<>();
+
   private MetadataHelper() {
     super();
   }
 
   @SuppressWarnings("unchecked")
   static <T extends Directory> TagDescriptor<T> getDescriptor(final T dir) {
-    final String dirClassName = dir.getClass().getName();
-    final String descriptorClassName = dirClassName.replace("Directory", "Descriptor");
     try {
-      final Class<TagDescriptor<T>> descriptorClass = (Class<TagDescriptor<T>>) Class.forName(descriptorClassName);
-      final TagDescriptor<T> descriptor = descriptorClass.getDeclaredConstructor(dir.getClass()).newInstance(dir);
-      return descriptor;
+      return (TagDescriptor<T>) getDescriptorConstructor(dir.getClass()).newInstance(dir);
     } catch (final ClassNotFoundException | InstantiationException | IllegalAccessException | IllegalArgumentException
         | InvocationTargetException | NoSuchMethodException | SecurityException e) {
       LOGGER.warn("Can't instantiate tag descriptor for directory {}", dir.getName(), e);
       throw new RuntimeException("Can't instantiate a descriptor for metadata directory", e);
     }
   }
+
+  private static Constructor<?> getDescriptorConstructor(final Class<? extends Directory> dirClass)
+      throws ClassNotFoundException, NoSuchMethodException {
+    Constructor<?> constructor = DESCRIPTOR_CONSTRUCTORS.get(dirClass);
+    if (constructor == null) {
+      final String descriptorClassName = dirClass.getName().replace("Directory", "Descriptor");
+      constructor = Class.forName(descriptorClassName).getDeclaredConstructor(dirClass);
+      DESCRIPTOR_CONSTRUCTORS.putIfAbsent(dirClass, constructor);
+    }
+    return constructor;
+  }
 }
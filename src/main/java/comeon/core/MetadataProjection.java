@@ -0,0 +1,122 @@
+package comeon.core;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.SetMultimap;
+
+import comeon.core.extmetadata.ExternalMetadataSource;
+import comeon.model.Template;
+import comeon.templates.velocity.VelocityTemplate;
+
+/**
+ * The metadata directories and tags a template refers to. Anything the analysis can't figure out, such as macros
+ * defined elsewhere or access to the whole metadata map, makes the projection complete.
+ */
+final class MetadataProjection {
+  static final MetadataProjection ALL = new MetadataProjection(true, ImmutableSet.<String> of(),
+      HashMultimap.<String, String> create());
+
+  /**
+   * <code>$Dir</code>, <code>$!{Dir.Tag}</code>, <code>$Dir.Tag.method(</code>... The third group tells whether the
+   * first property is actually a method call.
+   */
+  private static final Pattern REFERENCE = Pattern
+      .compile("\\$!?\\{?([a-zA-Z][a-zA-Z0-9_-]*)(?:\\.([a-zA-Z][a-zA-Z0-9_-]*)(\\()?)?");
+
+  private static final Pattern DIRECTIVE = Pattern.compile("#\\{?([a-zA-Z][a-zA-Z0-9_]*)\\}?\\s*\\(");
+
+  private static final Pattern MACRO_DEFINITION = Pattern.compile("#\\{?macro\\}?\\s*\\(\\s*([a-zA-Z][a-zA-Z0-9_]*)");
+
+  private static final Set<String> BUILTIN_DIRECTIVES = ImmutableSet.of("if", "elseif", "foreach", "set", "macro",
+      "define", "literal", "break", "stop");
+
+  private static final String PICTURE = "picture";
+
+  private static final Set<String> PICTURE_METADATA = ImmutableSet.of("metadata", "getMetadata");
+
+  private final boolean all;
+
+  private final Set<String> directories;
+
+  private final SetMultimap<String, String> tags;
+
+  private MetadataProjection(final boolean all, final Set<String> directories, final SetMultimap<String, String> tags) {
+    this.all = all;
+    this.directories = directories;
+    this.tags = tags;
+  }
+
+  static MetadataProjection of(final Template template, final ExternalMetadataSource<?> externalMetadataSource) {
+    if (!(template.getKind() instanceof VelocityTemplate) || template.getTemplateText() == null) {
+      return ALL;
+    }
+    final String text = template.getTemplateText();
+    if (callsExternalCode(text)) {
+      return ALL;
+    }
+    final Set<String> directories = new HashSet<>();
+    final SetMultimap<String, String> tags = HashMultimap.create();
+    final Matcher matcher = REFERENCE.matcher(text);
+    while (matcher.find()) {
+      final String root = matcher.group(1);
+      final String property = matcher.group(2);
+      if (PICTURE.equals(root) && PICTURE_METADATA.contains(property)) {
+        return ALL;
+      } else if (property == null || matcher.group(3) != null) {
+        directories.add(root);
+      } else {
+        tags.put(root, property);
+      }
+    }
+    final String pictureExpression = externalMetadataSource.getPictureExpression();
+    if (pictureExpression != null) {
+      final String[] path = pictureExpression.split("\\.");
+      if (path.length >= 2) {
+        tags.put(path[0], path[1]);
+      } else {
+        directories.add(path[0]);
+      }
+    }
+    return new MetadataProjection(false, directories, tags);
+  }
+
+  private static boolean callsExternalCode(final String text) {
+    final Set<String> macros = new HashSet<>();
+    final Matcher definitions = MACRO_DEFINITION.matcher(text);
+    while (definitions.find()) {
+      macros.add(definitions.group(1));
+    }
+    final Matcher directives = DIRECTIVE.matcher(text);
+    while (directives.find()) {
+      final String directive = directives.group(1);
+      if (!BUILTIN_DIRECTIVES.contains(directive) && !macros.contains(directive)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  boolean isComplete() {
+    return all;
+  }
+
+  /**
+   * @return the part of the directory the template needs, or {@code null} if it needs none.
+   */
+  ExtractedMetadata.DirectoryValues apply(final ExtractedMetadata.DirectoryValues directory) {
+    final ExtractedMetadata.DirectoryValues projected;
+    if (all || directories.contains(directory.getKey())) {
+      projected = directory;
+    } else if (tags.containsKey(directory.getKey())) {
+      projected = directory.project(tags.get(directory.getKey()));
+    } else {
+      projected = null;
+    }
+    return projected;
+  }
+}
@@ -0,0 +1,59 @@
+package comeon.core;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.beanutils.DynaBean;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+/**
+ * Registry of directory schemas and tag values shared across pictures. Thousands of pictures from the same camera
+ * have the same directories, tags and many identical values (make, model, lens, copyright...), so each is kept once.
+ */
+final class MetadataSchemas {
+  private static final String NON_WORD_CHARS = "[^\\w]";
+
+  private static final Interner<DirectorySchema> SCHEMAS = Interners.newWeakInterner();
+
+  private static final Interner<String> VALUES = Interners.newWeakInterner();
+
+  private static final ConcurrentMap<String, String> PROPERTY_NAMES = new ConcurrentHashMap<>();
+
+  private MetadataSchemas() {
+    super();
+  }
+
+  /**
+   * @return the template-friendly name of a directory or tag, ie without non-word characters.
+   */
+  static String propertyName(final String name) {
+    String propertyName = PROPERTY_NAMES.get(name);
+    if (propertyName == null) {
+      propertyName = name.replaceAll(NON_WORD_CHARS, "");
+      final String previous = PROPERTY_NAMES.putIfAbsent(name, propertyName);
+      if (previous != null) {
+        propertyName = previous;
+      }
+    }
+    return propertyName;
+  }
+
+  static DirectorySchema getSchema(final String name, final String[] tagNames) {
+    return SCHEMAS.intern(new DirectorySchema(name, tagNames));
+  }
+
+  static String intern(final String value) {
+    return value == null ? null : VALUES.intern(value);
+  }
+
+  static DynaBean newBean(final ExtractedMetadata.DirectoryValues directory) {
+    final DirectorySchema schema = getSchema(directory.getName(), directory.getTagNames());
+    final String[] values = new String[directory.getValues().length];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = intern(directory.getValues()[i]);
+    }
+    return new CompactDynaBean(schema, values);
+  }
+}
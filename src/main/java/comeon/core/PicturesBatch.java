@@ -5,23 +5,26 @@ import java.beans.PropertyChangeListener;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
-import org.apache.commons.beanutils.DynaBean;
-import org.apache.commons.beanutils.DynaProperty;
-import org.apache.commons.beanutils.LazyDynaBean;
-import org.apache.commons.beanutils.LazyDynaClass;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.drew.imaging.ImageMetadataReader;
 import com.drew.imaging.ImageProcessingException;
 import com.drew.metadata.Directory;
 import com.drew.metadata.Metadata;
@@ -32,6 +35,7 @@ import com.google.common.base.Predicate;
 import com.google.common.collect.Sets;
 
 import comeon.core.extmetadata.ExternalMetadataSource;
+import comeon.model.MetadataLoader;
 import comeon.model.Picture;
 import comeon.model.Template;
 import comeon.model.User;
@@ -40,6 +44,15 @@ import comeon.model.processors.PreProcessor;
 public final class PicturesBatch {
   private static final Logger LOGGER = LoggerFactory.getLogger(PicturesBatch.class);
   
+  private static final int CHUNK_SIZE = 50;
+  
+  private static final long CHUNK_DELAY_MILLIS = 500;
+  
+  /**
+   * Files being read or read but not handed over yet. This bounds memory and lets a slow listener hold reading back.
+   */
+  private static final int READ_AHEAD = 2 * CHUNK_SIZE;
+  
   private final File[] files;
 
   private final Template defaultTemplate;
@@ -48,43 +61,121 @@ public final class PicturesBatch {
 
   private final ExecutorService pool;
 
-  private final CountDownLatch latch;
+  private final Queue<Future<Picture>> readers;
   
   private final Set<PreProcessor> preProcessors;
   
   private final ExternalMetadataSource<?> externalMetadataSource;
+  
+  private final MetadataCache metadataCache;
+  
+  private final MetadataProjection projection;
+  
+  private final ThumbnailStore thumbnailStore;
+  
+  private volatile boolean cancelled;
 
-  PicturesBatch(final File[] files, final Template defautTemplate, final ExecutorService pool, final Set<PreProcessor> preProcessors, final ExternalMetadataSource<?> externalMetadataSource) {
+  PicturesBatch(final File[] files, final Template defautTemplate, final ExecutorService pool, final Set<PreProcessor> preProcessors, final ExternalMetadataSource<?> externalMetadataSource, final MetadataCache metadataCache,
+      final ThumbnailStore thumbnailStore) {
     this.files = files;
     this.defaultTemplate = defautTemplate;
     this.pool = pool;
     this.pictures = Collections.synchronizedList(new ArrayList<Picture>(files.length));
-    this.latch = new CountDownLatch(files.length);
+    this.readers = new ConcurrentLinkedQueue<>();
     this.preProcessors = preProcessors;
     this.externalMetadataSource = externalMetadataSource;
+    this.metadataCache = metadataCache;
+    this.projection = MetadataProjection.of(defautTemplate, externalMetadataSource);
+    this.thumbnailStore = thumbnailStore;
+    this.cancelled = false;
   }
 
-  public PicturesBatch readFiles(final User user) {
-    for (final File file : files) {
-      pool.execute(new PictureReader(file, user));
-    }
-
+  /**
+   * Reads all files, handing pictures over to the listener in chunks as soon as they are built. Returns once every
+   * file has been read or the batch has been cancelled. The listener is called from the calling thread, and no more
+   * than {@value #READ_AHEAD} files are read ahead while it runs.
+   */
+  public PicturesBatch readFiles(final User user, final Listener listener) {
+    final long start = System.nanoTime();
+    final CompletionService<Picture> completionService = new ExecutorCompletionService<>(pool);
+    int submitted = 0;
+    final List<Picture> chunk = new ArrayList<>(CHUNK_SIZE);
+    long lastPublication = System.currentTimeMillis();
+    int processed = 0;
     try {
-      latch.await();
+      while (true) {
+        while (!cancelled && submitted < files.length && submitted - processed < READ_AHEAD) {
+          readers.add(completionService.submit(new PictureReader(files[submitted], user)));
+          submitted++;
+        }
+        if (processed >= submitted) {
+          break;
+        }
+        final Future<Picture> reader = completionService.poll(CHUNK_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        if (reader != null) {
+          processed++;
+          readers.remove(reader);
+          final Picture picture = getPicture(reader);
+          if (picture != null) {
+            pictures.add(picture);
+            chunk.add(picture);
+          }
+        }
+        final long now = System.currentTimeMillis();
+        if (chunk.size() >= CHUNK_SIZE || now - lastPublication >= CHUNK_DELAY_MILLIS || processed == submitted) {
+          listener.picturesRead(new ArrayList<>(chunk), processed, files.length);
+          chunk.clear();
+          lastPublication = now;
+        }
+      }
     } catch (final InterruptedException e) {
-      Thread.interrupted();
+      Thread.currentThread().interrupt();
+      this.cancel();
     }
 
+    if (processed > 0) {
+      final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+      LOGGER.info("Read {} files in {} ms ({} ms per file)", processed, elapsedMillis, elapsedMillis / processed);
+    }
     return this;
   }
 
+  public void cancel() {
+    this.cancelled = true;
+    for (final Future<Picture> reader : readers) {
+      reader.cancel(true);
+    }
+  }
+
+  public boolean isCancelled() {
+    return cancelled;
+  }
+
+  /**
+   * @return the pictures read so far.
+   */
   public List<Picture> getPictures() {
-    return pictures;
+    synchronized (pictures) {
+      return new ArrayList<>(pictures);
+    }
+  }
+
+  private Picture getPicture(final Future<Picture> reader) throws InterruptedException {
+    try {
+      return reader.get();
+    } catch (final CancellationException e) {
+      return null;
+    } catch (final ExecutionException e) {
+      LOGGER.warn("Picture reader failed", e.getCause());
+      return null;
+    }
   }
 
-  final class PictureReader implements Runnable {
-    private static final String NON_WORD_CHARS = "[^\\w]";
+  public interface Listener {
+    void picturesRead(List<Picture> pictures, int processed, int total);
+  }
 
+  final class PictureReader implements Callable<Picture> {
     private final File file;
 
     private final User user;
@@ -95,87 +186,170 @@ public final class PicturesBatch {
     }
 
     @Override
-    public void run() {
+    public Picture call() {
       final String fileName = file.getAbsolutePath();
       try {
         final Picture picture = buildPicture();
         picture.renderTemplate(user);
-        picture.addPropertyChangeListener(new PropertyChangeListener() {
-          @Override
-          public void propertyChange(final PropertyChangeEvent evt) {
-            if ("templateText".equals(evt.getPropertyName())) {
-              pool.submit(new Runnable() {
-                @Override
-                public void run() {
-                  picture.renderTemplate(user);
-                }
-              });
-            }
-          }
-        });
-        pictures.add(picture);
+        picture.addPropertyChangeListener(new TemplateChangeListener(picture, pool, user));
+        return picture;
       } catch (final ImageProcessingException e) {
         LOGGER.warn("Can't read metadata from {}", fileName, e);
       } catch (final IOException e) {
         LOGGER.warn("Can't read file {}", fileName, e);
-      } finally {
-        latch.countDown();
       }
+      return null;
     }
     
     Picture buildPicture() throws ImageProcessingException, IOException {
       final String fileName = file.getAbsolutePath();
-      final Metadata rawMetadata = ImageMetadataReader.readMetadata(file);
-      final ExifThumbnailDirectory thumbnailDirectory = rawMetadata.getDirectory(ExifThumbnailDirectory.class);
-      final byte[] thumbnail;
-      if (thumbnailDirectory != null && thumbnailDirectory.hasThumbnailData()) {
-        thumbnail = thumbnailDirectory.getThumbnailData();
-      } else {
-        thumbnail = new byte[0];
-      }
-      final Map<String, Object> metadata = new HashMap<>(rawMetadata.getDirectoryCount());
-      for (final Directory directory : rawMetadata.getDirectories()) {
-        copy(directory, metadata);
-        preProcess(directory, metadata);
-      }
-      final Picture picture = new Picture(file, fileName, defaultTemplate, metadata, thumbnail);
+      final ExtractedMetadata extracted = getExtractedMetadata(file, metadataCache, preProcessors);
+      final Map<String, Object> metadata = toMetadata(extracted, projection);
+      final Picture picture = new Picture(file, fileName, defaultTemplate, metadata,
+          thumbnailStore.store(extracted.getThumbnail()),
+          projection.isComplete() ? null : new CompleteMetadataLoader(file, metadataCache, preProcessors));
       metadata.put(Core.EXTERNAL_METADATA_KEY, externalMetadataSource.getPictureMetadata(picture, metadata));
       return picture;
     }
+  }
 
-    private void copy(final Directory directory, final Map<String, Object> metadata) {
-      final TagDescriptor<?> descriptor = MetadataHelper.getDescriptor(directory);
-      final List<DynaProperty> properties = new LinkedList<>();
-      for (final Tag tag : directory.getTags()) {
-        final DynaProperty property = new DynaProperty(tag.getTagName().replaceAll(NON_WORD_CHARS, ""), String.class);
-        properties.add(property);
+  private static ExtractedMetadata getExtractedMetadata(final File file, final MetadataCache metadataCache,
+      final Set<PreProcessor> preProcessors) throws ImageProcessingException, IOException {
+    ExtractedMetadata extracted = metadataCache.get(file);
+    if (extracted == null) {
+      extracted = extract(file, preProcessors);
+      metadataCache.put(file, extracted);
+    }
+    return extracted;
+  }
+
+  private static Map<String, Object> toMetadata(final ExtractedMetadata extracted,
+      final MetadataProjection projection) {
+    final Map<String, Object> metadata = new HashMap<>(extracted.getDirectories().size()
+        + extracted.getProcessed().size() + 1);
+    for (final ExtractedMetadata.DirectoryValues directory : extracted.getDirectories()) {
+      final ExtractedMetadata.DirectoryValues projected = projection.apply(directory);
+      if (projected != null) {
+        metadata.put(projected.getKey(), MetadataSchemas.newBean(projected));
       }
-      final LazyDynaClass directoryClass = new LazyDynaClass(directory.getName(), null,
-          properties.toArray(new DynaProperty[properties.size()]));
-      directoryClass.setReturnNull(true);
-      final DynaBean directoryMetadata = new LazyDynaBean(directoryClass);
-      for (final Tag tag : directory.getTags()) {
-        directoryMetadata.set(tag.getTagName().replaceAll(NON_WORD_CHARS, ""),
-            descriptor.getDescription(tag.getTagType()));
+    }
+    metadata.putAll(extracted.getProcessed());
+    return metadata;
+  }
+
+  private static ExtractedMetadata extract(final File file, final Set<PreProcessor> preProcessors)
+      throws ImageProcessingException, IOException {
+    final Metadata rawMetadata = HeaderMetadataReader.readMetadata(file);
+    final ExifThumbnailDirectory thumbnailDirectory = rawMetadata.getDirectory(ExifThumbnailDirectory.class);
+    final byte[] thumbnail;
+    if (thumbnailDirectory != null && thumbnailDirectory.hasThumbnailData()) {
+      thumbnail = thumbnailDirectory.getThumbnailData();
+    } else {
+      thumbnail = new byte[0];
+    }
+    final List<ExtractedMetadata.DirectoryValues> directories = new ArrayList<>(rawMetadata.getDirectoryCount());
+    final Map<String, Object> processed = new HashMap<>();
+    for (final Directory directory : rawMetadata.getDirectories()) {
+      directories.add(copy(directory));
+      preProcess(directory, processed, preProcessors);
+    }
+    return new ExtractedMetadata(directories, processed, thumbnail);
+  }
+
+  private static ExtractedMetadata.DirectoryValues copy(final Directory directory) {
+    final Collection<Tag> tags = directory.getTags();
+    final String[] tagNames = new String[tags.size()];
+    final String[] values = new String[tags.size()];
+    final TagDescriptor<?> descriptor = MetadataHelper.getDescriptor(directory);
+    int i = 0;
+    for (final Tag tag : tags) {
+      tagNames[i] = MetadataSchemas.propertyName(tag.getTagName());
+      values[i] = MetadataSchemas.intern(descriptor.getDescription(tag.getTagType()));
+      i++;
+    }
+    return new ExtractedMetadata.DirectoryValues(MetadataSchemas.propertyName(directory.getName()),
+        directory.getName(), tagNames, values);
+  }
+
+  private static void preProcess(final Directory directory, final Map<String, Object> metadata,
+      final Set<PreProcessor> preProcessors) {
+    for (final PreProcessor preProcessor : filterPreProcessors(preProcessors, directory.getClass())) {
+      preProcessor.process(directory, metadata);
+    }
+  }
+
+  private static Set<PreProcessor> filterPreProcessors(final Set<PreProcessor> preProcessors,
+      final Class<? extends Directory> clazz) {
+    final Predicate<PreProcessor> predicate = new Predicate<PreProcessor>() {
+      @Override
+      public boolean apply(final PreProcessor processor) {
+        return clazz.isAssignableFrom(processor.getSupportedClass());
       }
-      metadata.put(directory.getName().replaceAll(NON_WORD_CHARS, ""), directoryMetadata);
+    };
+    return Sets.filter(preProcessors, predicate);
+  }
+
+  /**
+   * Renders a picture again once its template changes, loading the metadata the new template may need first.
+   */
+  private static final class TemplateChangeListener implements PropertyChangeListener {
+    private final Picture picture;
+
+    private final ExecutorService pool;
+
+    private final User user;
+
+    TemplateChangeListener(final Picture picture, final ExecutorService pool, final User user) {
+      this.picture = picture;
+      this.pool = pool;
+      this.user = user;
     }
 
-    private void preProcess(final Directory directory, final Map<String, Object> metadata) {
-      final Set<PreProcessor> preProcessors = filterPreProcessors(directory.getClass());
-      for (final PreProcessor preProcessor : preProcessors) {
-        preProcessor.process(directory, metadata);
+    @Override
+    public void propertyChange(final PropertyChangeEvent evt) {
+      if ("templateText".equals(evt.getPropertyName())) {
+        pool.submit(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              picture.loadMetadata();
+            } catch (final IOException e) {
+              LOGGER.warn("Can't load metadata of {}", picture.getFileName(), e);
+            }
+            picture.renderTemplate(user);
+          }
+        });
       }
     }
-    
-    private Set<PreProcessor> filterPreProcessors(final Class<? extends Directory> clazz) {
-      final Predicate<PreProcessor> predicate = new Predicate<PreProcessor>() {
-        @Override
-        public boolean apply(final PreProcessor processor) {
-          return clazz.isAssignableFrom(processor.getSupportedClass());
-        }
-      };
-      return Sets.filter(preProcessors, predicate);
+  }
+
+  /**
+   * Loads all metadata of a picture read with a partial projection. Holds no reference to the batch, which may be
+   * collected while its pictures live on.
+   */
+  private static final class CompleteMetadataLoader implements MetadataLoader {
+    private final File file;
+
+    private final MetadataCache metadataCache;
+
+    private final Set<PreProcessor> preProcessors;
+
+    CompleteMetadataLoader(final File file, final MetadataCache metadataCache, final Set<PreProcessor> preProcessors) {
+      this.file = file;
+      this.metadataCache = metadataCache;
+      this.preProcessors = preProcessors;
+    }
+
+    @Override
+    public Map<String, Object> loadMetadata(final Picture picture) throws IOException {
+      try {
+        final Map<String, Object> metadata = toMetadata(getExtractedMetadata(file, metadataCache, preProcessors),
+            MetadataProjection.ALL);
+        metadata.put(Core.EXTERNAL_METADATA_KEY, picture.getMetadata().get(Core.EXTERNAL_METADATA_KEY));
+        return metadata;
+      } catch (final ImageProcessingException e) {
+        throw new IOException(e);
+      }
     }
   }
 }
@@ -0,0 +1,67 @@
+package comeon.core;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.inject.Singleton;
+import comeon.mediawiki.FailedUploadException;
+import comeon.mediawiki.MediaWiki;
+import comeon.mediawiki.SiteInfo;
+import comeon.model.Picture;
+
+/**
+ * Finds the pictures the wiki would refuse, before any of them is sent: those larger than it accepts, those with an
+ * extension it doesn't allow, and those whose name is already taken, which would otherwise silently overwrite the
+ * existing file since uploads ignore warnings. The wiki's answers are reported with its own error codes.
+ */
+@Singleton
+public final class PreflightCheck {
+  private static final Logger LOGGER = LoggerFactory.getLogger(PreflightCheck.class);
+
+  /**
+   * @return why each picture the wiki would refuse is refused. Checks the wiki can't be queried for are skipped.
+   */
+  public Map<Picture, FailedUploadException> check(final MediaWiki mediaWiki, final List<Picture> pictures) {
+    final Map<Picture, FailedUploadException> rejections = new LinkedHashMap<>();
+    try {
+      final SiteInfo siteInfo = mediaWiki.getSiteInfo();
+      for (final Picture picture : pictures) {
+        final String fileName = picture.getFile().getName();
+        final long size = picture.getFile().length();
+        if (!siteInfo.allowsSize(size)) {
+          rejections.put(picture, new FailedUploadException("file-too-large", fileName + " is " + size
+              + " bytes large, the wiki accepts up to " + siteInfo.getMaxUploadSize()));
+        } else if (!siteInfo.allowsExtension(fileName)) {
+          rejections.put(picture, new FailedUploadException("filetype-banned", "The wiki doesn't accept files such as "
+              + fileName));
+        }
+      }
+    } catch (final IOException e) {
+      LOGGER.warn("Can't get the wiki's upload limits, not checking them", e);
+    }
+    final Map<String, Picture> byName = new LinkedHashMap<>();
+    for (final Picture picture : pictures) {
+      if (!rejections.containsKey(picture)) {
+        byName.put(picture.getFile().getName(), picture);
+      }
+    }
+    try {
+      final Set<String> existing = mediaWiki.findExistingFiles(byName.keySet());
+      for (final Map.Entry<String, Picture> picture : byName.entrySet()) {
+        if (existing.contains(picture.getKey())) {
+          rejections.put(picture.getValue(), new FailedUploadException("fileexists",
+              "The wiki already has a file named " + picture.getKey()));
+        }
+      }
+    } catch (final IOException e) {
+      LOGGER.warn("Can't check whether file names are taken, not checking them", e);
+    }
+    return rejections;
+  }
+}
@@ -16,15 +16,21 @@ public final class RealPicturesBatchFactory implements PicturesBatchFactory {
   
   private final Set<PreProcessor> preProcessors;
   
+  private final MetadataCache metadataCache;
+  
+  private final ThumbnailStore thumbnailStore;
+  
   @Inject
-  public RealPicturesBatchFactory(final ExecutorService pool, final Set<PreProcessor> preProcessors) {
+  public RealPicturesBatchFactory(final ExecutorService pool, final Set<PreProcessor> preProcessors, final MetadataCache metadataCache, final ThumbnailStore thumbnailStore) {
     this.pool = pool;
     this.preProcessors = preProcessors;
+    this.metadataCache = metadataCache;
+    this.thumbnailStore = thumbnailStore;
   }
   
   @Override
   public PicturesBatch makePicturesBatch(final File[] files, final Template defautTemplate, final ExternalMetadataSource<?> externalMetadataSource) {
-    return new PicturesBatch(files, defautTemplate, pool, preProcessors, externalMetadataSource);
+    return new PicturesBatch(files, defautTemplate, pool, preProcessors, externalMetadataSource, metadataCache, thumbnailStore);
   }
 
 }
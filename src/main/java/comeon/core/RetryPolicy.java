@@ -0,0 +1,111 @@
+package comeon.core;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableSet;
+import com.google.inject.Singleton;
+import comeon.mediawiki.FailedUploadException;
+import comeon.mediawiki.HttpStatusException;
+
+/**
+ * Decides whether and when a failed upload is tried again. Failures the wiki or the network may recover from are
+ * retried with an exponential backoff, half of which is random so that parallel uploads don't retry in lockstep, and
+ * never sooner than the wiki asked. Anything else, including API errors we don't know, fails the upload at once.
+ */
+@Singleton
+public final class RetryPolicy {
+  /**
+   * Returned instead of a delay when the upload must not be tried again.
+   */
+  public static final long NO_RETRY = -1;
+
+  private static final int MAX_ATTEMPTS = 5;
+
+  private static final long BASE_DELAY = TimeUnit.SECONDS.toMillis(2);
+
+  private static final long MAX_DELAY = TimeUnit.MINUTES.toMillis(5);
+
+  private static final Set<String> RETRYABLE_CODES = ImmutableSet.of("ratelimited", "maxlag", "readonly",
+      "internal_api_error_DBConnectionError", "internal_api_error_DBQueryError", "backend-fail-internal");
+
+  private static final Set<String> SESSION_CODES = ImmutableSet.of("badtoken", "notloggedin", "assertuserfailed");
+
+  private final Random random;
+
+  public RetryPolicy() {
+    this.random = new Random();
+  }
+
+  /**
+   * @param attempt
+   *          the number of the attempt that just failed, starting at 1.
+   * @return how long to wait before the next attempt, in milliseconds, or {@link #NO_RETRY}.
+   */
+  public long getDelay(final int attempt, final Exception cause) {
+    final long delay;
+    if (attempt >= MAX_ATTEMPTS || !isRetryable(cause)) {
+      delay = NO_RETRY;
+    } else {
+      final long backoff = Math.min(MAX_DELAY, BASE_DELAY << Math.min(attempt - 1, 20));
+      final long jittered = backoff / 2 + (long) (random.nextDouble() * (backoff / 2));
+      delay = Math.max(jittered, getRetryAfter(cause));
+    }
+    return delay;
+  }
+
+  /**
+   * @return whether the failure is due to the session, which a new login may fix once.
+   */
+  public boolean isSessionLost(final Exception cause) {
+    return SESSION_CODES.contains(getCode(cause));
+  }
+
+  private static boolean isRetryable(final Exception cause) {
+    final String code = getCode(cause);
+    final boolean retryable;
+    if (code != null) {
+      retryable = RETRYABLE_CODES.contains(code);
+    } else {
+      final Throwable root = Throwables.getRootCause(cause);
+      if (root instanceof HttpStatusException) {
+        final int status = ((HttpStatusException) root).getStatusCode();
+        retryable = status >= 500 || status == 429 || status == 408;
+      } else if (root instanceof FileNotFoundException) {
+        retryable = false;
+      } else {
+        // Connection resets, timeouts, truncated responses and the like.
+        retryable = root instanceof IOException;
+      }
+    }
+    return retryable;
+  }
+
+  private static String getCode(final Exception cause) {
+    for (final Throwable throwable : Throwables.getCausalChain(cause)) {
+      if (throwable instanceof FailedUploadException) {
+        final String code = ((FailedUploadException) throwable).getCode();
+        if (code != null) {
+          return code;
+        }
+      }
+    }
+    return null;
+  }
+
+  private static long getRetryAfter(final Exception cause) {
+    long retryAfter = 0;
+    for (final Throwable throwable : Throwables.getCausalChain(cause)) {
+      if (throwable instanceof FailedUploadException) {
+        retryAfter = Math.max(retryAfter, ((FailedUploadException) throwable).getRetryAfter());
+      } else if (throwable instanceof HttpStatusException) {
+        retryAfter = Math.max(retryAfter, ((HttpStatusException) throwable).getRetryAfter());
+      }
+    }
+    return Math.min(MAX_DELAY, retryAfter);
+  }
+}
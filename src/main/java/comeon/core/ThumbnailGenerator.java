@@ -0,0 +1,248 @@
+package comeon.core;
+
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import comeon.model.Picture;
+
+/**
+ * Builds thumbnails for pictures that have no embedded one, in the background and with low priority. Images are read
+ * with source subsampling so that full resolution rasters are never allocated. Generated thumbnails are kept in the
+ * user's ComeOn! directory, keyed by path, size and modification time. Once they take more than
+ * {@value #MAX_DIRECTORY_SIZE} bytes, the least recently used ones are removed when the generator starts.
+ */
+@Singleton
+public final class ThumbnailGenerator {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ThumbnailGenerator.class);
+
+  private static final String DIRECTORY_NAME = "thumbnails";
+
+  private static final String SUFFIX = ".jpg";
+
+  private static final int TARGET_SIZE = 256;
+
+  /**
+   * About 4000 thumbnails.
+   */
+  private static final long MAX_DIRECTORY_SIZE = 64 * 1024 * 1024;
+
+  private static final long STALE_TEMPORARY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+  private static final int THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+  private final ThumbnailStore thumbnailStore;
+
+  private final ExecutorService pool;
+
+  private final Path directory;
+
+  @Inject
+  public ThumbnailGenerator(final ThumbnailStore thumbnailStore) {
+    this.thumbnailStore = thumbnailStore;
+    final ThreadPoolExecutor executor = new ThreadPoolExecutor(THREADS, THREADS, 30, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>(), new ThreadFactoryBuilder().setNameFormat("thumbnail-generator-%d")
+            .setDaemon(true).setPriority(Thread.MIN_PRIORITY).build());
+    executor.allowCoreThreadTimeOut(true);
+    this.pool = executor;
+    Path thumbnailsDirectory;
+    try {
+      thumbnailsDirectory = Files.createDirectories(LocalStorage.getDirectory().resolve(DIRECTORY_NAME));
+    } catch (final IOException e) {
+      LOGGER.warn("Generated thumbnails won't be kept", e);
+      thumbnailsDirectory = null;
+    }
+    this.directory = thumbnailsDirectory;
+    if (directory != null) {
+      pool.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            prune();
+          } catch (final IOException e) {
+            LOGGER.warn("Can't prune generated thumbnails", e);
+          }
+        }
+      });
+    }
+  }
+
+  public void generate(final Picture picture) {
+    if (GraphicsEnvironment.isHeadless()) {
+      // Nobody will look at it.
+      return;
+    }
+    pool.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          final byte[] thumbnail = getThumbnail(picture.getFile());
+          if (thumbnail != null) {
+            picture.setThumbnail(thumbnailStore.store(thumbnail));
+          }
+        } catch (final IOException | RuntimeException e) {
+          LOGGER.warn("Can't generate thumbnail for {}", picture.getFileName(), e);
+        }
+      }
+    });
+  }
+
+  private byte[] getThumbnail(final File file) throws IOException {
+    final Path cached = directory == null ? null : directory.resolve(getKey(file));
+    if (cached != null && Files.isRegularFile(cached)) {
+      // Access times are often not kept, the modification time tells when it was last used instead.
+      Files.setLastModifiedTime(cached, FileTime.fromMillis(System.currentTimeMillis()));
+      return Files.readAllBytes(cached);
+    }
+    final byte[] thumbnail = render(file);
+    if (thumbnail != null && cached != null) {
+      final Path temporary = Files.createTempFile(directory, null, null);
+      Files.write(temporary, thumbnail);
+      Files.move(temporary, cached, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    return thumbnail;
+  }
+
+  /**
+   * Removes the least recently used thumbnails beyond the size cap, and temporary files left over by a crash.
+   */
+  private void prune() throws IOException {
+    final List<Path> thumbnails = new ArrayList<>();
+    final Map<Path, BasicFileAttributes> attributes = new HashMap<>();
+    final long staleBefore = System.currentTimeMillis() - STALE_TEMPORARY_MILLIS;
+    try (final DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+      for (final Path entry : entries) {
+        final BasicFileAttributes entryAttributes = Files.readAttributes(entry, BasicFileAttributes.class);
+        if (!entryAttributes.isRegularFile()) {
+          LOGGER.debug("Ignoring {} among thumbnails", entry);
+        } else if (entry.getFileName().toString().endsWith(SUFFIX)) {
+          thumbnails.add(entry);
+          attributes.put(entry, entryAttributes);
+        } else if (entryAttributes.lastModifiedTime().toMillis() < staleBefore) {
+          // Recent ones may be thumbnails being written.
+          Files.deleteIfExists(entry);
+        }
+      }
+    }
+    // Most recently used first.
+    Collections.sort(thumbnails, new Comparator<Path>() {
+      @Override
+      public int compare(final Path left, final Path right) {
+        return attributes.get(right).lastModifiedTime().compareTo(attributes.get(left).lastModifiedTime());
+      }
+    });
+    long kept = 0;
+    int removed = 0;
+    for (final Path thumbnail : thumbnails) {
+      kept += attributes.get(thumbnail).size();
+      if (kept > MAX_DIRECTORY_SIZE) {
+        Files.deleteIfExists(thumbnail);
+        removed++;
+      }
+    }
+    if (removed > 0) {
+      LOGGER.info("Removed {} least recently used thumbnails", removed);
+    }
+  }
+
+  private static String getKey(final File file) {
+    return Hashing.sha1().newHasher().putString(file.getAbsolutePath(), Charsets.UTF_8).putLong(file.length())
+        .putLong(file.lastModified()).hash().toString()
+        + SUFFIX;
+  }
+
+  /**
+   * @return the encoded thumbnail, or {@code null} if no reader handles this file.
+   */
+  private static byte[] render(final File file) throws IOException {
+    try (final ImageInputStream input = ImageIO.createImageInputStream(file)) {
+      if (input == null) {
+        return null;
+      }
+      final Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+      if (!readers.hasNext()) {
+        return null;
+      }
+      final ImageReader reader = readers.next();
+      try {
+        reader.setInput(input, true, false);
+        final BufferedImage image;
+        if (hasLargeEnoughThumbnail(reader)) {
+          image = reader.readThumbnail(0, 0);
+        } else {
+          final int subsampling = Math.max(1, Math.max(reader.getWidth(0), reader.getHeight(0)) / TARGET_SIZE);
+          final ImageReadParam param = reader.getDefaultReadParam();
+          param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+          image = reader.read(0, param);
+        }
+        return encode(scale(image));
+      } finally {
+        reader.dispose();
+      }
+    }
+  }
+
+  /**
+   * Some formats, like JFIF, may embed a thumbnail that metadata-extractor doesn't see as an EXIF one.
+   */
+  private static boolean hasLargeEnoughThumbnail(final ImageReader reader) throws IOException {
+    return reader.readerSupportsThumbnails() && reader.hasThumbnails(0)
+        && Math.max(reader.getThumbnailWidth(0, 0), reader.getThumbnailHeight(0, 0)) >= TARGET_SIZE / 2;
+  }
+
+  private static BufferedImage scale(final BufferedImage image) {
+    final double ratio = Math.min(1d, (double) TARGET_SIZE / Math.max(image.getWidth(), image.getHeight()));
+    final int width = Math.max(1, (int) (image.getWidth() * ratio));
+    final int height = Math.max(1, (int) (image.getHeight() * ratio));
+    final BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    final Graphics2D g2 = scaled.createGraphics();
+    try {
+      g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+      g2.drawImage(image, 0, 0, width, height, null);
+    } finally {
+      g2.dispose();
+    }
+    return scaled;
+  }
+
+  private static byte[] encode(final BufferedImage image) throws IOException {
+    final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    ImageIO.write(image, "jpg", output);
+    return output.toByteArray();
+  }
+}
@@ -0,0 +1,7 @@
+package comeon.core;
+
+import comeon.model.Thumbnail;
+
+public interface ThumbnailStore {
+  Thumbnail store(byte[] thumbnail);
+}
@@ -0,0 +1,31 @@
+package comeon.core;
+
+import comeon.model.Picture;
+import comeon.model.Picture.State;
+
+/**
+ * Durable record of upload state transitions, so that an interrupted batch can be resumed without uploading files
+ * twice.
+ */
+public interface UploadJournal {
+  /**
+   * Records that the upload of a picture to a wiki changed state. The record is on disk when this method returns.
+   * 
+   * @param sha1
+   *          hexadecimal SHA-1 of the bytes sent, or {@code null} if the upload didn't get that far.
+   */
+  void record(String wikiUrl, Picture picture, Outcome outcome, String sha1);
+
+  /**
+   * @return the state of the picture on this wiki according to the journal, or {@code null} if the journal knows
+   *         nothing of this file as it is now.
+   */
+  State replay(String wikiUrl, Picture picture);
+
+  enum Outcome {
+    Started,
+    Uploaded,
+    Failed,
+    Corrupted
+  }
+}
@@ -0,0 +1,69 @@
+package comeon.core;
+
+import java.util.List;
+
+import comeon.model.Picture;
+
+/**
+ * The upload orders offered to the user.
+ */
+public enum UploadPolicies implements UploadPolicy {
+  /**
+   * In the order of the list.
+   */
+  Queued {
+    @Override
+    public int select(final List<Picture> waiting, final long[] sizes, final int turn) {
+      return 0;
+    }
+  },
+  /**
+   * Smallest files first, so that the first results come early.
+   */
+  SmallestFirst {
+    @Override
+    public int select(final List<Picture> waiting, final long[] sizes, final int turn) {
+      return smallest(sizes);
+    }
+  },
+  /**
+   * Largest files first, so that connections stay busy while they last and small files fill the gaps at the end.
+   */
+  LargestFirst {
+    @Override
+    public int select(final List<Picture> waiting, final long[] sizes, final int turn) {
+      return largest(sizes);
+    }
+  },
+  /**
+   * Largest and smallest files alternately, so that large files don't all end up together at the start or at the
+   * end of the batch.
+   */
+  Interleaved {
+    @Override
+    public int select(final List<Picture> waiting, final long[] sizes, final int turn) {
+      // The turn rather than the size of the queue, which uploads queued in between would throw off.
+      return turn % 2 == 0 ? largest(sizes) : smallest(sizes);
+    }
+  };
+
+  private static int smallest(final long[] sizes) {
+    int selected = 0;
+    for (int i = 1; i < sizes.length; i++) {
+      if (sizes[i] < sizes[selected]) {
+        selected = i;
+      }
+    }
+    return selected;
+  }
+
+  private static int largest(final long[] sizes) {
+    int selected = 0;
+    for (int i = 1; i < sizes.length; i++) {
+      if (sizes[i] > sizes[selected]) {
+        selected = i;
+      }
+    }
+    return selected;
+  }
+}
@@ -0,0 +1,21 @@
+package comeon.core;
+
+import java.util.List;
+
+import comeon.model.Picture;
+
+/**
+ * Chooses which of the waiting pictures is uploaded next, each time an upload slot frees up.
+ */
+public interface UploadPolicy {
+  /**
+   * @param waiting
+   *          the waiting pictures with the highest priority, in the order they were queued. Never empty.
+   * @param sizes
+   *          the size of each waiting picture's file, as it was when queued.
+   * @param turn
+   *          the number of uploads selected so far from the same queue.
+   * @return the index of the picture to upload next.
+   */
+  int select(List<Picture> waiting, long[] sizes, int turn);
+}
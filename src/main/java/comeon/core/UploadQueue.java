@@ -0,0 +1,273 @@
+package comeon.core;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.google.common.primitives.Longs;
+
+import comeon.model.Picture;
+
+/**
+ * Work queue of the upload pool, which picks the next upload when a thread asks for one rather than when it is queued.
+ * Changes to the priority of a picture or to the policy thus apply to the uploads still waiting.
+ */
+final class UploadQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+  private final List<Runnable> items;
+
+  private final ReentrantLock lock;
+
+  private final Condition notEmpty;
+
+  private volatile UploadPolicy policy;
+
+  /**
+   * Uploads taken so far, guarded by the lock.
+   */
+  private int turn;
+
+  UploadQueue(final UploadPolicy policy) {
+    this.items = new ArrayList<>();
+    this.lock = new ReentrantLock();
+    this.notEmpty = lock.newCondition();
+    this.policy = policy;
+  }
+
+  UploadPolicy getPolicy() {
+    return policy;
+  }
+
+  void setPolicy(final UploadPolicy policy) {
+    this.policy = policy;
+  }
+
+  /**
+   * A queued upload, whose picture tells its priority.
+   */
+  interface Item {
+    Picture getPicture();
+
+    /**
+     * @return the size of the file, read when the upload was queued rather than each time the queue is sorted.
+     */
+    long getSize();
+  }
+
+  /**
+   * @return the highest priority among the waiting pictures, or 0 if there are none.
+   */
+  int getHighestPriority() {
+    lock.lock();
+    try {
+      int highest = 0;
+      for (final Runnable item : items) {
+        if (item instanceof Item) {
+          highest = Math.max(highest, ((Item) item).getPicture().getPriority());
+        }
+      }
+      return highest;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return the index of the next item, which must exist.
+   */
+  private int selectNext() {
+    int highest = Integer.MIN_VALUE;
+    final List<Integer> candidates = new ArrayList<>();
+    final List<Picture> pictures = new ArrayList<>();
+    final List<Long> sizes = new ArrayList<>();
+    int index = 0;
+    for (final Runnable item : items) {
+      if (!(item instanceof Item)) {
+        // Not an upload, let it through at once.
+        return index;
+      }
+      final Picture picture = ((Item) item).getPicture();
+      final int priority = picture.getPriority();
+      if (priority > highest) {
+        highest = priority;
+        candidates.clear();
+        pictures.clear();
+        sizes.clear();
+      }
+      if (priority == highest) {
+        candidates.add(index);
+        pictures.add(picture);
+        sizes.add(((Item) item).getSize());
+      }
+      index++;
+    }
+    return candidates.get(policy.select(pictures, Longs.toArray(sizes), turn));
+  }
+
+  private Runnable dequeue() {
+    final Runnable item = items.remove(selectNext());
+    if (item instanceof Item) {
+      turn++;
+    }
+    return item;
+  }
+
+  @Override
+  public boolean offer(final Runnable item) {
+    lock.lock();
+    try {
+      items.add(item);
+      notEmpty.signal();
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void put(final Runnable item) {
+    offer(item);
+  }
+
+  @Override
+  public boolean offer(final Runnable item, final long timeout, final TimeUnit unit) {
+    return offer(item);
+  }
+
+  @Override
+  public Runnable take() throws InterruptedException {
+    lock.lockInterruptibly();
+    try {
+      while (items.isEmpty()) {
+        notEmpty.await();
+      }
+      return dequeue();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public Runnable poll(final long timeout, final TimeUnit unit) throws InterruptedException {
+    long nanos = unit.toNanos(timeout);
+    lock.lockInterruptibly();
+    try {
+      while (items.isEmpty()) {
+        if (nanos <= 0) {
+          return null;
+        }
+        nanos = notEmpty.awaitNanos(nanos);
+      }
+      return dequeue();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public Runnable poll() {
+    lock.lock();
+    try {
+      return items.isEmpty() ? null : dequeue();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public Runnable peek() {
+    lock.lock();
+    try {
+      return items.isEmpty() ? null : items.get(selectNext());
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public boolean remove(final Object item) {
+    lock.lock();
+    try {
+      return items.remove(item);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public int size() {
+    lock.lock();
+    try {
+      return items.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public int remainingCapacity() {
+    return Integer.MAX_VALUE;
+  }
+
+  @Override
+  public int drainTo(final Collection<? super Runnable> collection) {
+    return drainTo(collection, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public int drainTo(final Collection<? super Runnable> collection, final int maxElements) {
+    lock.lock();
+    try {
+      int drained = 0;
+      while (drained < maxElements && !items.isEmpty()) {
+        collection.add(dequeue());
+        drained++;
+      }
+      return drained;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return an iterator over a snapshot of the queue, in the order items were queued.
+   */
+  @Override
+  public Iterator<Runnable> iterator() {
+    final Iterator<Runnable> snapshot;
+    lock.lock();
+    try {
+      snapshot = new ArrayList<>(items).iterator();
+    } finally {
+      lock.unlock();
+    }
+    return new Iterator<Runnable>() {
+      private Runnable last;
+
+      @Override
+      public boolean hasNext() {
+        return snapshot.hasNext();
+      }
+
+      @Override
+      public Runnable next() {
+        last = snapshot.next();
+        return last;
+      }
+
+      @Override
+      public void remove() {
+        if (last == null) {
+          throw new IllegalStateException();
+        }
+        UploadQueue.this.remove(last);
+        last = null;
+      }
+    };
+  }
+}
@@ -0,0 +1,308 @@
+package comeon.core;
+
+import java.net.SocketTimeoutException;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Throwables;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.eventbus.EventBus;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import comeon.core.events.UploadConcurrencyEvent;
+import comeon.mediawiki.FailedUploadException;
+import comeon.mediawiki.HttpStatusException;
+import comeon.model.Picture;
+
+/**
+ * Runs uploads on a pool of its own, whose size follows what the uplink and the wiki can take rather than the number
+ * of processors. Uploads are observed in rounds of as many completions as the current limit. After each round the
+ * limit grows by one while that makes the batch as a whole faster without inflating latency, and steps back by one
+ * once it doesn't. It is halved when the wiki throttles us, lags, is unavailable or stops answering in time.
+ */
+@Singleton
+public final class UploadScheduler {
+  private static final Logger LOGGER = LoggerFactory.getLogger(UploadScheduler.class);
+
+  private static final int INITIAL_LIMIT = 2;
+
+  private static final int MIN_LIMIT = 1;
+
+  private static final int MAX_LIMIT = 16;
+
+  /**
+   * Throughput ratio a larger limit must achieve over the previous one to be kept.
+   */
+  private static final double MIN_GAIN = 1.1;
+
+  /**
+   * Ratio of the latency per byte over the best one seen beyond which uploads are only queueing up.
+   */
+  private static final double LATENCY_TOLERANCE = 3;
+
+  /**
+   * Rounds spent at a limit found to saturate the uplink before probing a larger one again.
+   */
+  private static final int HOLD_ROUNDS = 4;
+
+  /**
+   * Rounds worth of uploads that may be queued before {@link #awaitCapacity()} blocks.
+   */
+  private static final int BACKLOG_ROUNDS = 2;
+
+  private static final Set<String> THROTTLING_CODES = ImmutableSet.of("ratelimited", "maxlag");
+
+  private final UploadQueue queue;
+
+  private final ThreadPoolExecutor pool;
+
+  private final EventBus bus;
+
+  private final Ticker ticker;
+
+  private int limit;
+
+  private Decision lastDecision;
+
+  private int pending;
+
+  private int completions;
+
+  private int throttleGuard;
+
+  private int holdRounds;
+
+  private long roundStart;
+
+  private int roundCompletions;
+
+  private long roundBytes;
+
+  private long roundLatency;
+
+  private double previousThroughput;
+
+  private double bestLatency;
+
+  @Inject
+  public UploadScheduler(final EventBus bus, final UploadPolicy policy) {
+    this(bus, policy, Ticker.systemTicker());
+  }
+
+  /**
+   * @param ticker
+   *          times the rounds.
+   */
+  UploadScheduler(final EventBus bus, final UploadPolicy policy, final Ticker ticker) {
+    this.bus = bus;
+    this.ticker = ticker;
+    this.queue = new UploadQueue(policy);
+    this.limit = INITIAL_LIMIT;
+    this.lastDecision = Decision.Initial;
+    this.bestLatency = Double.MAX_VALUE;
+    this.pool = new ThreadPoolExecutor(INITIAL_LIMIT, INITIAL_LIMIT, 60, TimeUnit.SECONDS,
+        queue, new ThreadFactoryBuilder().setNameFormat("upload-%d").setDaemon(true)
+            .build());
+    // Until the pool has its core threads, it hands new tasks to new threads without going through the queue.
+    this.pool.prestartAllCoreThreads();
+  }
+
+  /**
+   * Queues the upload of this picture, which starts when a slot is free and the {@link UploadPolicy} picks it.
+   */
+  public <T> Future<T> submit(final Picture picture, final Callable<T> task) {
+    synchronized (this) {
+      if (pending == 0) {
+        startRound(ticker.read());
+      }
+      pending++;
+    }
+    final QueuedUpload<T> upload = new QueuedUpload<>(picture, task);
+    pool.execute(upload);
+    return upload;
+  }
+
+  /**
+   * Blocks while enough uploads are queued to keep the pool busy for the next rounds, so that whoever feeds the
+   * scheduler goes no faster than the uploads themselves.
+   */
+  public synchronized void awaitCapacity() throws InterruptedException {
+    while (pending >= limit * BACKLOG_ROUNDS) {
+      wait();
+    }
+  }
+
+  private synchronized void uploadEnded() {
+    pending--;
+    notifyAll();
+  }
+
+  public UploadPolicy getPolicy() {
+    return queue.getPolicy();
+  }
+
+  /**
+   * Applies this policy to the uploads still waiting.
+   */
+  public void setPolicy(final UploadPolicy policy) {
+    LOGGER.info("Uploads now follow the {} order", policy);
+    queue.setPolicy(policy);
+  }
+
+  /**
+   * Moves this picture ahead of the pictures waiting to be uploaded.
+   */
+  public void prioritize(final Picture picture) {
+    picture.setPriority(queue.getHighestPriority() + 1);
+  }
+
+  public synchronized int getLimit() {
+    return limit;
+  }
+
+  public synchronized Decision getLastDecision() {
+    return lastDecision;
+  }
+
+  public synchronized void uploadSucceeded(final long bytes, final long elapsedNanos) {
+    completions++;
+    roundCompletions++;
+    roundBytes += bytes;
+    roundLatency += elapsedNanos;
+    if (roundCompletions >= limit) {
+      endRound(ticker.read());
+    }
+  }
+
+  public synchronized void uploadFailed(final Exception cause) {
+    completions++;
+    if (isThrottling(cause) && completions >= throttleGuard) {
+      LOGGER.info("Upload was throttled", cause);
+      changeLimit(Math.max(MIN_LIMIT, limit / 2), Decision.Throttled);
+      holdRounds = HOLD_ROUNDS;
+      // Uploads already in flight will likely be throttled too, only react again once they have drained.
+      throttleGuard = completions + pending;
+      startRound(ticker.read());
+    }
+  }
+
+  private void endRound(final long now) {
+    final double throughput = roundBytes * (double) TimeUnit.SECONDS.toNanos(1) / Math.max(1, now - roundStart);
+    final double latency = roundLatency / (double) Math.max(1, roundBytes);
+    bestLatency = Math.min(bestLatency, latency);
+    LOGGER.debug("Uploaded {} bytes/s at limit {}, {} ns per byte", (long) throughput, limit, (long) latency);
+    if (holdRounds > 0) {
+      holdRounds--;
+    } else if (lastDecision == Decision.Increase
+        && (throughput < previousThroughput * MIN_GAIN || latency > bestLatency * LATENCY_TOLERANCE)) {
+      changeLimit(Math.max(MIN_LIMIT, limit - 1), Decision.Saturated);
+      holdRounds = HOLD_ROUNDS;
+    } else if (limit < MAX_LIMIT) {
+      changeLimit(limit + 1, Decision.Increase);
+    }
+    previousThroughput = throughput;
+    startRound(now);
+  }
+
+  private void startRound(final long now) {
+    roundStart = now;
+    roundCompletions = 0;
+    roundBytes = 0;
+    roundLatency = 0;
+  }
+
+  private void changeLimit(final int newLimit, final Decision decision) {
+    lastDecision = decision;
+    if (newLimit == limit) {
+      return;
+    }
+    LOGGER.info("Upload concurrency goes from {} to {} ({})", limit, newLimit, decision);
+    // The core size may never exceed the maximum size.
+    if (newLimit > limit) {
+      pool.setMaximumPoolSize(newLimit);
+      pool.setCorePoolSize(newLimit);
+      pool.prestartAllCoreThreads();
+    } else {
+      pool.setCorePoolSize(newLimit);
+      pool.setMaximumPoolSize(newLimit);
+    }
+    limit = newLimit;
+    notifyAll();
+    bus.post(new UploadConcurrencyEvent(newLimit, decision));
+  }
+
+  private static boolean isThrottling(final Exception cause) {
+    for (final Throwable throwable : Throwables.getCausalChain(cause)) {
+      if (throwable instanceof FailedUploadException
+          && THROTTLING_CODES.contains(((FailedUploadException) throwable).getCode())) {
+        return true;
+      } else if (throwable instanceof HttpStatusException) {
+        final int status = ((HttpStatusException) throwable).getStatusCode();
+        if (status == 429 || status == 503) {
+          return true;
+        }
+      } else if (throwable instanceof SocketTimeoutException) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public enum Decision {
+    /**
+     * The initial limit hasn't been changed yet.
+     */
+    Initial,
+    /**
+     * A larger limit is being probed.
+     */
+    Increase,
+    /**
+     * The last larger limit did not make uploads faster.
+     */
+    Saturated,
+    /**
+     * The wiki throttled us.
+     */
+    Throttled
+  }
+
+  private final class QueuedUpload<T> extends FutureTask<T> implements UploadQueue.Item {
+    private final Picture picture;
+
+    private final long size;
+
+    QueuedUpload(final Picture picture, final Callable<T> task) {
+      super(task);
+      this.picture = picture;
+      this.size = picture.getFile().length();
+    }
+
+    @Override
+    public Picture getPicture() {
+      return picture;
+    }
+
+    @Override
+    public long getSize() {
+      return size;
+    }
+
+    /**
+     * Also called when the upload is cancelled before it starts.
+     */
+    @Override
+    protected void done() {
+      uploadEnded();
+    }
+  }
+}
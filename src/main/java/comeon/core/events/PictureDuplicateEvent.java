@@ -0,0 +1,23 @@
+package comeon.core.events;
+
+import java.util.List;
+
+import comeon.model.Picture;
+
+public final class PictureDuplicateEvent extends AbstractPictureEvent {
+
+  private final List<String> existingFiles;
+
+  public PictureDuplicateEvent(final Picture picture, final List<String> existingFiles) {
+    super(picture);
+    this.existingFiles = existingFiles;
+  }
+
+  /**
+   * @return the names of the files already on the wiki with the same content as the picture.
+   */
+  public List<String> getExistingFiles() {
+    return existingFiles;
+  }
+
+}
@@ -0,0 +1,14 @@
+package comeon.core.events;
+
+public final class ReadingDoneEvent {
+
+  private final boolean cancelled;
+
+  public ReadingDoneEvent(final boolean cancelled) {
+    this.cancelled = cancelled;
+  }
+
+  public boolean isCancelled() {
+    return cancelled;
+  }
+}
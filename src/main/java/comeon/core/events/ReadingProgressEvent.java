@@ -0,0 +1,21 @@
+package comeon.core.events;
+
+public final class ReadingProgressEvent {
+
+  private final int processed;
+
+  private final int total;
+
+  public ReadingProgressEvent(final int processed, final int total) {
+    this.processed = processed;
+    this.total = total;
+  }
+
+  public int getProcessed() {
+    return processed;
+  }
+
+  public int getTotal() {
+    return total;
+  }
+}
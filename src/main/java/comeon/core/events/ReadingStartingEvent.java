@@ -0,0 +1,14 @@
+package comeon.core.events;
+
+public final class ReadingStartingEvent {
+
+  private final int total;
+
+  public ReadingStartingEvent(final int total) {
+    this.total = total;
+  }
+
+  public int getTotal() {
+    return total;
+  }
+}
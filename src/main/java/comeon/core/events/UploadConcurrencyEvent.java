@@ -0,0 +1,23 @@
+package comeon.core.events;
+
+import comeon.core.UploadScheduler.Decision;
+
+public final class UploadConcurrencyEvent {
+
+  private final int limit;
+
+  private final Decision decision;
+
+  public UploadConcurrencyEvent(final int limit, final Decision decision) {
+    this.limit = limit;
+    this.decision = decision;
+  }
+
+  public int getLimit() {
+    return limit;
+  }
+
+  public Decision getDecision() {
+    return decision;
+  }
+}
@@ -0,0 +1,21 @@
+package comeon.core.events;
+
+import java.util.List;
+
+import comeon.model.Picture;
+
+/**
+ * More pictures joined an upload that has already started.
+ */
+public final class UploadQueuedEvent {
+
+  private final List<Picture> pictures;
+
+  public UploadQueuedEvent(final List<Picture> pictures) {
+    this.pictures = pictures;
+  }
+
+  public List<Picture> getPictures() {
+    return pictures;
+  }
+}
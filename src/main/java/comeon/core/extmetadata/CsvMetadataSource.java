@@ -94,4 +94,9 @@ public final class CsvMetadataSource implements ExternalMetadataSource<Object> {
       }
     }
   }
+
+  @Override
+  public String getPictureExpression() {
+    return pictureExpression;
+  }
 }
@@ -7,4 +7,9 @@ import comeon.model.Picture;
 public interface ExternalMetadataSource<T> {
   void loadMetadata();
   T getPictureMetadata(Picture picture, Map<String, Object> pictureMetadata);
+
+  /**
+   * @return the picture property used to match external metadata, eg <code>Exif.Filename</code>, or {@code null}.
+   */
+  String getPictureExpression();
 }
@@ -13,4 +13,9 @@ public final class NullMetadataSource implements ExternalMetadataSource<Void> {
   public Void getPictureMetadata(Picture picture, final Map<String, Object> pictureMetadata) {
     return null;
   }
+
+  @Override
+  public String getPictureExpression() {
+    return null;
+  }
 }
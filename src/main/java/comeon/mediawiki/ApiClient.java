@@ -0,0 +1,19 @@
+package comeon.mediawiki;
+
+import java.io.IOException;
+
+import org.apache.http.HttpEntity;
+import org.w3c.dom.Document;
+
+/**
+ * Posts requests to the API directly, for what {@link org.mediawiki.api.MWApi} can't do. Implementations share the
+ * session cookies of the {@link org.mediawiki.api.MWApi} instance.
+ */
+interface ApiClient {
+  /**
+   * @return the XML response, whose request parameters must include <code>format=xml</code>.
+   * @throws HttpStatusException
+   *           if the status isn't 200.
+   */
+  Document post(HttpEntity entity) throws IOException;
+}
@@ -0,0 +1,156 @@
+package comeon.mediawiki;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.impl.cookie.DateParseException;
+import org.apache.http.impl.cookie.DateUtils;
+import org.apache.http.util.EntityUtils;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+/**
+ * Reading of XML API responses, whatever transport they came through.
+ */
+final class ApiDocuments {
+  private static final String RETRY_AFTER = "retryAfter";
+
+  private ApiDocuments() {
+    super();
+  }
+
+  /**
+   * Parses the response and releases its entity.
+   * 
+   * @throws HttpStatusException
+   *           if the status isn't 200.
+   */
+  static Document parse(final HttpResponse response) throws IOException {
+    try {
+      final int status = response.getStatusLine().getStatusCode();
+      final long retryAfter = getRetryAfter(response);
+      if (status != 200) {
+        throw new HttpStatusException(status, response.getStatusLine().getReasonPhrase(), retryAfter);
+      }
+      try (final InputStream content = response.getEntity().getContent()) {
+        final Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(content);
+        // MediaWiki also asks to wait along API errors such as maxlag, which come with a 200 status.
+        document.setUserData(RETRY_AFTER, retryAfter, null);
+        return document;
+      }
+    } catch (final ParserConfigurationException | SAXException e) {
+      throw new IOException("Can't parse API response", e);
+    } finally {
+      EntityUtils.consume(response.getEntity());
+    }
+  }
+
+  /**
+   * @return the delay in the <code>Retry-After</code> header, in milliseconds, or 0 if there is none.
+   */
+  private static long getRetryAfter(final HttpResponse response) {
+    final Header header = response.getFirstHeader("Retry-After");
+    long retryAfter = 0;
+    if (header != null) {
+      final String value = header.getValue().trim();
+      try {
+        retryAfter = TimeUnit.SECONDS.toMillis(Long.parseLong(value));
+      } catch (final NumberFormatException e) {
+        try {
+          final Date date = DateUtils.parseDate(value);
+          retryAfter = date.getTime() - System.currentTimeMillis();
+        } catch (final DateParseException e1) {
+          retryAfter = 0;
+        }
+      }
+    }
+    return Math.max(0, retryAfter);
+  }
+
+  /**
+   * @return the value at this XPath, or {@code null} if there is none.
+   */
+  static String getString(final Document document, final String expression) {
+    final Node node = getNode(document, expression);
+    return node == null ? null : node.getTextContent();
+  }
+
+  /**
+   * @return the values at this XPath, in document order.
+   */
+  static List<String> getStrings(final Document document, final String expression) {
+    final List<Node> nodes = getNodes(document, expression);
+    final List<String> strings = new ArrayList<>(nodes.size());
+    for (final Node node : nodes) {
+      strings.add(node.getTextContent());
+    }
+    return strings;
+  }
+
+  /**
+   * @return the nodes at this XPath, in document order.
+   */
+  static List<Node> getNodes(final Document document, final String expression) {
+    try {
+      final NodeList nodeList = (NodeList) XPathFactory.newInstance().newXPath()
+          .evaluate(expression, document, XPathConstants.NODESET);
+      final List<Node> nodes = new ArrayList<>(nodeList.getLength());
+      for (int i = 0; i < nodeList.getLength(); i++) {
+        nodes.add(nodeList.item(i));
+      }
+      return nodes;
+    } catch (final XPathExpressionException e) {
+      throw new IllegalArgumentException("Invalid XPath expression " + expression, e);
+    }
+  }
+
+  static Node getNode(final Document document, final String expression) {
+    try {
+      return (Node) XPathFactory.newInstance().newXPath().evaluate(expression, document, XPathConstants.NODE);
+    } catch (final XPathExpressionException e) {
+      throw new IllegalArgumentException("Invalid XPath expression " + expression, e);
+    }
+  }
+
+  /**
+   * Throws the API error in this response, if any.
+   */
+  static void checkError(final Document document) throws FailedUploadException {
+    final String code = getString(document, "/api/error/@code");
+    if (code != null) {
+      final Object retryAfter = document.getUserData(RETRY_AFTER);
+      throw new FailedUploadException(code, getString(document, "/api/error/@info"), retryAfter == null ? 0
+          : (Long) retryAfter);
+    }
+  }
+
+  /**
+   * Throws the API error or the first warning in this response to an upload, unless the file was published.
+   * 
+   * @return the name the file was published under.
+   */
+  static String checkUploaded(final Document document) throws FailedUploadException {
+    checkError(document);
+    final String result = getString(document, "/api/upload/@result");
+    if (!"Success".equals(result)) {
+      final Node warning = getNode(document, "/api/upload/warnings/@* | /api/upload/warnings/*");
+      throw new FailedUploadException(result, warning == null ? null : warning.getNodeName() + " "
+          + warning.getTextContent());
+    }
+    return getString(document, "/api/upload/@filename");
+  }
+}
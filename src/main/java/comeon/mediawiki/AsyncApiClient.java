@@ -0,0 +1,56 @@
+package comeon.mediawiki;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.utils.URIUtils;
+import org.apache.http.nio.client.HttpAsyncClient;
+import org.apache.http.nio.protocol.BasicAsyncRequestProducer;
+import org.apache.http.nio.protocol.BasicAsyncResponseConsumer;
+import org.w3c.dom.Document;
+
+import com.google.common.base.Throwables;
+
+/**
+ * Posts requests with a non-blocking HTTP client. The calling thread only waits for the response: requests and
+ * responses of every upload are transferred by the few I/O threads of the client. Bodies that can produce themselves
+ * without blocking, such as {@link MultipartBody}, are streamed from their file channel.
+ */
+final class AsyncApiClient implements ApiClient {
+  private final HttpAsyncClient httpClient;
+
+  private final String apiUrl;
+
+  private final HttpHost target;
+
+  AsyncApiClient(final HttpAsyncClient httpClient, final String apiUrl) {
+    this.httpClient = httpClient;
+    this.apiUrl = apiUrl;
+    this.target = URIUtils.extractHost(URI.create(apiUrl));
+  }
+
+  @Override
+  public Document post(final HttpEntity entity) throws IOException {
+    final HttpPost post = new HttpPost(apiUrl);
+    post.setEntity(entity);
+    final Future<HttpResponse> response = httpClient.execute(new BasicAsyncRequestProducer(target, post),
+        new BasicAsyncResponseConsumer(), null);
+    try {
+      return ApiDocuments.parse(response.get());
+    } catch (final InterruptedException e) {
+      response.cancel(true);
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for the API");
+    } catch (final ExecutionException e) {
+      Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+      throw new IOException(e.getCause());
+    }
+  }
+}
@@ -0,0 +1,78 @@
+package comeon.mediawiki;
+
+import in.yuvi.http.fluent.ProgressListener;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+import comeon.model.Picture;
+
+/**
+ * Uploads files through a non-blocking HTTP client. Logging in and out still goes through {@link MediaWikiImpl}, whose session cookies the
+ * non-blocking client shares.
+ */
+final class AsyncMediaWiki implements MediaWiki {
+  private final MediaWikiImpl session;
+
+  private final ApiClient client;
+
+  private final long chunkSize;
+
+  /**
+   * @param chunkSize
+   *          files larger than this are uploaded in chunks of this size, 0 disables chunked uploads.
+   */
+  AsyncMediaWiki(final MediaWikiImpl session, final ApiClient client, final long chunkSize) {
+    this.session = session;
+    this.client = client;
+    this.chunkSize = chunkSize;
+  }
+
+  @Override
+  public boolean isLoggedIn() {
+    return session.isLoggedIn();
+  }
+
+  @Override
+  public void prepare() {
+    session.prepare();
+  }
+
+  @Override
+  public void login() throws NotLoggedInException, FailedLoginException {
+    session.login();
+  }
+
+  @Override
+  public String upload(final Picture picture, final String sha1, final ProgressListener listener)
+      throws NotLoggedInException, FailedLoginException, FailedUploadException, CorruptedUploadException, IOException {
+    return session.upload(session.newUpload(client, chunkSize), picture, sha1, listener);
+  }
+
+  @Override
+  public List<String> findDuplicates(final String sha1) throws IOException {
+    return new FileQueries(client).findBySha1(sha1);
+  }
+
+  @Override
+  public Set<String> findExistingFiles(final Collection<String> fileNames) throws IOException {
+    return new FileQueries(client).findExisting(fileNames);
+  }
+
+  @Override
+  public SiteInfo getSiteInfo() throws IOException {
+    return session.getSiteInfo();
+  }
+
+  @Override
+  public void logout() throws FailedLogoutException {
+    session.logout();
+  }
+
+  @Override
+  public String getName() {
+    return session.getName();
+  }
+}
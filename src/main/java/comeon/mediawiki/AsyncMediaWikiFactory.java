@@ -0,0 +1,80 @@
+package comeon.mediawiki;
+
+import java.io.IOException;
+
+import org.apache.http.impl.client.AbstractHttpClient;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.params.HttpProtocolParams;
+import org.mediawiki.api.MWApi;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import comeon.model.Wiki;
+
+/**
+ * Builds clients that upload through a non-blocking HTTP client, started once and shared by every wiki, and closed
+ * when ComeOn! exits. It shares the cookies and the User-Agent of the blocking client, and its connections are
+ * counted and sized along with the blocking ones by the {@link ConnectionPool}.
+ */
+@Singleton
+public final class AsyncMediaWikiFactory implements MediaWikiFactory {
+  private static final Logger LOGGER = LoggerFactory.getLogger(AsyncMediaWikiFactory.class);
+
+  private final AbstractHttpClient httpClient;
+
+  private final CloseableHttpAsyncClient asyncClient;
+
+  private final ConnectionPool connectionPool;
+
+  private final long chunkSize;
+
+  private final BandwidthLimiter limiter;
+
+  private final String comment;
+
+  @Inject
+  public AsyncMediaWikiFactory(final AbstractHttpClient httpClient, final ConnectionPool connectionPool,
+      @Named(CHUNK_SIZE) final long chunkSize, final BandwidthLimiter limiter,
+      @Named(UPLOAD_COMMENT) final String comment) throws IOReactorException {
+    super();
+    this.httpClient = httpClient;
+    this.connectionPool = connectionPool;
+    this.chunkSize = chunkSize;
+    this.limiter = limiter;
+    this.comment = comment;
+    final PoolingNHttpClientConnectionManager asyncConnectionManager = new PoolingNHttpClientConnectionManager(
+        new DefaultConnectingIOReactor());
+    connectionPool.add(asyncConnectionManager);
+    this.asyncClient = HttpAsyncClients.custom().setConnectionManager(asyncConnectionManager)
+        .setDefaultCookieStore(httpClient.getCookieStore())
+        .setKeepAliveStrategy(connectionPool.getKeepAliveStrategy())
+        .setUserAgent(HttpProtocolParams.getUserAgent(httpClient.getParams())).build();
+    this.asyncClient.start();
+    Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          asyncClient.close();
+        } catch (final IOException e) {
+          LOGGER.warn("Couldn't close the non-blocking HTTP client", e);
+        }
+      }
+    }, "async-http-client-shutdown"));
+  }
+
+  @Override
+  public MediaWiki build(final Wiki wiki) {
+    connectionPool.configure(wiki);
+    final MWApi api = new MWApi(wiki.getUrl(), httpClient);
+    final MediaWikiImpl session = new MediaWikiImpl(wiki, api, new BlockingApiClient(httpClient, wiki.getUrl()),
+        chunkSize, limiter, comment);
+    return new AsyncMediaWiki(session, new AsyncApiClient(asyncClient, wiki.getUrl()), chunkSize);
+  }
+}
@@ -0,0 +1,189 @@
+package comeon.mediawiki;
+
+import java.io.InterruptedIOException;
+import java.util.Calendar;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.prefs.Preferences;
+
+import org.apache.http.nio.IOControl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Token bucket shared by every upload, filled at the rate the {@link BandwidthSchedule} allows at the time of day.
+ * Bodies take tokens for the bytes of the file they are about to send: blocking ones wait for them, non-blocking ones
+ * suspend their output until the bucket refills. The schedule can be changed while uploads run.
+ */
+public final class BandwidthLimiter {
+  private static final Logger LOGGER = LoggerFactory.getLogger(BandwidthLimiter.class);
+
+  private static final String SCHEDULE = "bandwidthSchedule";
+
+  /**
+   * The bucket holds a quarter of a second of traffic, so that bursts stay short.
+   */
+  private static final long BURST_DIVISOR = 4;
+
+  private static final long RATE_CHECK_PERIOD = TimeUnit.SECONDS.toNanos(1);
+
+  private final Preferences preferences;
+
+  private final ScheduledExecutorService resumer;
+
+  private BandwidthSchedule schedule;
+
+  private long rate;
+
+  private double tokens;
+
+  private long lastRefill;
+
+  private long lastRateCheck;
+
+  /**
+   * @param preferences
+   *          where the schedule is kept.
+   */
+  public BandwidthLimiter(final Preferences preferences) {
+    this(preferences, load(preferences));
+  }
+
+  BandwidthLimiter(final BandwidthSchedule schedule) {
+    this(null, schedule);
+  }
+
+  private BandwidthLimiter(final Preferences preferences, final BandwidthSchedule schedule) {
+    this.preferences = preferences;
+    this.resumer = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+        .setNameFormat("bandwidth-limiter").setDaemon(true).build());
+    this.schedule = schedule;
+    this.lastRefill = System.nanoTime();
+    this.lastRateCheck = lastRefill - RATE_CHECK_PERIOD;
+  }
+
+  private static BandwidthSchedule load(final Preferences preferences) {
+    final String schedule = preferences.get(SCHEDULE, "");
+    try {
+      return BandwidthSchedule.parse(schedule);
+    } catch (final IllegalArgumentException e) {
+      LOGGER.warn("Ignoring invalid bandwidth schedule \"{}\"", schedule, e);
+      return BandwidthSchedule.UNLIMITED;
+    }
+  }
+
+  public synchronized BandwidthSchedule getSchedule() {
+    return schedule;
+  }
+
+  /**
+   * Applies this schedule to the uploads in progress and the next ones.
+   */
+  public synchronized void setSchedule(final BandwidthSchedule schedule) {
+    this.schedule = schedule;
+    this.lastRateCheck = System.nanoTime() - RATE_CHECK_PERIOD;
+    if (preferences != null) {
+      preferences.put(SCHEDULE, schedule.toString());
+    }
+    LOGGER.info("Bandwidth schedule is now \"{}\"", schedule);
+  }
+
+  /**
+   * @return the current limit, in bytes per second, or 0 if there is none.
+   */
+  public synchronized long getRate() {
+    refill(System.nanoTime());
+    return rate;
+  }
+
+  /**
+   * Takes tokens for up to this many bytes, without waiting.
+   * 
+   * @return the number of bytes that may be sent now, 0 if the bucket is empty.
+   */
+  synchronized int tryAcquire(final int bytes) {
+    refill(System.nanoTime());
+    final int granted;
+    if (rate == 0) {
+      granted = bytes;
+    } else {
+      granted = (int) Math.min(bytes, (long) tokens);
+      tokens -= granted;
+    }
+    return granted;
+  }
+
+  /**
+   * Takes tokens for up to this many bytes, waiting for some if the bucket is empty.
+   * 
+   * @return the number of bytes that may be sent now, at least one.
+   */
+  int acquire(final int bytes) throws InterruptedIOException {
+    int granted = tryAcquire(bytes);
+    while (granted == 0) {
+      try {
+        TimeUnit.NANOSECONDS.sleep(getDelay());
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting for bandwidth");
+      }
+      granted = tryAcquire(bytes);
+    }
+    return granted;
+  }
+
+  /**
+   * Gives back tokens that were taken but not used.
+   */
+  synchronized void release(final long bytes) {
+    if (rate > 0 && bytes > 0) {
+      tokens = Math.min(getCapacity(), tokens + bytes);
+    }
+  }
+
+  /**
+   * Suspends the output of a non-blocking connection until there are tokens again.
+   */
+  void suspend(final IOControl ioControl) {
+    ioControl.suspendOutput();
+    resumer.schedule(new Runnable() {
+      @Override
+      public void run() {
+        ioControl.requestOutput();
+      }
+    }, getDelay(), TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * @return how long until the bucket holds tokens for one byte, in nanoseconds.
+   */
+  private synchronized long getDelay() {
+    refill(System.nanoTime());
+    return rate == 0 || tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) * TimeUnit.SECONDS.toNanos(1) / rate);
+  }
+
+  private void refill(final long now) {
+    if (now - lastRateCheck >= RATE_CHECK_PERIOD) {
+      final Calendar calendar = Calendar.getInstance();
+      final long newRate = schedule.getBytesPerSecond(calendar.get(Calendar.HOUR_OF_DAY) * 60
+          + calendar.get(Calendar.MINUTE));
+      if (newRate != rate) {
+        LOGGER.debug("Bandwidth limit is now {} bytes per second", newRate);
+        rate = newRate;
+        tokens = Math.min(tokens, getCapacity());
+      }
+      lastRateCheck = now;
+    }
+    if (rate > 0) {
+      tokens = Math.min(getCapacity(), tokens + (double) (now - lastRefill) * rate / TimeUnit.SECONDS.toNanos(1));
+    }
+    lastRefill = now;
+  }
+
+  private double getCapacity() {
+    return Math.max(1, rate / BURST_DIVISOR);
+  }
+}
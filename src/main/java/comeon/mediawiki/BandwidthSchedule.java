@@ -0,0 +1,114 @@
+package comeon.mediawiki;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+
+/**
+ * Bandwidth limits by time of day, written as <code>09:00-18:00=8; 18:00-20:00=20</code> for 8 Mbit/s during office
+ * hours and 20 Mbit/s in the evening. A window may span midnight, the first window that contains a time applies, and
+ * bandwidth is unlimited outside of any window or in a window whose limit is 0.
+ */
+public final class BandwidthSchedule {
+  public static final BandwidthSchedule UNLIMITED = new BandwidthSchedule(Collections.<Window> emptyList());
+
+  private static final Pattern WINDOW = Pattern
+      .compile("(\\d{1,2}):(\\d{2})\\s*-\\s*(\\d{1,2}):(\\d{2})\\s*=\\s*(\\d+(?:\\.\\d+)?)");
+
+  private static final int MINUTES_PER_DAY = 24 * 60;
+
+  private static final long BITS_PER_MEGABIT = 1000 * 1000;
+
+  private final List<Window> windows;
+
+  private BandwidthSchedule(final List<Window> windows) {
+    this.windows = windows;
+  }
+
+  /**
+   * @throws IllegalArgumentException
+   *           if the schedule isn't written as expected.
+   */
+  public static BandwidthSchedule parse(final String schedule) {
+    final List<Window> windows = new ArrayList<>();
+    for (final String window : Splitter.on(';').trimResults().omitEmptyStrings().split(schedule)) {
+      final Matcher matcher = WINDOW.matcher(window);
+      if (!matcher.matches()) {
+        throw new IllegalArgumentException("Invalid bandwidth window: " + window);
+      }
+      windows.add(new Window(minuteOfDay(matcher.group(1), matcher.group(2)), minuteOfDay(matcher.group(3),
+          matcher.group(4)), new BigDecimal(matcher.group(5))));
+    }
+    return windows.isEmpty() ? UNLIMITED : new BandwidthSchedule(windows);
+  }
+
+  private static int minuteOfDay(final String hours, final String minutes) {
+    final int hour = Integer.parseInt(hours);
+    final int minute = Integer.parseInt(minutes);
+    if (hour > 24 || minute > 59 || (hour == 24 && minute > 0)) {
+      throw new IllegalArgumentException("Invalid time of day: " + hours + ":" + minutes);
+    }
+    return hour * 60 + minute;
+  }
+
+  /**
+   * @param minuteOfDay
+   *          from 0 to 1439.
+   * @return the limit at that time, in bytes per second, or 0 if there is none.
+   */
+  public long getBytesPerSecond(final int minuteOfDay) {
+    for (final Window window : windows) {
+      if (window.contains(minuteOfDay)) {
+        return window.bytesPerSecond;
+      }
+    }
+    return 0;
+  }
+
+  @Override
+  public String toString() {
+    return Joiner.on("; ").join(windows);
+  }
+
+  private static final class Window {
+    private final int start;
+
+    private final int end;
+
+    private final BigDecimal megabits;
+
+    private final long bytesPerSecond;
+
+    Window(final int start, final int end, final BigDecimal megabits) {
+      this.start = start % MINUTES_PER_DAY;
+      this.end = end % MINUTES_PER_DAY;
+      this.megabits = megabits;
+      final long bytes = megabits.multiply(BigDecimal.valueOf(BITS_PER_MEGABIT / 8)).longValue();
+      this.bytesPerSecond = megabits.signum() == 0 ? 0 : Math.max(1, bytes);
+    }
+
+    boolean contains(final int minuteOfDay) {
+      final boolean contained;
+      if (start < end) {
+        contained = minuteOfDay >= start && minuteOfDay < end;
+      } else {
+        // Spans midnight, or the whole day if start and end are the same.
+        contained = minuteOfDay >= start || minuteOfDay < end;
+      }
+      return contained;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(Locale.ENGLISH, "%02d:%02d-%02d:%02d=%s", start / 60, start % 60, end / 60, end % 60,
+          megabits.toPlainString());
+    }
+  }
+}
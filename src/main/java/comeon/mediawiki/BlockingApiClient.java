@@ -0,0 +1,30 @@
+package comeon.mediawiki;
+
+import java.io.IOException;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpPost;
+import org.w3c.dom.Document;
+
+/**
+ * Posts requests with the HTTP client of the {@link org.mediawiki.api.MWApi} instance, and therefore its session
+ * cookies, on the calling thread.
+ */
+final class BlockingApiClient implements ApiClient {
+  private final HttpClient httpClient;
+
+  private final String apiUrl;
+
+  BlockingApiClient(final HttpClient httpClient, final String apiUrl) {
+    this.httpClient = httpClient;
+    this.apiUrl = apiUrl;
+  }
+
+  @Override
+  public Document post(final HttpEntity entity) throws IOException {
+    final HttpPost post = new HttpPost(apiUrl);
+    post.setEntity(entity);
+    return ApiDocuments.parse(httpClient.execute(post));
+  }
+}
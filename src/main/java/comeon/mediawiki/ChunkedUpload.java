@@ -0,0 +1,153 @@
+package comeon.mediawiki;
+
+import in.yuvi.http.fluent.ProgressListener;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.http.NameValuePair;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.message.BasicNameValuePair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+
+/**
+ * Upload of one file with MediaWiki's chunked upload protocol: chunks are sent to the stash one after the other, then
+ * the stashed file is published. A chunk that fails to go through is sent again from the last offset the wiki
+ * acknowledged, so a transient error only costs one chunk.
+ */
+final class ChunkedUpload {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ChunkedUpload.class);
+
+  private static final int MAX_CHUNK_ATTEMPTS = 3;
+
+  private final ApiClient client;
+
+  private final File file;
+
+  private final String fileName;
+
+  private final long chunkSize;
+
+  private final ContentHasher hasher;
+
+  private final BandwidthLimiter limiter;
+
+  private String fileKey;
+
+  private long offset;
+
+  /**
+   * @param hasher
+   *          hashes the sent bytes of the file, may be {@code null}.
+   */
+  ChunkedUpload(final ApiClient client, final File file, final String fileName, final long chunkSize,
+      final ContentHasher hasher, final BandwidthLimiter limiter) {
+    this.client = client;
+    this.file = file;
+    this.fileName = fileName;
+    this.chunkSize = chunkSize;
+    this.hasher = hasher;
+    this.limiter = limiter;
+    this.offset = 0;
+  }
+
+  /**
+   * Sends the file to the stash, starting from the last acknowledged offset.
+   */
+  void stash(final String token, final ProgressListener listener) throws IOException, FailedUploadException {
+    final long size = file.length();
+    try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      while (offset < size) {
+        sendChunk(channel, size, token, listener);
+      }
+    }
+  }
+
+  private void sendChunk(final FileChannel channel, final long size, final String token,
+      final ProgressListener listener) throws IOException, FailedUploadException {
+    int attempt = 1;
+    while (true) {
+      final Map<String, String> fields = new LinkedHashMap<>();
+      fields.put("action", "upload");
+      fields.put("format", "xml");
+      fields.put("stash", "1");
+      fields.put("ignorewarnings", "1");
+      fields.put("filename", fileName);
+      fields.put("filesize", Long.toString(size));
+      fields.put("offset", Long.toString(offset));
+      if (fileKey != null) {
+        fields.put("filekey", fileKey);
+      }
+      fields.put("token", token);
+      final long length = Math.min(chunkSize, size - offset);
+      try {
+        final Document response = client.post(new MultipartBody(fields, "chunk", fileName, channel, offset, length,
+            listener, offset, size, hasher, limiter));
+        acknowledge(response, size);
+        return;
+      } catch (final IOException e) {
+        if (attempt >= MAX_CHUNK_ATTEMPTS) {
+          throw e;
+        }
+        LOGGER.warn("Chunk at offset {} of {} failed, sending it again", offset, fileName, e);
+        attempt++;
+      }
+    }
+  }
+
+  private void acknowledge(final Document response, final long size) throws FailedUploadException {
+    ApiDocuments.checkError(response);
+    final String result = ApiDocuments.getString(response, "/api/upload/@result");
+    final String key = ApiDocuments.getString(response, "/api/upload/@filekey");
+    if (key != null) {
+      this.fileKey = key;
+    }
+    if ("Continue".equals(result)) {
+      this.offset = Long.parseLong(ApiDocuments.getString(response, "/api/upload/@offset"));
+    } else if ("Success".equals(result)) {
+      this.offset = size;
+    } else {
+      throw new FailedUploadException(result, "Unexpected chunk upload result");
+    }
+    if (fileKey == null) {
+      throw new FailedUploadException(result, "No file key in chunk upload response");
+    }
+    LOGGER.debug("Wiki acknowledged {} of {} bytes of {}", offset, size, fileName);
+  }
+
+  /**
+   * Publishes the stashed file.
+   * 
+   * @return the name the file was published under.
+   */
+  String commit(final String token, final String text, final String comment, final boolean watch)
+      throws IOException, FailedUploadException {
+    final List<NameValuePair> parameters = new ArrayList<>();
+    parameters.add(new BasicNameValuePair("action", "upload"));
+    parameters.add(new BasicNameValuePair("format", "xml"));
+    parameters.add(new BasicNameValuePair("filename", fileName));
+    parameters.add(new BasicNameValuePair("filekey", fileKey));
+    parameters.add(new BasicNameValuePair("comment", comment));
+    parameters.add(new BasicNameValuePair("text", text));
+    parameters.add(new BasicNameValuePair("watchlist", watch ? "watch" : "nochange"));
+    parameters.add(new BasicNameValuePair("ignorewarnings", "1"));
+    parameters.add(new BasicNameValuePair("token", token));
+    return ApiDocuments.checkUploaded(client.post(new UrlEncodedFormEntity(parameters, "UTF-8")));
+  }
+
+  String getFileKey() {
+    return fileKey;
+  }
+
+  long getOffset() {
+    return offset;
+  }
+}
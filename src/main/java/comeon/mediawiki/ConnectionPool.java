@@ -0,0 +1,118 @@
+package comeon.mediawiki;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.pool.ConnPoolControl;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import comeon.model.Wiki;
+
+/**
+ * HTTP connections shared by the API clients of every wiki. The pool is sized after the settings of the active wiki.
+ * Connections are kept alive for as long as the server says, or a short while if it doesn't, and a background task
+ * closes those that expired or stayed idle, before the server drops them under our feet. Other pools, such as the one
+ * of the non-blocking client, may be added to be sized and counted along with it.
+ */
+public final class ConnectionPool {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ConnectionPool.class);
+
+  private static final long DEFAULT_KEEP_ALIVE = TimeUnit.SECONDS.toMillis(30);
+
+  private static final long IDLE_TIMEOUT = TimeUnit.SECONDS.toMillis(30);
+
+  private static final long EVICTION_PERIOD = TimeUnit.SECONDS.toMillis(5);
+
+  private final PoolingClientConnectionManager manager;
+
+  private final List<ConnPoolControl<HttpRoute>> pools;
+
+  private final ScheduledExecutorService monitor;
+
+  public ConnectionPool() {
+    this.manager = new PoolingClientConnectionManager();
+    this.manager.setMaxTotal(Wiki.DEFAULT_MAX_CONNECTIONS);
+    this.manager.setDefaultMaxPerRoute(Wiki.DEFAULT_MAX_CONNECTIONS_PER_ROUTE);
+    this.pools = new CopyOnWriteArrayList<>();
+    this.pools.add(manager);
+    this.monitor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+        .setNameFormat("connection-monitor").setDaemon(true).build());
+    this.monitor.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        manager.closeExpiredConnections();
+        manager.closeIdleConnections(IDLE_TIMEOUT, TimeUnit.MILLISECONDS);
+        final PoolStats stats = getStats();
+        if (stats.getLeased() > 0 || stats.getPending() > 0) {
+          LOGGER.debug("Connection pool: {}", stats);
+        }
+      }
+    }, EVICTION_PERIOD, EVICTION_PERIOD, TimeUnit.MILLISECONDS);
+  }
+
+  public ClientConnectionManager getConnectionManager() {
+    return manager;
+  }
+
+  public ConnectionKeepAliveStrategy getKeepAliveStrategy() {
+    return new DefaultConnectionKeepAliveStrategy() {
+      @Override
+      public long getKeepAliveDuration(final HttpResponse response, final HttpContext context) {
+        final long duration = super.getKeepAliveDuration(response, context);
+        return duration > 0 ? duration : DEFAULT_KEEP_ALIVE;
+      }
+    };
+  }
+
+  /**
+   * Sizes this pool like the others, and includes its connections in the stats.
+   */
+  public void add(final ConnPoolControl<HttpRoute> pool) {
+    pool.setMaxTotal(manager.getMaxTotal());
+    pool.setDefaultMaxPerRoute(manager.getDefaultMaxPerRoute());
+    pools.add(pool);
+  }
+
+  /**
+   * Sizes the pools for this wiki.
+   */
+  public void configure(final Wiki wiki) {
+    LOGGER.debug("Allowing {} connections, {} per host, to {}", wiki.getMaxConnections(),
+        wiki.getMaxConnectionsPerRoute(), wiki.getName());
+    for (final ConnPoolControl<HttpRoute> pool : pools) {
+      pool.setMaxTotal(wiki.getMaxConnections());
+      pool.setDefaultMaxPerRoute(wiki.getMaxConnectionsPerRoute());
+    }
+  }
+
+  /**
+   * @return how many connections are in use, awaited and idle, in all the pools.
+   */
+  public PoolStats getStats() {
+    int leased = 0;
+    int pending = 0;
+    int available = 0;
+    int max = 0;
+    for (final ConnPoolControl<HttpRoute> pool : pools) {
+      final PoolStats stats = pool.getTotalStats();
+      leased += stats.getLeased();
+      pending += stats.getPending();
+      available += stats.getAvailable();
+      max += stats.getMax();
+    }
+    return new PoolStats(leased, pending, available, max);
+  }
+}
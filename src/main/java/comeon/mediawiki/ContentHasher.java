@@ -0,0 +1,76 @@
+package comeon.mediawiki;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import com.google.common.io.BaseEncoding;
+
+/**
+ * SHA-1 of a file, fed with the bytes of the file as they are sent. Bytes are expected in file order; bytes sent again
+ * after a failure are only hashed once, as long as the file doesn't change meanwhile.
+ */
+final class ContentHasher {
+  private final MessageDigest digest;
+
+  private long hashed;
+
+  ContentHasher() {
+    try {
+      this.digest = MessageDigest.getInstance("SHA-1");
+    } catch (final NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-1 is a required algorithm", e);
+    }
+    this.hashed = 0;
+  }
+
+  /**
+   * @param position
+   *          of the first byte in the file.
+   */
+  synchronized void update(final long position, final byte[] bytes, final int offset, final int length) {
+    final int skipped = skipped(position, length);
+    if (skipped < length) {
+      digest.update(bytes, offset + skipped, length - skipped);
+      hashed += length - skipped;
+    }
+  }
+
+  /**
+   * Hashes the remaining bytes of the buffer, without moving its position.
+   * 
+   * @param position
+   *          of the first remaining byte in the file.
+   */
+  synchronized void update(final long position, final ByteBuffer bytes) {
+    final int skipped = skipped(position, bytes.remaining());
+    if (skipped < bytes.remaining()) {
+      final ByteBuffer unhashed = bytes.duplicate();
+      unhashed.position(unhashed.position() + skipped);
+      hashed += unhashed.remaining();
+      digest.update(unhashed);
+    }
+  }
+
+  private int skipped(final long position, final int length) {
+    if (position > hashed) {
+      throw new IllegalStateException("Bytes from " + hashed + " to " + position + " were not hashed");
+    }
+    return (int) Math.min(length, hashed - position);
+  }
+
+  synchronized long getHashedLength() {
+    return hashed;
+  }
+
+  /**
+   * @return the hexadecimal SHA-1 of the bytes hashed so far.
+   */
+  synchronized String getHash() {
+    try {
+      return BaseEncoding.base16().lowerCase().encode(((MessageDigest) digest.clone()).digest());
+    } catch (final CloneNotSupportedException e) {
+      throw new IllegalStateException("SHA-1 digest can't be cloned", e);
+    }
+  }
+}
@@ -0,0 +1,24 @@
+package comeon.mediawiki;
+
+/**
+ * The wiki holds a file whose SHA-1 isn't the one of the bytes we sent.
+ */
+public final class CorruptedUploadException extends MediaWikiException {
+  private static final long serialVersionUID = 1L;
+
+  private static final String MESSAGE_FORMAT = "%1$s: sent SHA-1 %2$s, wiki has %3$s";
+
+  private final String sentHash;
+
+  public CorruptedUploadException(final String fileName, final String sentHash, final String wikiHash) {
+    super(String.format(MESSAGE_FORMAT, fileName, sentHash, wikiHash));
+    this.sentHash = sentHash;
+  }
+
+  /**
+   * @return the hexadecimal SHA-1 of the bytes we sent.
+   */
+  public String getSentHash() {
+    return sentHash;
+  }
+}
@@ -7,11 +7,37 @@ public final class FailedUploadException extends MediaWikiException {
 
   private static final String MESSAGE_FORMAT = "%1$s: %2$s";
 
+  private final String code;
+
+  private final long retryAfter;
+
   public FailedUploadException(final IOException cause) {
     super(cause);
+    this.code = null;
+    this.retryAfter = 0;
   }
   
   public FailedUploadException(final String code, final String info) {
+    this(code, info, 0);
+  }
+
+  public FailedUploadException(final String code, final String info, final long retryAfter) {
     super(String.format(MESSAGE_FORMAT, code, info));
+    this.code = code;
+    this.retryAfter = retryAfter;
+  }
+
+  /**
+   * @return the API error code, or {@code null} if the upload failed before the wiki could answer.
+   */
+  public String getCode() {
+    return code;
+  }
+
+  /**
+   * @return how long the wiki asked us to wait before trying again, in milliseconds, or 0 if it didn't say.
+   */
+  public long getRetryAfter() {
+    return retryAfter;
   }
 }
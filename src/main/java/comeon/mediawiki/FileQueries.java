@@ -0,0 +1,113 @@
+package comeon.mediawiki;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.http.NameValuePair;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.message.BasicNameValuePair;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Strings;
+import com.google.common.collect.Iterables;
+import com.google.common.primitives.Longs;
+
+/**
+ * Read-only queries about the files already on a wiki.
+ */
+final class FileQueries {
+  private static final int TITLES_PER_QUERY = 50;
+
+  private static final String FILE_NAMESPACE = "File:";
+
+  private final ApiClient client;
+
+  FileQueries(final ApiClient client) {
+    this.client = client;
+  }
+
+  /**
+   * @return the names of the files with this content, which are many if the wiki already holds duplicates.
+   */
+  List<String> findBySha1(final String sha1) throws IOException {
+    final List<NameValuePair> parameters = new ArrayList<>();
+    parameters.add(new BasicNameValuePair("action", "query"));
+    parameters.add(new BasicNameValuePair("format", "xml"));
+    parameters.add(new BasicNameValuePair("list", "allimages"));
+    parameters.add(new BasicNameValuePair("aisha1", sha1));
+    parameters.add(new BasicNameValuePair("ailimit", "max"));
+    return ApiDocuments.getStrings(post(parameters), "/api/query/allimages/img/@name");
+  }
+
+  /**
+   * @return the names among these of the files already on the wiki, checked by batches of {@value #TITLES_PER_QUERY}.
+   */
+  Set<String> findExisting(final Collection<String> fileNames) throws IOException {
+    final Set<String> existing = new HashSet<>();
+    for (final List<String> batch : Iterables.partition(fileNames, TITLES_PER_QUERY)) {
+      final Map<String, String> titles = new LinkedHashMap<>();
+      for (final String fileName : batch) {
+        titles.put(FILE_NAMESPACE + fileName, fileName);
+      }
+      final List<NameValuePair> parameters = new ArrayList<>();
+      parameters.add(new BasicNameValuePair("action", "query"));
+      parameters.add(new BasicNameValuePair("format", "xml"));
+      parameters.add(new BasicNameValuePair("prop", "imageinfo"));
+      parameters.add(new BasicNameValuePair("titles", Joiner.on('|').join(titles.keySet())));
+      final Document response = post(parameters);
+      // The wiki answers with normalized titles, e.g. with a capital first letter or a localized namespace.
+      final Map<String, String> normalized = new HashMap<>();
+      for (final Node node : ApiDocuments.getNodes(response, "/api/query/normalized/n")) {
+        normalized.put(node.getAttributes().getNamedItem("to").getTextContent(), node.getAttributes()
+            .getNamedItem("from").getTextContent());
+      }
+      for (final String title : ApiDocuments.getStrings(response, "/api/query/pages/page[not(@missing)]/@title")) {
+        final String requested = normalized.containsKey(title) ? normalized.get(title) : title;
+        if (titles.containsKey(requested)) {
+          existing.add(titles.get(requested));
+        }
+      }
+    }
+    return existing;
+  }
+
+  SiteInfo getSiteInfo() throws IOException {
+    final List<NameValuePair> parameters = new ArrayList<>();
+    parameters.add(new BasicNameValuePair("action", "query"));
+    parameters.add(new BasicNameValuePair("format", "xml"));
+    parameters.add(new BasicNameValuePair("meta", "siteinfo"));
+    parameters.add(new BasicNameValuePair("siprop", "general|fileextensions"));
+    final Document response = post(parameters);
+    final Set<String> extensions = new HashSet<>();
+    for (final String extension : ApiDocuments.getStrings(response, "/api/query/fileextensions/fe/@ext")) {
+      extensions.add(extension.toLowerCase(Locale.ENGLISH));
+    }
+    return new SiteInfo(getLong(response, "/api/query/general/@maxuploadsize"), getLong(response,
+        "/api/query/general/@minuploadchunksize"), extensions);
+  }
+
+  private static long getLong(final Document response, final String expression) {
+    final Long value = Longs.tryParse(Strings.nullToEmpty(ApiDocuments.getString(response, expression)));
+    return value == null ? 0 : value;
+  }
+
+  private Document post(final List<NameValuePair> parameters) throws IOException {
+    final Document response = client.post(new UrlEncodedFormEntity(parameters, "UTF-8"));
+    try {
+      ApiDocuments.checkError(response);
+    } catch (final FailedUploadException e) {
+      throw new IOException("Can't query the wiki", e);
+    }
+    return response;
+  }
+}
@@ -0,0 +1,105 @@
+package comeon.mediawiki;
+
+import in.yuvi.http.fluent.ProgressListener;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.http.NameValuePair;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.message.BasicNameValuePair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+
+/**
+ * Upload of one file, in a single request streamed from the file's channel, or in chunks if it is large. Unless it is
+ * already known, the SHA-1 of the file is computed from the bytes as they are sent. It is checked against the one the
+ * wiki computed once the file is published.
+ */
+final class FileUpload {
+  private static final Logger LOGGER = LoggerFactory.getLogger(FileUpload.class);
+
+  private final ApiClient client;
+
+  private final long chunkSize;
+
+  private final BandwidthLimiter limiter;
+
+  /**
+   * @param chunkSize
+   *          files larger than this are uploaded in chunks of this size, 0 disables chunked uploads.
+   */
+  FileUpload(final ApiClient client, final long chunkSize, final BandwidthLimiter limiter) {
+    this.client = client;
+    this.chunkSize = chunkSize;
+    this.limiter = limiter;
+  }
+
+  /**
+   * @param sha1
+   *          hexadecimal SHA-1 of the file, or {@code null} to compute it while sending. Bodies that needn't hash
+   *          what they send can hand the file over to the socket without copying it.
+   * @return the hexadecimal SHA-1 of the bytes sent.
+   */
+  String upload(final File file, final String sha1, final String token, final String text, final String comment,
+      final ProgressListener listener) throws IOException, FailedUploadException, CorruptedUploadException {
+    final ContentHasher hasher = sha1 == null ? new ContentHasher() : null;
+    final String publishedName;
+    if (chunkSize > 0 && file.length() > chunkSize) {
+      LOGGER.debug("Uploading {} in chunks of {} bytes", file, chunkSize);
+      final ChunkedUpload upload = new ChunkedUpload(client, file, file.getName(), chunkSize, hasher,
+          limiter);
+      upload.stash(token, listener);
+      publishedName = upload.commit(token, text, comment, true);
+    } else {
+      LOGGER.debug("Uploading {}", file);
+      final Map<String, String> fields = new LinkedHashMap<>();
+      fields.put("action", "upload");
+      fields.put("format", "xml");
+      fields.put("filename", file.getName());
+      fields.put("comment", comment);
+      fields.put("text", text);
+      fields.put("watchlist", "watch");
+      fields.put("ignorewarnings", "1");
+      fields.put("token", token);
+      try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+        publishedName = ApiDocuments.checkUploaded(client.post(new MultipartBody(fields, "file", file.getName(),
+            channel, 0, file.length(), listener, 0, file.length(), hasher, limiter)));
+      }
+    }
+    return verify(publishedName == null ? file.getName() : publishedName, hasher == null ? sha1 : hasher.getHash());
+  }
+
+  /**
+   * Compares the SHA-1 of the sent bytes with the one of the published file.
+   * 
+   * @return the SHA-1 of the sent bytes.
+   */
+  private String verify(final String fileName, final String sentHash) throws IOException, FailedUploadException,
+      CorruptedUploadException {
+    final List<NameValuePair> parameters = new ArrayList<>();
+    parameters.add(new BasicNameValuePair("action", "query"));
+    parameters.add(new BasicNameValuePair("format", "xml"));
+    parameters.add(new BasicNameValuePair("prop", "imageinfo"));
+    parameters.add(new BasicNameValuePair("iiprop", "sha1"));
+    parameters.add(new BasicNameValuePair("titles", "File:" + fileName));
+    final Document response = client.post(new UrlEncodedFormEntity(parameters, "UTF-8"));
+    ApiDocuments.checkError(response);
+    final String wikiHash = ApiDocuments.getString(response, "/api/query/pages/page/imageinfo/ii/@sha1");
+    if (wikiHash == null) {
+      LOGGER.warn("Wiki didn't give the SHA-1 of {}, can't verify it", fileName);
+    } else if (!wikiHash.equalsIgnoreCase(sentHash)) {
+      throw new CorruptedUploadException(fileName, sentHash, wikiHash);
+    } else {
+      LOGGER.debug("Verified {} with SHA-1 {}", fileName, sentHash);
+    }
+    return sentHash;
+  }
+}
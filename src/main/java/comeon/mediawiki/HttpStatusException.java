@@ -0,0 +1,31 @@
+package comeon.mediawiki;
+
+import java.io.IOException;
+
+/**
+ * The API answered with an HTTP status other than 200.
+ */
+public final class HttpStatusException extends IOException {
+  private static final long serialVersionUID = 1L;
+
+  private final int statusCode;
+
+  private final long retryAfter;
+
+  public HttpStatusException(final int statusCode, final String reasonPhrase, final long retryAfter) {
+    super("API responded with HTTP " + statusCode + " " + reasonPhrase);
+    this.statusCode = statusCode;
+    this.retryAfter = retryAfter;
+  }
+
+  public int getStatusCode() {
+    return statusCode;
+  }
+
+  /**
+   * @return how long the wiki asked us to wait before trying again, in milliseconds, or 0 if it didn't say.
+   */
+  public long getRetryAfter() {
+    return retryAfter;
+  }
+}
@@ -3,6 +3,9 @@ package comeon.mediawiki;
 import in.yuvi.http.fluent.ProgressListener;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
 
 import comeon.model.Picture;
 
@@ -12,8 +15,35 @@ public interface MediaWiki {
   
   void login() throws NotLoggedInException, FailedLoginException;
 
-  void upload(Picture picture, ProgressListener listener) throws NotLoggedInException,
-      FailedLoginException, FailedUploadException, IOException;
+  /**
+   * Opens a session in the background unless one is open already, so that uploads don't wait for it.
+   */
+  void prepare();
+
+  /**
+   * @param sha1
+   *          hexadecimal SHA-1 of the picture's file if it is known already, or {@code null}.
+   * @return the hexadecimal SHA-1 of the bytes sent, which the wiki's own was checked against if it gave one.
+   */
+  String upload(Picture picture, String sha1, ProgressListener listener) throws NotLoggedInException,
+      FailedLoginException, FailedUploadException, CorruptedUploadException, IOException;
+
+  /**
+   * @param sha1
+   *          hexadecimal SHA-1 of a file's content.
+   * @return the names of the files already on the wiki with this content.
+   */
+  List<String> findDuplicates(String sha1) throws IOException;
+
+  /**
+   * @return the names among these of the files already on the wiki.
+   */
+  Set<String> findExistingFiles(Collection<String> fileNames) throws IOException;
+
+  /**
+   * @return the upload limits of the wiki, fetched once.
+   */
+  SiteInfo getSiteInfo() throws IOException;
 
   void logout() throws FailedLogoutException;
   
@@ -3,32 +3,49 @@ package comeon.mediawiki;
 import in.yuvi.http.fluent.ProgressListener;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.text.MessageFormat;
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 
-import org.mediawiki.api.ApiResult;
 import org.mediawiki.api.MWApi;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.io.Files;
 import comeon.model.Picture;
-import comeon.model.User;
 import comeon.model.Wiki;
-import comeon.ui.UI;
 
 public final class MediaWikiImpl implements MediaWiki {
   
   private static final Logger LOGGER = LoggerFactory.getLogger(MediaWikiImpl.class);
 
-  private final MWApi api;
-
   private final Wiki wiki;
   
-  MediaWikiImpl(final Wiki wiki, final MWApi api) {
+  private final Session session;
+  
+  private final ApiClient client;
+  
+  private final long chunkSize;
+  
+  private final BandwidthLimiter limiter;
+  
+  private final String comment;
+  
+  private SiteInfo siteInfo;
+  
+  /**
+   * @param chunkSize
+   *          files larger than this are uploaded in chunks of this size, 0 disables chunked uploads.
+   * @param comment
+   *          the upload summary.
+   */
+  MediaWikiImpl(final Wiki wiki, final MWApi api, final ApiClient client, final long chunkSize,
+      final BandwidthLimiter limiter, final String comment) {
     this.wiki = wiki;
-    this.api = api;
+    this.session = new Session(wiki, api);
+    this.client = client;
+    this.chunkSize = chunkSize;
+    this.limiter = limiter;
+    this.comment = comment;
   }
 
   /*
@@ -38,21 +55,17 @@ public final class MediaWikiImpl implements MediaWiki {
    */
   @Override
   public void login() throws NotLoggedInException, FailedLoginException {
-    try {
-      LOGGER.debug("Logging in");
-      final User user = wiki.getUser();
-      final String result = this.api.login(user.getLogin(), user.getPassword());
-      if (!this.api.isLoggedIn) {
-        throw new NotLoggedInException(result);
-      }
-    } catch (final IOException e) {
-      throw new FailedLoginException(e);
-    }
+    session.login();
   }
 
   @Override
   public boolean isLoggedIn() {
-    return api.isLoggedIn;
+    return session.isLoggedIn();
+  }
+
+  @Override
+  public void prepare() {
+    session.prepare();
   }
   
   /*
@@ -62,38 +75,61 @@ public final class MediaWikiImpl implements MediaWiki {
    * in.yuvi.http.fluent.ProgressListener)
    */
   @Override
-  public void upload(final Picture picture, final ProgressListener listener) throws NotLoggedInException,
-      FailedLoginException, FailedUploadException, IOException {
-    synchronized (this) {
-      if (!this.api.isLoggedIn) {
-        LOGGER.debug("Not logged in");
-        this.login();
-      }
-    }
-    final InputStream stream = Files.asByteSource(picture.getFile()).openBufferedStream();
+  public String upload(final Picture picture, final String sha1, final ProgressListener listener)
+      throws NotLoggedInException, FailedLoginException, FailedUploadException, CorruptedUploadException, IOException {
+    return upload(newUpload(client, chunkSize), picture, sha1, listener);
+  }
+
+  /**
+   * @return an upload through this client, sharing the bandwidth of every other upload.
+   */
+  FileUpload newUpload(final ApiClient uploadClient, final long configuredChunkSize) {
+    return new FileUpload(uploadClient, getChunkSize(configuredChunkSize), limiter);
+  }
+
+  /**
+   * Uploads through this session, whatever the client of the upload.
+   */
+  String upload(final FileUpload upload, final Picture picture, final String sha1, final ProgressListener listener)
+      throws NotLoggedInException, FailedLoginException, FailedUploadException, CorruptedUploadException {
     try {
-      LOGGER.debug("Uploading");
-      final ApiResult result = this.api.upload(picture.getFile().getName(), stream, picture.getFile().length(), picture.getRenderedTemplate(),
-          MessageFormat.format(UI.BUNDLE.getString("upload.comment"), UI.BUNDLE.getString("comeon")), true, listener);
-      final ApiResult error = result.getNode("/api/error");
-      if (error.getDocument() != null) {
-        final String code = error.getString("@code");
-        final String info = error.getString("@info");
-        throw new FailedUploadException(code, info);
-      }
-      final List<ApiResult> warnings = result.getNodes("/api/warning");
-      if (warnings != null && !warnings.isEmpty()) {
-        for (final ApiResult warning : warnings) {
-          final String code = warning.getString("@code");
-          final String info = warning.getString("@info");
-          LOGGER.warn("Upload warning. MediaWiki says: {}: {}", code, info);
-        }
-      }
+      return session.upload(upload, picture, sha1, comment, listener);
     } catch (final IOException e) {
       throw new FailedUploadException(e);
     }
   }
 
+  @Override
+  public List<String> findDuplicates(final String sha1) throws IOException {
+    return new FileQueries(client).findBySha1(sha1);
+  }
+
+  @Override
+  public Set<String> findExistingFiles(final Collection<String> fileNames) throws IOException {
+    return new FileQueries(client).findExisting(fileNames);
+  }
+
+  @Override
+  public synchronized SiteInfo getSiteInfo() throws IOException {
+    if (siteInfo == null) {
+      siteInfo = new FileQueries(client).getSiteInfo();
+      LOGGER.debug("Wiki accepts uploads of up to {} bytes", siteInfo.getMaxUploadSize());
+    }
+    return siteInfo;
+  }
+
+  /**
+   * @return the configured chunk size, adjusted to the wiki's limits if they are known.
+   */
+  long getChunkSize(final long configured) {
+    try {
+      return getSiteInfo().getChunkSize(configured);
+    } catch (final IOException e) {
+      LOGGER.warn("Can't get the wiki's limits, sending chunks of {} bytes", configured, e);
+      return configured;
+    }
+  }
+
   /*
    * (non-Javadoc)
    * 
@@ -101,16 +137,7 @@ public final class MediaWikiImpl implements MediaWiki {
    */
   @Override
   public void logout() throws FailedLogoutException {
-    synchronized (this) {
-      if (this.api.isLoggedIn) {
-        LOGGER.debug("Logging out");
-        try {
-          this.api.logout();
-        } catch (final IOException e) {
-          throw new FailedLogoutException(e);
-        }
-      }
-    }
+    session.logout();
   }
   
   @Override
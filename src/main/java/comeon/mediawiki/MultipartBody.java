@@ -0,0 +1,265 @@
+package comeon.mediawiki;
+
+import in.yuvi.http.fluent.ProgressListener;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.nio.ContentEncoder;
+import org.apache.http.nio.FileContentEncoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.entity.HttpAsyncContentProducer;
+
+import com.google.common.base.Charsets;
+
+/**
+ * <code>multipart/form-data</code> body made of text fields and a region of a file, read from its channel as the body
+ * is written. It can be written to a stream by a blocking client, through a single buffer it reads the region into,
+ * or produced as the connection becomes writable by a non-blocking one, in which case the file region goes straight
+ * from the channel to the socket when the connection allows it. Otherwise the region is memory-mapped, window by
+ * window, and copied once to the connection's buffers.
+ * When given a {@link ContentHasher}, the body feeds it the bytes of the region as they are sent, which rules out
+ * the channel to socket transfer. The bytes of the region are sent as fast as the {@link BandwidthLimiter} allows.
+ */
+final class MultipartBody extends AbstractHttpEntity implements HttpAsyncContentProducer {
+  private static final String CRLF = "\r\n";
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private static final long MAP_SIZE = 16 * 1024 * 1024;
+
+  private final byte[] head;
+
+  private final byte[] tail;
+
+  private final FileChannel channel;
+
+  private final long offset;
+
+  private final long length;
+
+  private final ProgressListener listener;
+
+  private final long progressBase;
+
+  private final long progressTotal;
+
+  private final ContentHasher hasher;
+
+  private final BandwidthLimiter limiter;
+
+  private int producedHead;
+
+  private long producedBody;
+
+  private int producedTail;
+
+  private MappedByteBuffer produceWindow;
+
+  /**
+   * @param progressBase
+   *          bytes of the whole file already sent, added to those of this region when reporting progress.
+   * @param progressTotal
+   *          size of the whole file.
+   * @param hasher
+   *          hashes the sent bytes of the file, may be {@code null}.
+   */
+  MultipartBody(final Map<String, String> fields, final String fileField, final String fileName,
+      final FileChannel channel, final long offset, final long length, final ProgressListener listener,
+      final long progressBase, final long progressTotal, final ContentHasher hasher, final BandwidthLimiter limiter) {
+    final String boundary = "comeon-" + UUID.randomUUID();
+    final StringBuilder headBuilder = new StringBuilder();
+    for (final Map.Entry<String, String> field : fields.entrySet()) {
+      headBuilder.append("--").append(boundary).append(CRLF);
+      headBuilder.append("Content-Disposition: form-data; name=\"").append(field.getKey()).append('"').append(CRLF);
+      headBuilder.append("Content-Type: text/plain; charset=UTF-8").append(CRLF).append(CRLF);
+      headBuilder.append(field.getValue()).append(CRLF);
+    }
+    headBuilder.append("--").append(boundary).append(CRLF);
+    headBuilder.append("Content-Disposition: form-data; name=\"").append(fileField).append("\"; filename=\"")
+        .append(fileName.replace("\"", "")).append('"').append(CRLF);
+    headBuilder.append("Content-Type: application/octet-stream").append(CRLF).append(CRLF);
+    this.head = headBuilder.toString().getBytes(Charsets.UTF_8);
+    this.tail = (CRLF + "--" + boundary + "--" + CRLF).getBytes(Charsets.UTF_8);
+    this.channel = channel;
+    this.offset = offset;
+    this.length = length;
+    this.listener = listener;
+    this.progressBase = progressBase;
+    this.progressTotal = progressTotal;
+    this.hasher = hasher;
+    this.limiter = limiter;
+    this.setContentType("multipart/form-data; boundary=" + boundary);
+  }
+
+  @Override
+  public boolean isRepeatable() {
+    return true;
+  }
+
+  @Override
+  public long getContentLength() {
+    return head.length + length + tail.length;
+  }
+
+  @Override
+  public boolean isStreaming() {
+    return false;
+  }
+
+  /**
+   * @return the body, read from the file as the stream is. Unlike {@link #writeTo(OutputStream)}, reading it neither
+   *         reports progress, hashes nor waits for the bandwidth limiter.
+   */
+  @Override
+  public InputStream getContent() {
+    return new SequenceInputStream(Collections.enumeration(Arrays.asList(new ByteArrayInputStream(head),
+        new RegionInputStream(), new ByteArrayInputStream(tail))));
+  }
+
+  @Override
+  public void writeTo(final OutputStream out) throws IOException {
+    out.write(head);
+    final byte[] bytes = new byte[BUFFER_SIZE];
+    final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    long written = 0;
+    while (written < length) {
+      final int count = limiter.acquire((int) Math.min(bytes.length, length - written));
+      buffer.clear().limit(count);
+      readFully(buffer, offset + written);
+      if (hasher != null) {
+        hasher.update(offset + written, bytes, 0, count);
+      }
+      out.write(bytes, 0, count);
+      written += count;
+      if (listener != null) {
+        listener.onProgress(progressBase + written, progressTotal);
+      }
+    }
+    out.write(tail);
+    out.flush();
+  }
+
+  /**
+   * Reads at a given position rather than the channel's, which the caller may share between bodies.
+   */
+  private void readFully(final ByteBuffer buffer, final long position) throws IOException {
+    long read = 0;
+    while (buffer.hasRemaining()) {
+      final int count = channel.read(buffer, position + read);
+      if (count < 0) {
+        throw new EOFException("File is shorter than the region being sent");
+      }
+      read += count;
+    }
+  }
+
+  @Override
+  public void produceContent(final ContentEncoder encoder, final IOControl ioctrl) throws IOException {
+    if (producedHead < head.length) {
+      producedHead += encoder.write(ByteBuffer.wrap(head, producedHead, head.length - producedHead));
+      if (producedHead < head.length) {
+        return;
+      }
+    }
+    if (producedBody < length) {
+      final int allowed = limiter.tryAcquire((int) Math.min(MAP_SIZE, length - producedBody));
+      if (allowed == 0) {
+        limiter.suspend(ioctrl);
+        return;
+      }
+      final long written;
+      if (hasher == null && encoder instanceof FileContentEncoder) {
+        written = ((FileContentEncoder) encoder).transfer(channel, offset + producedBody, allowed);
+      } else {
+        // Typically TLS, which must encrypt in user space anyway.
+        if (produceWindow == null || !produceWindow.hasRemaining()) {
+          produceWindow = map(producedBody);
+        }
+        final ByteBuffer sent = produceWindow.duplicate();
+        sent.limit(sent.position() + Math.min(allowed, sent.remaining()));
+        written = encoder.write(sent);
+        if (hasher != null && written > 0) {
+          final ByteBuffer hashed = produceWindow.duplicate();
+          hashed.limit(hashed.position() + (int) written);
+          hasher.update(offset + producedBody, hashed);
+        }
+        produceWindow.position(produceWindow.position() + (int) written);
+      }
+      limiter.release(allowed - written);
+      producedBody += written;
+      if (written > 0 && listener != null) {
+        listener.onProgress(progressBase + producedBody, progressTotal);
+      }
+      if (producedBody < length) {
+        return;
+      }
+    }
+    producedTail += encoder.write(ByteBuffer.wrap(tail, producedTail, tail.length - producedTail));
+    if (producedTail == tail.length) {
+      encoder.complete();
+    }
+  }
+
+  /**
+   * Rewinds the non-blocking production, so that the body can be produced again. The channel belongs to the caller
+   * and is left open.
+   */
+  @Override
+  public void close() {
+    producedHead = 0;
+    producedBody = 0;
+    producedTail = 0;
+    produceWindow = null;
+  }
+
+  /**
+   * Maps the next window of the file region, so that its bytes are copied once from the page cache to the
+   * connection's buffers instead of being read into a buffer first. Only non-blocking production, which hands the
+   * connection a window at a time, maps the file.
+   */
+  private MappedByteBuffer map(final long from) throws IOException {
+    return channel.map(MapMode.READ_ONLY, offset + from, Math.min(MAP_SIZE, length - from));
+  }
+
+  /**
+   * The file region, read at the position of the stream.
+   */
+  private final class RegionInputStream extends InputStream {
+    private long read;
+
+    @Override
+    public int read() throws IOException {
+      final byte[] single = new byte[1];
+      return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(final byte[] bytes, final int off, final int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      } else if (read >= length) {
+        return -1;
+      }
+      final int count = channel.read(ByteBuffer.wrap(bytes, off, (int) Math.min(len, length - read)), offset + read);
+      if (count < 0) {
+        throw new EOFException("File is shorter than the region being read");
+      }
+      read += count;
+      return count;
+    }
+  }
+}
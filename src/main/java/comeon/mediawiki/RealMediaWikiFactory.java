@@ -0,0 +1,41 @@
+package comeon.mediawiki;
+
+import org.apache.http.impl.client.AbstractHttpClient;
+import org.mediawiki.api.MWApi;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import comeon.model.Wiki;
+
+@Singleton
+public final class RealMediaWikiFactory implements MediaWikiFactory {
+  private final AbstractHttpClient httpClient;
+
+  private final ConnectionPool connectionPool;
+
+  private final long chunkSize;
+
+  private final BandwidthLimiter limiter;
+
+  private final String comment;
+
+  @Inject
+  public RealMediaWikiFactory(AbstractHttpClient httpClient, final ConnectionPool connectionPool,
+      @Named(CHUNK_SIZE) final long chunkSize, final BandwidthLimiter limiter,
+      @Named(UPLOAD_COMMENT) final String comment) {
+    super();
+    this.httpClient = httpClient;
+    this.connectionPool = connectionPool;
+    this.chunkSize = chunkSize;
+    this.limiter = limiter;
+    this.comment = comment;
+  }
+  
+  @Override
+  public MediaWiki build(final Wiki wiki) {
+    connectionPool.configure(wiki);
+    final MWApi api = new MWApi(wiki.getUrl(), httpClient);
+    return new MediaWikiImpl(wiki, api, new BlockingApiClient(httpClient, wiki.getUrl()), chunkSize, limiter, comment);
+  }
+}
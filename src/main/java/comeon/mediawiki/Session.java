@@ -0,0 +1,183 @@
+package comeon.mediawiki;
+
+import in.yuvi.http.fluent.ProgressListener;
+
+import java.io.IOException;
+import java.util.Set;
+
+import org.mediawiki.api.MWApi;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableSet;
+
+import comeon.model.Picture;
+import comeon.model.User;
+import comeon.model.Wiki;
+
+/**
+ * Authenticated session on a wiki, kept open across batches along with its CSRF token. The first thread that needs the
+ * login or the token gets it while the others wait for it; once there, they are read without locking. When the wiki
+ * rejects the token or the session, the first thread to notice renews it, once, and the threads still uploading with
+ * it carry on meanwhile.
+ */
+final class Session {
+  private static final Logger LOGGER = LoggerFactory.getLogger(Session.class);
+
+  private static final String BAD_TOKEN = "badtoken";
+
+  private static final Set<String> LOST_SESSION_CODES = ImmutableSet.of("notloggedin", "assertuserfailed");
+
+  private final Wiki wiki;
+
+  private final MWApi api;
+
+  private final Object loginLock;
+
+  private final Object tokenLock;
+
+  private volatile boolean loggedIn;
+
+  private volatile String editToken;
+
+  Session(final Wiki wiki, final MWApi api) {
+    this.wiki = wiki;
+    this.api = api;
+    this.loginLock = new Object();
+    this.tokenLock = new Object();
+  }
+
+  boolean isLoggedIn() {
+    return loggedIn;
+  }
+
+  /**
+   * Logs in again, whatever the state of the session.
+   */
+  void login() throws NotLoggedInException, FailedLoginException {
+    synchronized (loginLock) {
+      loggedIn = false;
+      editToken = null;
+      doLogin();
+    }
+  }
+
+  private void doLogin() throws NotLoggedInException, FailedLoginException {
+    try {
+      LOGGER.debug("Logging in to {}", wiki.getName());
+      final User user = wiki.getUser();
+      final String result = this.api.login(user.getLogin(), user.getPassword());
+      if (!this.api.isLoggedIn) {
+        throw new NotLoggedInException(result);
+      }
+      loggedIn = true;
+    } catch (final IOException e) {
+      throw new FailedLoginException(e);
+    }
+  }
+
+  private void ensureLoggedIn() throws NotLoggedInException, FailedLoginException {
+    if (!loggedIn) {
+      synchronized (loginLock) {
+        if (!loggedIn) {
+          doLogin();
+        }
+      }
+    }
+  }
+
+  String getEditToken() throws NotLoggedInException, FailedLoginException, IOException {
+    String token = editToken;
+    if (token == null) {
+      ensureLoggedIn();
+      synchronized (tokenLock) {
+        if (editToken == null) {
+          LOGGER.debug("Getting an edit token from {}", wiki.getName());
+          editToken = api.action("tokens").param("type", "edit").get().getString("/api/tokens/@edittoken");
+        }
+        token = editToken;
+      }
+    }
+    return token;
+  }
+
+  /**
+   * Logs in and gets a token in the background unless that is done already, so that the first upload doesn't have
+   * to wait for them.
+   */
+  void prepare() {
+    if (editToken == null) {
+      final Thread thread = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            getEditToken();
+          } catch (final NotLoggedInException | FailedLoginException | IOException e) {
+            LOGGER.warn("Couldn't open a session on {} ahead of uploads", wiki.getName(), e);
+          }
+        }
+      }, "session-" + wiki.getName());
+      thread.setDaemon(true);
+      thread.start();
+    }
+  }
+
+  /**
+   * Uploads with the session's token, renewing the token or the session once if the wiki rejects them.
+   * 
+   * @return the hexadecimal SHA-1 of the bytes sent.
+   */
+  String upload(final FileUpload upload, final Picture picture, final String sha1, final String comment,
+      final ProgressListener listener) throws NotLoggedInException, FailedLoginException, FailedUploadException, CorruptedUploadException,
+      IOException {
+    boolean renewed = false;
+    while (true) {
+      final String token = getEditToken();
+      try {
+        return upload.upload(picture.getFile(), sha1, token, picture.getRenderedTemplate(), comment, listener);
+      } catch (final FailedUploadException e) {
+        if (renewed || !discard(token, e.getCode())) {
+          throw e;
+        }
+        renewed = true;
+      }
+    }
+  }
+
+  /**
+   * Discards the token, and the login if the wiki lost it, unless another thread already did.
+   * 
+   * @return whether the error is due to the session and renewing it may help.
+   */
+  private boolean discard(final String token, final String code) {
+    final boolean lostToken = BAD_TOKEN.equals(code);
+    final boolean lostSession = LOST_SESSION_CODES.contains(code);
+    if (lostToken || lostSession) {
+      synchronized (tokenLock) {
+        if (token.equals(editToken)) {
+          LOGGER.info("{} rejected our {}, renewing it", wiki.getName(), lostSession ? "session" : "token");
+          editToken = null;
+          if (lostSession) {
+            loggedIn = false;
+          }
+        }
+      }
+    }
+    return lostToken || lostSession;
+  }
+
+  void logout() throws FailedLogoutException {
+    synchronized (loginLock) {
+      if (loggedIn) {
+        LOGGER.debug("Logging out of {}", wiki.getName());
+        loggedIn = false;
+        editToken = null;
+        try {
+          this.api.logout();
+        } catch (final IOException e) {
+          throw new FailedLogoutException(e);
+        }
+      }
+    }
+  }
+}
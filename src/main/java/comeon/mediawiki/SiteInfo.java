@@ -0,0 +1,52 @@
+package comeon.mediawiki;
+
+import java.util.Locale;
+import java.util.Set;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Limits a wiki puts on uploads, as told by its <code>siteinfo</code>. Limits the wiki didn't tell are not enforced.
+ */
+public final class SiteInfo {
+  private final long maxUploadSize;
+
+  private final long minChunkSize;
+
+  private final Set<String> fileExtensions;
+
+  /**
+   * @param maxUploadSize
+   *          in bytes, 0 if unknown.
+   * @param minChunkSize
+   *          in bytes, 0 if unknown.
+   * @param fileExtensions
+   *          allowed extensions, in lower case, empty if unknown.
+   */
+  public SiteInfo(final long maxUploadSize, final long minChunkSize, final Set<String> fileExtensions) {
+    this.maxUploadSize = maxUploadSize;
+    this.minChunkSize = minChunkSize;
+    this.fileExtensions = ImmutableSet.copyOf(fileExtensions);
+  }
+
+  public long getMaxUploadSize() {
+    return maxUploadSize;
+  }
+
+  public boolean allowsSize(final long size) {
+    return maxUploadSize <= 0 || size <= maxUploadSize;
+  }
+
+  public boolean allowsExtension(final String fileName) {
+    final int dot = fileName.lastIndexOf('.');
+    return fileExtensions.isEmpty()
+        || (dot >= 0 && fileExtensions.contains(fileName.substring(dot + 1).toLowerCase(Locale.ENGLISH)));
+  }
+
+  /**
+   * @return the configured chunk size, raised to the smallest one the wiki accepts.
+   */
+  long getChunkSize(final long configured) {
+    return configured <= 0 ? configured : Math.max(configured, minChunkSize);
+  }
+}
@@ -0,0 +1,11 @@
+package comeon.model;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Loads the complete metadata of a picture that was read with only part of it.
+ */
+public interface MetadataLoader {
+  Map<String, Object> loadMetadata(Picture picture) throws IOException;
+}
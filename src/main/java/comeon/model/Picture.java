@@ -3,6 +3,7 @@ package comeon.model;
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
 import java.io.File;
+import java.io.IOException;
 import java.util.Map;
 
 public final class Picture {
@@ -18,14 +19,27 @@ public final class Picture {
 
   private String renderedTemplate;
 
-  private final Map<String, Object> metadata;
+  private volatile Map<String, Object> metadata;
 
-  private final byte[] thumbnail;
+  private volatile MetadataLoader metadataLoader;
+
+  private volatile Thumbnail thumbnail;
   
   private State state;
+  
+  private volatile int priority;
+
+  public Picture(final File file, final String fileName, final Template template, final Map<String, Object> metadata,
+      final Thumbnail thumbnail) {
+    this(file, fileName, template, metadata, thumbnail, null);
+  }
 
+  /**
+   * @param metadataLoader
+   *          loads the complete metadata if the given one is partial, {@code null} otherwise.
+   */
   public Picture(final File file, final String fileName, final Template template, final Map<String, Object> metadata,
-      final byte[] thumbnail) {
+      final Thumbnail thumbnail, final MetadataLoader metadataLoader) {
     super();
     this.pcs = new PropertyChangeSupport(this);
     this.file = file;
@@ -33,6 +47,7 @@ public final class Picture {
     this.template = template;
     this.templateText = template.getTemplateText();
     this.metadata = metadata;
+    this.metadataLoader = metadataLoader;
     this.thumbnail = thumbnail;
     this.state = State.ToBeUploaded;
   }
@@ -73,8 +88,43 @@ public final class Picture {
     return metadata;
   }
 
+  public boolean isMetadataComplete() {
+    return metadataLoader == null;
+  }
+
+  /**
+   * Replaces partial metadata with the complete one, if needed.
+   */
+  public void loadMetadata() throws IOException {
+    final Map<String, Object> oldMetadata;
+    final Map<String, Object> newMetadata;
+    synchronized (this) {
+      if (metadataLoader == null) {
+        return;
+      }
+      oldMetadata = this.metadata;
+      newMetadata = metadataLoader.loadMetadata(this);
+      this.metadata = newMetadata;
+      this.metadataLoader = null;
+    }
+    pcs.firePropertyChange("metadata", oldMetadata, newMetadata);
+  }
+
+  /**
+   * @return the encoded thumbnail, read from wherever it is stored on each call.
+   */
   public byte[] getThumbnail() {
-    return thumbnail;
+    return thumbnail.getBytes();
+  }
+
+  public boolean hasThumbnail() {
+    return !thumbnail.isEmpty();
+  }
+
+  public void setThumbnail(final Thumbnail thumbnail) {
+    final Thumbnail oldThumbnail = this.thumbnail;
+    this.thumbnail = thumbnail;
+    pcs.firePropertyChange("thumbnail", oldThumbnail, thumbnail);
   }
 
   public String getFileName() {
@@ -91,6 +141,19 @@ public final class Picture {
     pcs.firePropertyChange("state", oldState, state);
   }
   
+  /**
+   * @return the priority the user gave to the upload of this picture, pictures with a higher one go first.
+   */
+  public int getPriority() {
+    return priority;
+  }
+  
+  public void setPriority(final int priority) {
+    final int oldPriority = this.priority;
+    this.priority = priority;
+    pcs.firePropertyChange("priority", oldPriority, priority);
+  }
+  
   public void addPropertyChangeListener(final PropertyChangeListener pcl) {
     this.pcs.addPropertyChangeListener(pcl);
   }
@@ -121,6 +184,14 @@ public final class Picture {
   public enum State {
     ToBeUploaded,
     UploadedSuccessfully,
-    FailedUpload
+    FailedUpload,
+    /**
+     * The file reached the wiki, but not as it was sent.
+     */
+    FailedVerification,
+    /**
+     * The wiki already holds a file with the same content.
+     */
+    Duplicate
   }
 }
@@ -0,0 +1,13 @@
+package comeon.model;
+
+/**
+ * Encoded thumbnail of a picture, possibly stored off-heap.
+ */
+public interface Thumbnail {
+  /**
+   * @return the encoded image, empty if there is none.
+   */
+  byte[] getBytes();
+
+  boolean isEmpty();
+}
@@ -1,16 +1,31 @@
 package comeon.model;
 
 public final class Wiki {
+  public static final int DEFAULT_MAX_CONNECTIONS = 32;
+  
+  public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 16;
+  
   private final String name;
   
   private final String url;
   
   private final User user;
   
+  private final int maxConnections;
+  
+  private final int maxConnectionsPerRoute;
+  
   public Wiki(final String name, final String url, final User user) {
+    this(name, url, user, DEFAULT_MAX_CONNECTIONS, DEFAULT_MAX_CONNECTIONS_PER_ROUTE);
+  }
+  
+  public Wiki(final String name, final String url, final User user, final int maxConnections,
+      final int maxConnectionsPerRoute) {
     this.name = name;
     this.url = url;
     this.user = user;
+    this.maxConnections = Math.max(1, maxConnections);
+    this.maxConnectionsPerRoute = Math.max(1, maxConnectionsPerRoute);
   }
   
   public String getName() {
@@ -25,6 +40,17 @@ public final class Wiki {
     return user;
   }
   
+  public int getMaxConnections() {
+    return maxConnections;
+  }
+  
+  /**
+   * @return how many connections may be open to a single host.
+   */
+  public int getMaxConnectionsPerRoute() {
+    return maxConnectionsPerRoute;
+  }
+  
   @Override
   public boolean equals(final Object obj) {
     final boolean isEqual;
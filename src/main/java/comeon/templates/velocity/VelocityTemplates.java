@@ -1,34 +1,158 @@
 package comeon.templates.velocity;
 
-import java.util.Map;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.file.Path;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
-import org.apache.velocity.app.VelocityEngine;
+import org.apache.velocity.Template;
+import org.apache.velocity.context.Context;
+import org.apache.velocity.exception.ParseErrorException;
 import org.apache.velocity.runtime.RuntimeConstants;
+import org.apache.velocity.runtime.RuntimeInstance;
 import org.apache.velocity.runtime.log.Log4JLogChute;
+import org.apache.velocity.runtime.parser.ParseException;
+import org.apache.velocity.runtime.parser.node.SimpleNode;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
 
 public final class VelocityTemplates {
   private static final VelocityTemplates INSTANCE = new VelocityTemplates();
 
+  private static final int MAX_ENGINES = 8;
+
+  private static final long ENGINE_IDLE_MINUTES = 30;
+
+  private static final int MAX_PARSED_TEMPLATES = 256;
+
+  private static final long PARSED_TEMPLATE_IDLE_MINUTES = 10;
+
+  private static final HashFunction TEXT_HASH = Hashing.murmur3_128();
+
   final Properties commonProps;
 
+  /**
+   * One initialised engine per template directory, shared by all rendering threads.
+   */
+  private final LoadingCache<Path, RuntimeInstance> engines;
+
+  /**
+   * Parsed templates, keyed by the hash of their text. Pictures whose template text was never edited share the same
+   * entry, edited texts get their own and age out once nobody renders them anymore.
+   */
+  private final Cache<ParsedTemplateKey, Template> parsedTemplates;
+
   private VelocityTemplates() {
     commonProps = new Properties();
     commonProps.put(RuntimeConstants.INPUT_ENCODING, "UTF-8");
     commonProps.put(RuntimeConstants.OUTPUT_ENCODING, "UTF-8");
     commonProps.put(RuntimeConstants.RUNTIME_LOG_LOGSYSTEM_CLASS, Log4JLogChute.class.getName());
     commonProps.put("runtime.log.logsystem.log4j.logger", "org.apache.velocity");
+    engines = CacheBuilder.newBuilder()
+        .maximumSize(MAX_ENGINES)
+        .expireAfterAccess(ENGINE_IDLE_MINUTES, TimeUnit.MINUTES)
+        .build(new CacheLoader<Path, RuntimeInstance>() {
+          @Override
+          public RuntimeInstance load(final Path templateDirectory) throws Exception {
+            return newEngine(templateDirectory);
+          }
+        });
+    parsedTemplates = CacheBuilder.newBuilder()
+        .maximumSize(MAX_PARSED_TEMPLATES)
+        .expireAfterAccess(PARSED_TEMPLATE_IDLE_MINUTES, TimeUnit.MINUTES)
+        .build();
   }
 
   public static VelocityTemplates getInstance() {
     return INSTANCE;
   }
 
-  public VelocityEngine getEngine(final Map<String, String> additionalProps) {
-    final VelocityEngine engine = new VelocityEngine();
+  public RuntimeInstance getEngine(final Path templateDirectory) {
+    return engines.getUnchecked(templateDirectory.toAbsolutePath().normalize());
+  }
+
+  public void render(final Path templateDirectory, final String templateName, final String templateText,
+      final Context context, final Writer writer) {
+    getTemplate(templateDirectory, templateName, templateText).merge(context, writer);
+  }
+
+  Template getTemplate(final Path templateDirectory, final String templateName, final String templateText) {
+    final Path directory = templateDirectory.toAbsolutePath().normalize();
+    final ParsedTemplateKey key = new ParsedTemplateKey(directory, templateName, TEXT_HASH.hashUnencodedChars(templateText));
+    try {
+      return parsedTemplates.get(key, new Callable<Template>() {
+        @Override
+        public Template call() throws ParseException {
+          return parse(getEngine(directory), templateName, templateText);
+        }
+      });
+    } catch (final ExecutionException e) {
+      if (e.getCause() instanceof ParseException) {
+        throw new ParseErrorException((ParseException) e.getCause(), templateName);
+      } else {
+        throw Throwables.propagate(e.getCause());
+      }
+    }
+  }
+
+  private RuntimeInstance newEngine(final Path templateDirectory) throws Exception {
+    final RuntimeInstance engine = new RuntimeInstance();
     final Properties engineProps = new Properties(commonProps);
-    engineProps.putAll(additionalProps);
+    engineProps.put(RuntimeConstants.FILE_RESOURCE_LOADER_PATH, templateDirectory.toString());
     engine.init(engineProps);
     return engine;
   }
+
+  private static Template parse(final RuntimeInstance engine, final String templateName, final String templateText)
+      throws ParseException {
+    final SimpleNode document = engine.parse(new StringReader(templateText), templateName);
+    final Template template = new Template();
+    template.setName(templateName);
+    template.setRuntimeServices(engine);
+    template.setData(document);
+    template.initDocument();
+    return template;
+  }
+
+  private static final class ParsedTemplateKey {
+    private final Path directory;
+
+    private final String name;
+
+    private final HashCode textHash;
+
+    ParsedTemplateKey(final Path directory, final String name, final HashCode textHash) {
+      this.directory = directory;
+      this.name = name;
+      this.textHash = textHash;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+      final boolean isEqual;
+      if (obj instanceof ParsedTemplateKey) {
+        final ParsedTemplateKey o = (ParsedTemplateKey) obj;
+        isEqual = directory.equals(o.directory) && Objects.equal(name, o.name) && textHash.equals(o.textHash);
+      } else {
+        isEqual = false;
+      }
+      return isEqual;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(directory, name, textHash);
+    }
+  }
 }
@@ -39,12 +39,13 @@ import com.google.common.io.Resources;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import comeon.core.Core;
+import comeon.core.events.PictureRemovedEvent;
+import comeon.core.events.PicturesAddedEvent;
 import comeon.model.Picture;
 import comeon.templates.Templates;
-import comeon.ui.actions.PictureRemovedEvent;
-import comeon.ui.actions.PicturesAddedEvent;
 import comeon.ui.add.AddModel;
 import comeon.ui.add.AddPicturesDialog;
+import comeon.ui.add.AddPicturesWorker;
 import comeon.ui.menu.MenuBar;
 import comeon.ui.pictures.PicturePanels;
 import comeon.ui.toolbar.Toolbar;
@@ -117,7 +118,15 @@ public final class UI extends JFrame {
 
   @Subscribe
   public void handlePicturesAddedEvent(final PicturesAddedEvent event) {
-    this.refreshPictures();
+    SwingUtilities.invokeLater(new Runnable() {
+      @Override
+      public void run() {
+        for (final Picture picture : event.getPictures()) {
+          add(picture);
+        }
+        validate();
+      }
+    });
   }
 
   @Subscribe
@@ -214,7 +223,7 @@ public final class UI extends JFrame {
               final AddModel model = dialog.getModel();
               final File[] files = model.getPicturesFiles();
               if (files.length > 0) {
-                core.addPictures(files, model.getTemplate(), model.getExternalMetadataSource());
+                new AddPicturesWorker(core, model).execute();
               }
             }
           }
@@ -0,0 +1,70 @@
+package comeon.ui;
+
+import com.google.inject.AbstractModule;
+
+import comeon.ui.actions.AbortAction;
+import comeon.ui.actions.AboutAction;
+import comeon.ui.actions.AddPicturesAction;
+import comeon.ui.actions.HelpManualAction;
+import comeon.ui.actions.PreferencesAction;
+import comeon.ui.actions.QuitAction;
+import comeon.ui.actions.ReadingMonitor;
+import comeon.ui.actions.TransferMonitor;
+import comeon.ui.actions.UploadPicturesAction;
+import comeon.ui.menu.EditMenu;
+import comeon.ui.menu.FileMenu;
+import comeon.ui.menu.HelpMenu;
+import comeon.ui.menu.MenuBar;
+import comeon.ui.preferences.main.PreferencesController;
+import comeon.ui.preferences.main.PreferencesDialog;
+import comeon.ui.preferences.main.PreferencesModel;
+import comeon.ui.preferences.main.PreferencesPanel;
+import comeon.ui.preferences.main.TemplatesListPanel;
+import comeon.ui.preferences.main.WikisListPanel;
+import comeon.ui.preferences.templates.TemplateSubController;
+import comeon.ui.preferences.templates.TemplateSubPanel;
+import comeon.ui.preferences.wikis.WikiSubController;
+import comeon.ui.preferences.wikis.WikiSubPanel;
+import comeon.ui.toolbar.Toolbar;
+
+/**
+ * The Swing user interface, installed on top of the core bindings unless ComeOn! runs headless.
+ */
+public final class UIModule extends AbstractModule {
+
+  @Override
+  protected void configure() {
+    bind(UI.class);
+
+    bind(PreferencesDialog.class);
+    bind(PreferencesController.class);
+    bind(PreferencesModel.class);
+    bind(PreferencesPanel.class);
+    bind(TemplatesListPanel.class);
+    bind(WikisListPanel.class);
+
+    bind(TemplateSubController.class);
+    bind(TemplateSubPanel.class);
+
+    bind(WikiSubController.class);
+    bind(WikiSubPanel.class);
+
+    bind(MenuBar.class);
+    bind(FileMenu.class);
+    bind(EditMenu.class);
+    bind(HelpMenu.class);
+
+    bind(Toolbar.class);
+
+    bind(TransferMonitor.class);
+    bind(ReadingMonitor.class);
+
+    bind(AddPicturesAction.class);
+    bind(UploadPicturesAction.class);
+    bind(AboutAction.class);
+    bind(PreferencesAction.class);
+    bind(QuitAction.class);
+    bind(HelpManualAction.class);
+    bind(AbortAction.class);
+  }
+}
@@ -14,6 +14,7 @@ import comeon.templates.Templates;
 import comeon.templates.TemplatesChangedEvent;
 import comeon.ui.add.AddModel;
 import comeon.ui.add.AddPicturesDialog;
+import comeon.ui.add.AddPicturesWorker;
 
 @Singleton
 public final class AddPicturesAction extends BaseAction {
@@ -45,7 +46,7 @@ public final class AddPicturesAction extends BaseAction {
           final AddModel model = dialog.getModel();
           final File[] files = model.getPicturesFiles();
           if (files.length > 0) {
-            core.addPictures(files, model.getTemplate(), model.getExternalMetadataSource());
+            new AddPicturesWorker(core, model).execute();
           }
         }
       }
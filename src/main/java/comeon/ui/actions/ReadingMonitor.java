@@ -0,0 +1,78 @@
+package comeon.ui.actions;
+
+import java.text.MessageFormat;
+
+import javax.swing.ProgressMonitor;
+import javax.swing.SwingUtilities;
+
+import com.google.common.eventbus.Subscribe;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import comeon.core.Core;
+import comeon.core.events.ReadingDoneEvent;
+import comeon.core.events.ReadingProgressEvent;
+import comeon.core.events.ReadingStartingEvent;
+import comeon.ui.UI;
+
+@Singleton
+public final class ReadingMonitor {
+  private static final int MILLIS_TO_POPUP = 500;
+
+  private final Core core;
+
+  private final UI ui;
+
+  private ProgressMonitor monitor;
+
+  @Inject
+  public ReadingMonitor(final Core core, final UI ui) {
+    this.core = core;
+    this.ui = ui;
+  }
+
+  @Subscribe
+  public void readingStarting(final ReadingStartingEvent event) {
+    SwingUtilities.invokeLater(new Runnable() {
+      @Override
+      public void run() {
+        if (monitor != null) {
+          monitor.close();
+        }
+        monitor = new ProgressMonitor(ui, UI.BUNDLE.getString("reading.title"), null, 0, event.getTotal());
+        monitor.setMillisToDecideToPopup(MILLIS_TO_POPUP);
+      }
+    });
+  }
+
+  @Subscribe
+  public void readingProgress(final ReadingProgressEvent event) {
+    SwingUtilities.invokeLater(new Runnable() {
+      @Override
+      public void run() {
+        if (monitor != null) {
+          if (monitor.isCanceled()) {
+            core.abortReading();
+          } else {
+            monitor.setNote(MessageFormat.format(UI.BUNDLE.getString("reading.note"), event.getProcessed(),
+                event.getTotal()));
+            monitor.setProgress(event.getProcessed());
+          }
+        }
+      }
+    });
+  }
+
+  @Subscribe
+  public void readingDone(final ReadingDoneEvent event) {
+    SwingUtilities.invokeLater(new Runnable() {
+      @Override
+      public void run() {
+        if (monitor != null) {
+          monitor.close();
+          monitor = null;
+        }
+      }
+    });
+  }
+}
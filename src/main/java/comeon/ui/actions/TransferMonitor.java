@@ -1,17 +1,20 @@
 package comeon.ui.actions;
 
 import java.awt.Color;
+import java.awt.Component;
 import java.awt.Cursor;
 import java.awt.Dimension;
 import java.awt.GraphicsEnvironment;
 import java.awt.Rectangle;
 import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.io.File;
 import java.text.MessageFormat;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -20,29 +23,45 @@ import javax.swing.AbstractAction;
 import javax.swing.BorderFactory;
 import javax.swing.Box;
 import javax.swing.BoxLayout;
+import javax.swing.DefaultListCellRenderer;
 import javax.swing.JButton;
+import javax.swing.JComboBox;
 import javax.swing.JDialog;
 import javax.swing.JLabel;
+import javax.swing.JList;
 import javax.swing.JOptionPane;
 import javax.swing.JProgressBar;
 import javax.swing.JScrollPane;
+import javax.swing.JTextField;
 import javax.swing.KeyStroke;
 import javax.swing.SwingConstants;
 import javax.swing.SwingUtilities;
 import javax.swing.SwingWorker;
+import javax.swing.Timer;
 import javax.swing.UIManager;
 import javax.swing.WindowConstants;
 
+import org.apache.http.pool.PoolStats;
+
+import com.google.common.base.Joiner;
 import com.google.common.eventbus.Subscribe;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 
 import comeon.core.ProgressListenerAdapter;
+import comeon.core.UploadPolicies;
+import comeon.core.UploadScheduler;
+import comeon.core.events.PictureDuplicateEvent;
 import comeon.core.events.PictureTransferDoneEvent;
 import comeon.core.events.PictureTransferFailedEvent;
 import comeon.core.events.PictureTransferStartingEvent;
+import comeon.core.events.UploadConcurrencyEvent;
 import comeon.core.events.UploadDoneEvent;
+import comeon.core.events.UploadQueuedEvent;
 import comeon.core.events.UploadStartingEvent;
+import comeon.mediawiki.BandwidthLimiter;
+import comeon.mediawiki.BandwidthSchedule;
+import comeon.mediawiki.ConnectionPool;
 import comeon.model.Picture;
 import comeon.ui.UI;
 
@@ -50,10 +69,26 @@ import comeon.ui.UI;
 public final class TransferMonitor extends JOptionPane {
   private static final long serialVersionUID = 1L;
 
+  private static final long BITS_PER_BYTE = 8;
+
+  private static final double BITS_PER_MEGABIT = 1000 * 1000;
+
   private final JDialog dialog;
 
   private final JProgressBar batchBar;
 
+  private final JLabel concurrencyLabel;
+
+  private final JLabel connectionsLabel;
+
+  private final Timer connectionsTimer;
+
+  private final JLabel bandwidthLabel;
+
+  private final JTextField bandwidthField;
+
+  private final JComboBox<UploadPolicies> orderBox;
+
   private final Box pictureBarsBox;
 
   private final JScrollPane pictureBarsPane;
@@ -64,16 +99,73 @@ public final class TransferMonitor extends JOptionPane {
   
   private final AtomicInteger transferCounter;
   
+  private final UploadScheduler uploadScheduler;
+  
   @Inject
-  public TransferMonitor(final AbortAction abortAction, final UI ui) {
+  public TransferMonitor(final AbortAction abortAction, final UI ui, final UploadScheduler uploadScheduler,
+      final ConnectionPool connectionPool, final BandwidthLimiter bandwidthLimiter) {
     super(null, JOptionPane.INFORMATION_MESSAGE, JOptionPane.DEFAULT_OPTION, UploadPicturesAction.ICON, null);
     this.getInputMap(JOptionPane.WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke("pressed ESCAPE"), "none");
     this.batchBar = new JProgressBar(SwingConstants.HORIZONTAL);
     this.batchBar.setStringPainted(true);
+    this.concurrencyLabel = new JLabel();
+    this.uploadScheduler = uploadScheduler;
+    this.connectionsLabel = new JLabel();
+    this.connectionsTimer = new Timer(1000, new AbstractAction() {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      public void actionPerformed(final ActionEvent e) {
+        final PoolStats stats = connectionPool.getStats();
+        connectionsLabel.setText(MessageFormat.format(UI.BUNDLE.getString("upload.connections"), stats.getLeased(),
+            stats.getPending(), stats.getAvailable()));
+        final long rate = bandwidthLimiter.getRate();
+        bandwidthLabel.setText(MessageFormat.format(UI.BUNDLE.getString("upload.bandwidth"), rate,
+            rate * BITS_PER_BYTE / BITS_PER_MEGABIT));
+      }
+    });
+    this.connectionsTimer.setInitialDelay(0);
+    this.bandwidthLabel = new JLabel();
+    this.bandwidthField = new JTextField(bandwidthLimiter.getSchedule().toString());
+    this.bandwidthField.setToolTipText(UI.BUNDLE.getString("upload.bandwidth.tooltip"));
+    this.bandwidthField.addActionListener(new ActionListener() {
+      @Override
+      public void actionPerformed(final ActionEvent e) {
+        try {
+          final BandwidthSchedule schedule = BandwidthSchedule.parse(bandwidthField.getText());
+          bandwidthLimiter.setSchedule(schedule);
+          bandwidthField.setText(schedule.toString());
+          bandwidthField.setForeground(UIManager.getColor("TextField.foreground"));
+        } catch (final IllegalArgumentException ex) {
+          bandwidthField.setForeground(Color.RED);
+          UIManager.getLookAndFeel().provideErrorFeedback(bandwidthField);
+        }
+      }
+    });
+    this.orderBox = new JComboBox<>(UploadPolicies.values());
+    this.orderBox.setSelectedItem(uploadScheduler.getPolicy());
+    this.orderBox.setRenderer(new DefaultListCellRenderer() {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      public Component getListCellRendererComponent(final JList<?> list, final Object value, final int index,
+          final boolean isSelected, final boolean cellHasFocus) {
+        final JLabel label = (JLabel) super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+        label.setText(UI.BUNDLE.getString("upload.order." + ((UploadPolicies) value).name()));
+        return label;
+      }
+    });
+    this.orderBox.addActionListener(new ActionListener() {
+      @Override
+      public void actionPerformed(final ActionEvent e) {
+        uploadScheduler.setPolicy((UploadPolicies) orderBox.getSelectedItem());
+      }
+    });
     this.pictureBarsBox = Box.createVerticalBox();
     this.pictureBarsPane = new JScrollPane(pictureBarsBox, JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED,
         JScrollPane.HORIZONTAL_SCROLLBAR_NEVER);
-    this.setMessage(new Object[] { batchBar, pictureBarsPane });
+    this.setMessage(new Object[] { batchBar, concurrencyLabel, connectionsLabel, bandwidthLabel, bandwidthField,
+        UI.BUNDLE.getString("upload.order"), orderBox, pictureBarsPane });
     final Rectangle screenSize = GraphicsEnvironment.getLocalGraphicsEnvironment().getMaximumWindowBounds();
     this.dialog = this.createDialog(JOptionPane.getRootFrame(), UI.BUNDLE.getString("upload.title"));
     this.dialog.setResizable(true);
@@ -91,17 +183,9 @@ public final class TransferMonitor extends JOptionPane {
 
   @Subscribe
   public void uploadStarting(final UploadStartingEvent event) {
-    for (final Picture picture : event.getPictures()) {
-      final ProgressPanel panel = new ProgressPanel(picture.getFile().length(), picture.getFileName());
-      panels.put(picture.getFile(), panel);
-      SwingUtilities.invokeLater(new Runnable() {
-        @Override
-        public void run() {
-          pictureBarsBox.add(panel);
-        }
-      });
-    }
+    addPanels(event.getPictures());
     transferCounter.set(0);
+    showConcurrency(uploadScheduler.getLimit());
     SwingUtilities.invokeLater(new Runnable() {
       @Override
       public void run() {
@@ -109,11 +193,43 @@ public final class TransferMonitor extends JOptionPane {
         batchBar.setValue(transferCounter.get());
         dialog.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
         closeAction.setEnabled(false);
+        connectionsTimer.start();
         dialog.setVisible(true);
       }
     });
   }
 
+  @Subscribe
+  public void uploadQueued(final UploadQueuedEvent event) {
+    addPanels(event.getPictures());
+    SwingUtilities.invokeLater(new Runnable() {
+      @Override
+      public void run() {
+        batchBar.setMaximum(batchBar.getMaximum() + event.getPictures().size());
+      }
+    });
+  }
+
+  private void addPanels(final List<Picture> pictures) {
+    for (final Picture picture : pictures) {
+      final ProgressPanel panel = new ProgressPanel(picture.getFile().length(), picture.getFileName(),
+          new ActionListener() {
+            @Override
+            public void actionPerformed(final ActionEvent e) {
+              uploadScheduler.prioritize(picture);
+            }
+          });
+      panels.put(picture.getFile(), panel);
+      SwingUtilities.invokeLater(new Runnable() {
+        @Override
+        public void run() {
+          pictureBarsBox.add(panel);
+          pictureBarsBox.revalidate();
+        }
+      });
+    }
+  }
+
   @Subscribe
   public void transferStarting(final PictureTransferStartingEvent event) {
     final ProgressPanel panel = panels.get(event.getPicture().getFile());
@@ -132,6 +248,7 @@ public final class TransferMonitor extends JOptionPane {
     SwingUtilities.invokeLater(new Runnable() {
       @Override
       public void run() {
+        panel.getPinButton().setEnabled(false);
         pictureBarsPane.getViewport().scrollRectToVisible(panel.getBounds());        
       }
     });
@@ -149,10 +266,12 @@ public final class TransferMonitor extends JOptionPane {
 
   @Subscribe
   public void transferFailed(final PictureTransferFailedEvent event) {
-    final JProgressBar pictureProgressBar = panels.get(event.getPicture().getFile()).getPictureBar();
+    final ProgressPanel panel = panels.get(event.getPicture().getFile());
+    final JProgressBar pictureProgressBar = panel.getPictureBar();
     SwingUtilities.invokeLater(new Runnable() {
       @Override
       public void run() {
+        panel.getPinButton().setEnabled(false);
         pictureProgressBar.setValue(pictureProgressBar.getMaximum());
         pictureProgressBar.setString(UI.BUNDLE.getString("error.generic.title"));
         pictureProgressBar.setToolTipText(MessageFormat.format(UI.BUNDLE.getString("error.upload.failed"), event.getCause().getLocalizedMessage()));
@@ -160,6 +279,37 @@ public final class TransferMonitor extends JOptionPane {
     });
   }
   
+  @Subscribe
+  public void duplicateFound(final PictureDuplicateEvent event) {
+    final ProgressPanel panel = panels.get(event.getPicture().getFile());
+    final JProgressBar pictureProgressBar = panel.getPictureBar();
+    SwingUtilities.invokeLater(new Runnable() {
+      @Override
+      public void run() {
+        panel.getPinButton().setEnabled(false);
+        pictureProgressBar.setValue(pictureProgressBar.getMaximum());
+        pictureProgressBar.setString(UI.BUNDLE.getString("upload.duplicate"));
+        pictureProgressBar.setToolTipText(MessageFormat.format(UI.BUNDLE.getString("upload.duplicate.tooltip"),
+            Joiner.on(", ").join(event.getExistingFiles())));
+        batchBar.setValue(transferCounter.incrementAndGet());
+      }
+    });
+  }
+
+  @Subscribe
+  public void concurrencyChanged(final UploadConcurrencyEvent event) {
+    showConcurrency(event.getLimit());
+  }
+
+  private void showConcurrency(final int limit) {
+    SwingUtilities.invokeLater(new Runnable() {
+      @Override
+      public void run() {
+        concurrencyLabel.setText(MessageFormat.format(UI.BUNDLE.getString("upload.concurrency"), limit));
+      }
+    });
+  }
+  
   @Subscribe
   public void uploadDone(final UploadDoneEvent event) {
     SwingUtilities.invokeLater(new Runnable() {
@@ -167,6 +317,7 @@ public final class TransferMonitor extends JOptionPane {
       public void run() {
         TransferMonitor.this.dialog.setCursor(Cursor.getDefaultCursor());
         TransferMonitor.this.closeAction.setEnabled(true);
+        TransferMonitor.this.connectionsTimer.stop();
       }
     });
   }
@@ -202,11 +353,25 @@ public final class TransferMonitor extends JOptionPane {
 
     private final JProgressBar pictureBar;
 
-    public ProgressPanel(final long length, final String name) {
+    private final JButton pinButton;
+
+    /**
+     * @param pin
+     *          called when the user wants this picture to be uploaded next.
+     */
+    public ProgressPanel(final long length, final String name, final ActionListener pin) {
       super(BoxLayout.Y_AXIS);
       final JLabel label = new JLabel(name);
       label.setBorder(BorderFactory.createEmptyBorder(1, 1, 1, 1));
       label.setToolTipText(name);
+      this.pinButton = new JButton(UI.BUNDLE.getString("upload.pin"));
+      this.pinButton.setToolTipText(UI.BUNDLE.getString("upload.pin.tooltip"));
+      this.pinButton.addActionListener(pin);
+      final Box header = Box.createHorizontalBox();
+      header.add(label);
+      header.add(Box.createHorizontalGlue());
+      header.add(this.pinButton);
+      header.setAlignmentX(LEFT_ALIGNMENT);
       this.setBackground(Color.WHITE);
       this.setOpaque(true);
       this.pictureBar = new JProgressBar(SwingConstants.HORIZONTAL);
@@ -214,7 +379,8 @@ public final class TransferMonitor extends JOptionPane {
       this.pictureBar.setMaximum((int) length);
       this.pictureBar.setValue(0);
       this.pictureBar.setBorder(BorderFactory.createEmptyBorder(1, 1, 1, 1));
-      this.add(label);
+      this.pictureBar.setAlignmentX(LEFT_ALIGNMENT);
+      this.add(header);
       this.add(this.pictureBar);
       this.setBorder(BorderFactory.createEmptyBorder(4, 4, 4, 4));
     }
@@ -222,5 +388,9 @@ public final class TransferMonitor extends JOptionPane {
     public JProgressBar getPictureBar() {
       return pictureBar;
     }
+
+    public JButton getPinButton() {
+      return pinButton;
+    }
   }
 }
\ No newline at end of file
@@ -15,6 +15,8 @@ import com.google.common.io.Resources;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import comeon.core.Core;
+import comeon.core.events.PictureRemovedEvent;
+import comeon.core.events.PicturesAddedEvent;
 import comeon.ui.UI;
 import comeon.wikis.Wikis;
 
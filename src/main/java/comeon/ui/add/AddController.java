@@ -102,6 +102,14 @@ class AddController implements PropertyChangeListener {
   public void setTemplate(final Template template) {
     model.setTemplate(template);
   }
+
+  public Boolean getUploadImmediately() {
+    return model.getUploadImmediately();
+  }
+
+  public void setUploadImmediately(final Boolean uploadImmediately) {
+    model.setUploadImmediately(uploadImmediately);
+  }
   
   public char getSeparator() {
     return model.getSeparator();
@@ -23,6 +23,8 @@ public class AddModel {
 
   private Template template;
   
+  private Boolean uploadImmediately;
+  
   private Boolean useMetadata;
 
   private Path metadataFile;
@@ -38,7 +40,7 @@ public class AddModel {
   private final CSVSettings csvSettings;
 
   public enum Properties {
-    PICTURES_FILES, TEMPLATE, USE_METADATA, METADATA_FILE, PICTURE_EXPRESSION, METADATA_EXPRESSION, PICTURE_REGEXP, PICTURE_SUBSTITUTION,
+    PICTURES_FILES, TEMPLATE, UPLOAD_IMMEDIATELY, USE_METADATA, METADATA_FILE, PICTURE_EXPRESSION, METADATA_EXPRESSION, PICTURE_REGEXP, PICTURE_SUBSTITUTION,
     CSV_SEPARATOR, CSV_QUOTE, CSV_ESCAPE, CSV_SKIP_LINES, CSV_STRICT_QUOTES, CSV_IGNORE_LEADING_WHITESPACE, CSV_CHARSET
   }
 
@@ -46,6 +48,7 @@ public class AddModel {
     this.pcs = new PropertyChangeSupport(this);
     this.picturesFiles = new File[0];
     this.template = null;
+    this.uploadImmediately = Boolean.FALSE;
     this.useMetadata = Boolean.FALSE;
     this.metadataFile = null;
     this.pictureExpression = null;
@@ -91,6 +94,19 @@ public class AddModel {
     pcs.firePropertyChange(Properties.TEMPLATE.name(), oldTemplate, template);
   }
 
+  /**
+   * @return whether pictures are uploaded as soon as they are read, without a chance to review them.
+   */
+  public Boolean getUploadImmediately() {
+    return uploadImmediately;
+  }
+
+  public void setUploadImmediately(final Boolean uploadImmediately) {
+    final Boolean oldUploadImmediately = this.uploadImmediately;
+    this.uploadImmediately = uploadImmediately;
+    pcs.firePropertyChange(Properties.UPLOAD_IMMEDIATELY.name(), oldUploadImmediately, uploadImmediately);
+  }
+
   public Boolean getUseMetadata() {
     return useMetadata;
   }
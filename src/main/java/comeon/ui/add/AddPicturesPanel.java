@@ -60,6 +60,8 @@ class AddPicturesPanel extends JPanel {
 
   private final JCheckBox metatadataCheckbox;
   
+  private final JCheckBox uploadImmediatelyCheckbox;
+  
   private final JFileChooser metadataFileChooser;
   
   private final JLabel metadataFileLabel;
@@ -133,6 +135,16 @@ class AddPicturesPanel extends JPanel {
       }
     });
     
+    this.uploadImmediatelyCheckbox = new JCheckBox(UI.BUNDLE.getString("addpictures.upload.immediately"),
+        controller.getUploadImmediately());
+    this.uploadImmediatelyCheckbox.setToolTipText(UI.BUNDLE.getString("addpictures.upload.immediately.tooltip"));
+    this.uploadImmediatelyCheckbox.addChangeListener(new ChangeListener() {
+      @Override
+      public void stateChanged(final ChangeEvent e) {
+        controller.setUploadImmediately(uploadImmediatelyCheckbox.isSelected());
+      }
+    });
+    
     final UseExternalMetadataCheckboxHandler checkboxHandler = new UseExternalMetadataCheckboxHandler(controller);
     this.metatadataCheckbox = new JCheckBox(checkboxHandler);
     metatadataCheckbox.addItemListener(checkboxHandler);
@@ -227,6 +239,7 @@ class AddPicturesPanel extends JPanel {
             .addComponent(templatesLabel)
             .addComponent(templates)
         )
+        .addComponent(uploadImmediatelyCheckbox)
         .addComponent(metatadataCheckbox)
         .addGroup(
             layout.createParallelGroup(Alignment.BASELINE)
@@ -258,6 +271,7 @@ class AddPicturesPanel extends JPanel {
             layout.createParallelGroup(Alignment.LEADING)
             .addComponent(filesListLabel)
             .addComponent(filesListPanel)
+            .addComponent(uploadImmediatelyCheckbox)
             .addComponent(metatadataCheckbox)
             .addGroup(
                 layout.createSequentialGroup()
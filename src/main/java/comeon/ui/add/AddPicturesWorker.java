@@ -0,0 +1,58 @@
+package comeon.ui.add;
+
+import java.io.File;
+import java.text.MessageFormat;
+import java.util.concurrent.ExecutionException;
+
+import javax.swing.JOptionPane;
+import javax.swing.SwingWorker;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import comeon.core.Core;
+import comeon.ui.UI;
+
+/**
+ * Reads the pictures chosen in the add dialog, and uploads them as they are read if asked to. Failures are reported
+ * once the work is done.
+ */
+public final class AddPicturesWorker extends SwingWorker<Void, Void> {
+  private static final Logger LOGGER = LoggerFactory.getLogger(AddPicturesWorker.class);
+
+  private final Core core;
+
+  private final AddModel model;
+
+  private final File[] files;
+
+  public AddPicturesWorker(final Core core, final AddModel model) {
+    this.core = core;
+    this.model = model;
+    this.files = model.getPicturesFiles();
+  }
+
+  @Override
+  protected Void doInBackground() throws Exception {
+    if (model.getUploadImmediately()) {
+      core.pipelinePictures(files, model.getTemplate(), model.getExternalMetadataSource());
+    } else {
+      core.addPictures(files, model.getTemplate(), model.getExternalMetadataSource());
+    }
+    return null;
+  }
+
+  @Override
+  protected void done() {
+    try {
+      get();
+    } catch (final InterruptedException e) {
+      LOGGER.warn("Interrupted while adding pictures", e);
+    } catch (final ExecutionException e) {
+      LOGGER.error("Could not add pictures", e.getCause());
+      JOptionPane.showMessageDialog(JOptionPane.getRootFrame(),
+          MessageFormat.format(UI.BUNDLE.getString("error.addpictures.failed"), e.getCause().getLocalizedMessage()),
+          UI.BUNDLE.getString("error.generic.title"), JOptionPane.ERROR_MESSAGE);
+    }
+  }
+}
@@ -1,21 +1,20 @@
 package comeon.ui.pictures;
 
 import java.awt.Dimension;
-import java.awt.image.BufferedImage;
 
 enum ConstrainedAxis {
   VERTICAL {
     @Override
-    Dimension getPreviewPanelDimension(final BufferedImage image, final int desiredSize) {
-      return new Dimension((int) (image.getWidth() * ((double) desiredSize / (double) image.getHeight())), desiredSize);
+    Dimension getPreviewPanelDimension(final Dimension image, final int desiredSize) {
+      return new Dimension((int) (image.width * ((double) desiredSize / (double) image.height)), desiredSize);
     }
   },
   HORIZONTAL {
     @Override
-    Dimension getPreviewPanelDimension(final BufferedImage image, final int desiredSize) {
-      return new Dimension(desiredSize, (int) (image.getHeight() * ((double) desiredSize / (double) image.getWidth())));
+    Dimension getPreviewPanelDimension(final Dimension image, final int desiredSize) {
+      return new Dimension(desiredSize, (int) (image.height * ((double) desiredSize / (double) image.width)));
     }
   };
 
-  abstract Dimension getPreviewPanelDimension(BufferedImage image, int desiredSize);
+  abstract Dimension getPreviewPanelDimension(Dimension image, int desiredSize);
 }
\ No newline at end of file
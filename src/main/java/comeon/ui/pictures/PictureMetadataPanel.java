@@ -2,18 +2,29 @@ package comeon.ui.pictures;
 
 import java.awt.BorderLayout;
 import java.awt.Dimension;
+import java.awt.event.HierarchyEvent;
+import java.awt.event.HierarchyListener;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
 
 import javax.swing.Box;
 import javax.swing.BoxLayout;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.ScrollPaneConstants;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
 
 import org.apache.commons.beanutils.DynaBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import comeon.core.Core;
+import comeon.model.Picture;
 import comeon.ui.UI;
 import comeon.ui.pictures.metadata.ExternalMetadataTable;
 import comeon.ui.pictures.metadata.OtherMetadataTable;
@@ -22,8 +33,14 @@ import comeon.ui.pictures.metadata.PictureMetadataTable;
 final class PictureMetadataPanel extends JPanel {
   private static final long serialVersionUID = 1L;
 
+  private static final Logger LOGGER = LoggerFactory.getLogger(PictureMetadataPanel.class);
+
   public static final int PREVIEW_WIDTH = (int) (UI.METADATA_PANEL_WIDTH * 0.9);
 
+  private final Picture picture;
+
+  private final Box metadataBox;
+
   public PictureMetadataPanel(final PicturePanels panels) {
     super(new BorderLayout());
     this.setMinimumSize(new Dimension(UI.METADATA_PANEL_WIDTH, 0));
@@ -32,18 +49,52 @@ final class PictureMetadataPanel extends JPanel {
     this.setOpaque(true);
     final Dimension previewPanelDimension = new Dimension(UI.METADATA_PANEL_WIDTH, UI.METADATA_PANEL_WIDTH);
     final Dimension previewDimension;
-    if (panels.getImage().getWidth() >= panels.getImage().getHeight()) {
-      previewDimension = ConstrainedAxis.HORIZONTAL.getPreviewPanelDimension(panels.getImage(), PREVIEW_WIDTH);
+    if (panels.getImageSize().width >= panels.getImageSize().height) {
+      previewDimension = ConstrainedAxis.HORIZONTAL.getPreviewPanelDimension(panels.getImageSize(), PREVIEW_WIDTH);
     } else {
-      previewDimension = ConstrainedAxis.VERTICAL.getPreviewPanelDimension(panels.getImage(), PREVIEW_WIDTH);
+      previewDimension = ConstrainedAxis.VERTICAL.getPreviewPanelDimension(panels.getImageSize(), PREVIEW_WIDTH);
     }
     final PicturePreviewPanel previewPanel = new PicturePreviewPanel(panels, previewPanelDimension,
         (previewPanelDimension.width - previewDimension.width) / 2,
         (previewPanelDimension.height - previewDimension.height) / 2);
     this.add(previewPanel, BorderLayout.NORTH);
-    final Box metadataBox = new Box(BoxLayout.Y_AXIS);
+    this.metadataBox = new Box(BoxLayout.Y_AXIS);
+    this.picture = panels.getPicture();
+    fillMetadataBox();
+    picture.addPropertyChangeListener(new PropertyChangeListener() {
+      @Override
+      public void propertyChange(final PropertyChangeEvent evt) {
+        if ("metadata".equals(evt.getPropertyName())) {
+          SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+              metadataBox.removeAll();
+              fillMetadataBox();
+              metadataBox.revalidate();
+              metadataBox.repaint();
+            }
+          });
+        }
+      }
+    });
+    this.addHierarchyListener(new HierarchyListener() {
+      @Override
+      public void hierarchyChanged(final HierarchyEvent e) {
+        if ((e.getChangeFlags() & HierarchyEvent.SHOWING_CHANGED) != 0 && isShowing()
+            && !picture.isMetadataComplete()) {
+          loadMetadata();
+        }
+      }
+    });
+    
+    final JScrollPane metadataScrollPane = new JScrollPane(metadataBox,
+        ScrollPaneConstants.VERTICAL_SCROLLBAR_AS_NEEDED, ScrollPaneConstants.HORIZONTAL_SCROLLBAR_NEVER);
+    this.add(metadataScrollPane, BorderLayout.CENTER);
+  }
+
+  private void fillMetadataBox() {
     final Map<String, Object> otherMetadata = new HashMap<>();
-    for (final Map.Entry<String, Object> dir : panels.getPicture().getMetadata().entrySet()) {
+    for (final Map.Entry<String, Object> dir : picture.getMetadata().entrySet()) {
       if (dir.getValue() instanceof DynaBean) {
         final PictureMetadataTable table = new PictureMetadataTable(dir.getKey(), (DynaBean) dir.getValue());
         metadataBox.add(table, 0);
@@ -57,9 +108,27 @@ final class PictureMetadataPanel extends JPanel {
     if (!otherMetadata.isEmpty()) {
       metadataBox.add(new OtherMetadataTable(UI.BUNDLE.getString("picture.metadata.other"), otherMetadata));
     }
-    
-    final JScrollPane metadataScrollPane = new JScrollPane(metadataBox,
-        ScrollPaneConstants.VERTICAL_SCROLLBAR_AS_NEEDED, ScrollPaneConstants.HORIZONTAL_SCROLLBAR_NEVER);
-    this.add(metadataScrollPane, BorderLayout.CENTER);
+  }
+
+  /**
+   * Pictures may have been read with only the metadata their template uses, the rest is loaded when shown.
+   */
+  private void loadMetadata() {
+    new SwingWorker<Void, Void>() {
+      @Override
+      protected Void doInBackground() throws IOException {
+        picture.loadMetadata();
+        return null;
+      }
+
+      @Override
+      protected void done() {
+        try {
+          get();
+        } catch (final InterruptedException | ExecutionException e) {
+          LOGGER.warn("Can't load metadata of {}", picture.getFileName(), e);
+        }
+      }
+    }.execute();
   }
 }
\ No newline at end of file
@@ -1,25 +1,15 @@
 package comeon.ui.pictures;
 
+import java.awt.Dimension;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
-
-import javax.imageio.ImageIO;
-
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-import com.google.common.io.Resources;
 
 import comeon.model.Picture;
 import comeon.ui.UI;
 
 public final class PicturePanels {
-  private static final Logger LOGGER = LoggerFactory.getLogger(PicturePanels.class);
-
   private final Picture picture;
 
-  private BufferedImage image;
+  private final Dimension imageSize;
 
   private final PicturePreviewPanel previewPanel;
 
@@ -27,22 +17,9 @@ public final class PicturePanels {
 
   public PicturePanels(final Picture picture) {
     this.picture = picture;
-    final ByteArrayInputStream input = new ByteArrayInputStream(picture.getThumbnail());
-    try {
-      try {
-        final BufferedImage pictureThumbnail = ImageIO.read(input);
-        if (pictureThumbnail == null) {
-          this.image = ImageIO.read(Resources.getResource("comeon/ui/default_thumbnail.png"));
-        } else {
-          this.image = pictureThumbnail;
-        }
-      } finally {
-        input.close();
-      }
-    } catch (final IOException e) {
-      LOGGER.warn("Can't load picture thumbnail {}", picture.getFileName(), e);
-    }
-    this.previewPanel = new PicturePreviewPanel(this, ConstrainedAxis.VERTICAL.getPreviewPanelDimension(image,
+    final BufferedImage image = getImage();
+    this.imageSize = new Dimension(image.getWidth(), image.getHeight());
+    this.previewPanel = new PicturePreviewPanel(this, ConstrainedAxis.VERTICAL.getPreviewPanelDimension(imageSize,
         UI.PREVIEW_PANEL_HEIGHT), 2, 4);
     this.editPanel = new PictureEditPanel(this);
   }
@@ -51,8 +28,15 @@ public final class PicturePanels {
     return picture;
   }
 
+  /**
+   * @return the decoded thumbnail, which isn't retained and may be decoded again on next call.
+   */
   BufferedImage getImage() {
-    return image;
+    return ThumbnailImages.get(picture);
+  }
+
+  Dimension getImageSize() {
+    return imageSize;
   }
 
   public PicturePreviewPanel getPreviewPanel() {
@@ -5,6 +5,7 @@ import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.util.EnumMap;
@@ -12,6 +13,7 @@ import java.util.Map;
 
 import javax.swing.BorderFactory;
 import javax.swing.JComponent;
+import javax.swing.SwingUtilities;
 import javax.swing.border.Border;
 
 import comeon.model.Picture;
@@ -47,6 +49,8 @@ final class PicturePreviewPanel extends JComponent implements PropertyChangeList
     borders.put(State.ToBeUploaded, BorderFactory.createCompoundBorder(outerBorder, BorderFactory.createLineBorder(Color.WHITE, INNER_BORDER_WIDTH)));
     borders.put(State.UploadedSuccessfully, BorderFactory.createCompoundBorder(outerBorder, BorderFactory.createLineBorder(Color.GREEN, INNER_BORDER_WIDTH)));
     borders.put(State.FailedUpload, BorderFactory.createCompoundBorder(outerBorder, BorderFactory.createLineBorder(Color.RED, INNER_BORDER_WIDTH)));
+    borders.put(State.FailedVerification, BorderFactory.createCompoundBorder(outerBorder, BorderFactory.createLineBorder(Color.ORANGE, INNER_BORDER_WIDTH)));
+    borders.put(State.Duplicate, BorderFactory.createCompoundBorder(outerBorder, BorderFactory.createLineBorder(Color.BLUE, INNER_BORDER_WIDTH)));
     this.setBorder(borders.get(picturePanels.getPicture().getState()));
     picturePanels.getPicture().addPropertyChangeListener(this);
   }
@@ -60,18 +64,35 @@ final class PicturePreviewPanel extends JComponent implements PropertyChangeList
     g2.setRenderingHint(RenderingHints.KEY_COLOR_RENDERING, RenderingHints.VALUE_COLOR_RENDER_QUALITY);
     g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
     g2.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
-    g2.drawImage(this.picturePanels.getImage(), horizontalBordersWidth + INNER_BORDER_WIDTH, verticalBordersWidth
-        + INNER_BORDER_WIDTH, componentWidth - (horizontalBordersWidth + INNER_BORDER_WIDTH), componentHeight
-        - (verticalBordersWidth + INNER_BORDER_WIDTH), 0, 0, this.picturePanels.getImage().getWidth(), this.picturePanels
-        .getImage().getHeight(), getBackground(), null);
+    final BufferedImage image = this.picturePanels.getImage();
+    final int areaWidth = componentWidth - 2 * (horizontalBordersWidth + INNER_BORDER_WIDTH);
+    final int areaHeight = componentHeight - 2 * (verticalBordersWidth + INNER_BORDER_WIDTH);
+    // Generated thumbnails may not have the proportions this panel was sized for
+    final double ratio = Math.min((double) areaWidth / image.getWidth(), (double) areaHeight / image.getHeight());
+    final int width = (int) (image.getWidth() * ratio);
+    final int height = (int) (image.getHeight() * ratio);
+    final int x = horizontalBordersWidth + INNER_BORDER_WIDTH + (areaWidth - width) / 2;
+    final int y = verticalBordersWidth + INNER_BORDER_WIDTH + (areaHeight - height) / 2;
+    g2.drawImage(image, x, y, x + width, y + height, 0, 0, image.getWidth(), image.getHeight(), getBackground(), null);
   }
 
   @Override
   public void propertyChange(final PropertyChangeEvent evt) {
-    if (evt.getSource() instanceof Picture && "state".equals(evt.getPropertyName())) {
+    // Uploads, thumbnails and the journal change pictures from threads of their own.
+    if (!SwingUtilities.isEventDispatchThread()) {
+      SwingUtilities.invokeLater(new Runnable() {
+        @Override
+        public void run() {
+          propertyChange(evt);
+        }
+      });
+    } else if (evt.getSource() instanceof Picture && "state".equals(evt.getPropertyName())) {
       final State newState = (State) evt.getNewValue();
       this.setBorder(borders.get(newState));
       this.repaint();
+    } else if (evt.getSource() instanceof Picture && "thumbnail".equals(evt.getPropertyName())) {
+      ThumbnailImages.invalidate((Picture) evt.getSource());
+      this.repaint();
     }
     
   }
@@ -0,0 +1,77 @@
+package comeon.ui.pictures;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.cache.Weigher;
+import com.google.common.io.Resources;
+
+import comeon.model.Picture;
+
+/**
+ * Decoded thumbnails of the most recently displayed pictures, bounded by their size in memory.
+ */
+final class ThumbnailImages {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ThumbnailImages.class);
+
+  private static final long MAX_BYTES = 64 * 1024 * 1024;
+
+  private static final int BYTES_PER_PIXEL = 4;
+
+  private static final BufferedImage DEFAULT_THUMBNAIL = readDefaultThumbnail();
+
+  private static final LoadingCache<Picture, BufferedImage> IMAGES = CacheBuilder.newBuilder().weakKeys()
+      .maximumWeight(MAX_BYTES).weigher(new Weigher<Picture, BufferedImage>() {
+        @Override
+        public int weigh(final Picture picture, final BufferedImage image) {
+          return image == DEFAULT_THUMBNAIL ? 0 : image.getWidth() * image.getHeight() * BYTES_PER_PIXEL;
+        }
+      }).build(new CacheLoader<Picture, BufferedImage>() {
+        @Override
+        public BufferedImage load(final Picture picture) {
+          return decode(picture);
+        }
+      });
+
+  private ThumbnailImages() {
+    super();
+  }
+
+  static BufferedImage get(final Picture picture) {
+    return IMAGES.getUnchecked(picture);
+  }
+
+  static void invalidate(final Picture picture) {
+    IMAGES.invalidate(picture);
+  }
+
+  private static BufferedImage decode(final Picture picture) {
+    BufferedImage image = null;
+    final byte[] thumbnail = picture.getThumbnail();
+    if (thumbnail.length > 0) {
+      try {
+        image = ImageIO.read(new ByteArrayInputStream(thumbnail));
+      } catch (final IOException e) {
+        LOGGER.warn("Can't load picture thumbnail {}", picture.getFileName(), e);
+      }
+    }
+    return image == null ? DEFAULT_THUMBNAIL : image;
+  }
+
+  private static BufferedImage readDefaultThumbnail() {
+    try {
+      return ImageIO.read(Resources.getResource("comeon/ui/default_thumbnail.png"));
+    } catch (final IOException e) {
+      throw new IllegalStateException("Can't load default thumbnail", e);
+    }
+  }
+}
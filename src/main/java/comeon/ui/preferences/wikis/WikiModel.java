@@ -23,13 +23,19 @@ public final class WikiModel implements Model {
   
   private Boolean active;
 
+  private Integer maxConnections;
+
+  private Integer maxConnectionsPerRoute;
+
   public enum Properties {
-    NAME, URL, LOGIN, PASSWORD, DISPLAY_NAME, ACTIVE
+    NAME, URL, LOGIN, PASSWORD, DISPLAY_NAME, ACTIVE, MAX_CONNECTIONS, MAX_CONNECTIONS_PER_ROUTE
   }
 
   public WikiModel() {
     this.pcs = new PropertyChangeSupport(this);
     this.active = Boolean.FALSE;
+    this.maxConnections = Wiki.DEFAULT_MAX_CONNECTIONS;
+    this.maxConnectionsPerRoute = Wiki.DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
   }
   
   public WikiModel(final Wiki wiki, final Boolean active) {
@@ -40,6 +46,8 @@ public final class WikiModel implements Model {
     this.password = wiki.getUser().getPassword();
     this.displayName = wiki.getUser().getDisplayName();
     this.active = active;
+    this.maxConnections = wiki.getMaxConnections();
+    this.maxConnectionsPerRoute = wiki.getMaxConnectionsPerRoute();
   }
 
   @Override
@@ -112,8 +120,29 @@ public final class WikiModel implements Model {
     pcs.firePropertyChange(Properties.ACTIVE.name(), oldActive, active);
   }
   
+  public Integer getMaxConnections() {
+    return maxConnections;
+  }
+
+  public void setMaxConnections(final Integer maxConnections) {
+    final Integer oldMaxConnections = this.maxConnections;
+    this.maxConnections = maxConnections;
+    pcs.firePropertyChange(Properties.MAX_CONNECTIONS.name(), oldMaxConnections, maxConnections);
+  }
+
+  public Integer getMaxConnectionsPerRoute() {
+    return maxConnectionsPerRoute;
+  }
+
+  public void setMaxConnectionsPerRoute(final Integer maxConnectionsPerRoute) {
+    final Integer oldMaxConnectionsPerRoute = this.maxConnectionsPerRoute;
+    this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+    pcs.firePropertyChange(Properties.MAX_CONNECTIONS_PER_ROUTE.name(), oldMaxConnectionsPerRoute,
+        maxConnectionsPerRoute);
+  }
+  
   public Wiki asWiki() {
-    return new Wiki(name, url, new User(login, password, displayName));
+    return new Wiki(name, url, new User(login, password, displayName), maxConnections, maxConnectionsPerRoute);
   }
   
   public static WikiModel getPrototype() {
@@ -2,6 +2,7 @@ package comeon.ui.preferences.wikis;
 
 import java.beans.PropertyChangeEvent;
 
+import com.google.common.primitives.Ints;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 
@@ -48,6 +49,24 @@ public final class WikiSubController extends SubController<WikiModel, WikiSubPan
         getModel().setPassword(text);
       }
     });
+    view.getMaxConnectionsField().getDocument().addDocumentListener(new AbstractDocumentListener() {
+      @Override
+      protected void doUpdate(final String text) {
+        final Integer value = Ints.tryParse(text.trim());
+        if (value != null) {
+          getModel().setMaxConnections(value);
+        }
+      }
+    });
+    view.getMaxConnectionsPerRouteField().getDocument().addDocumentListener(new AbstractDocumentListener() {
+      @Override
+      protected void doUpdate(final String text) {
+        final Integer value = Ints.tryParse(text.trim());
+        if (value != null) {
+          getModel().setMaxConnectionsPerRoute(value);
+        }
+      }
+    });
   }
   
   @Override
@@ -62,6 +81,8 @@ public final class WikiSubController extends SubController<WikiModel, WikiSubPan
     target.setDisplayName(source.getDisplayName());
     target.setLogin(source.getLogin());
     target.setPassword(source.getPassword());
+    target.setMaxConnections(source.getMaxConnections());
+    target.setMaxConnectionsPerRoute(source.getMaxConnectionsPerRoute());
     getMainController().update(target, index);
   }
 
@@ -72,6 +93,8 @@ public final class WikiSubController extends SubController<WikiModel, WikiSubPan
     getView().getDisplayNameField().setText(newModel.getDisplayName());
     getView().getLoginField().setText(newModel.getLogin());
     getView().getPasswordField().setText(newModel.getPassword());
+    getView().getMaxConnectionsField().setText(String.valueOf(newModel.getMaxConnections()));
+    getView().getMaxConnectionsPerRouteField().setText(String.valueOf(newModel.getMaxConnectionsPerRoute()));
   }
 
   @Override
@@ -28,6 +28,10 @@ public final class WikiSubPanel extends SubPanel<WikiModel> {
   
   private final JPasswordField passwordField;
   
+  private final JTextField maxConnectionsField;
+  
+  private final JTextField maxConnectionsPerRouteField;
+  
   @Inject
   public WikiSubPanel(final WikiSubController subController) {
     this.nameField = new JTextField(COLUMNS);
@@ -41,6 +45,10 @@ public final class WikiSubPanel extends SubPanel<WikiModel> {
     this.loginField.setName(UI.BUNDLE.getString("prefs.wikis.login"));
     this.passwordField = new JPasswordField(COLUMNS);
     this.passwordField.setName(UI.BUNDLE.getString("prefs.wikis.password"));
+    this.maxConnectionsField = new JTextField(COLUMNS);
+    this.maxConnectionsField.setName(UI.BUNDLE.getString("prefs.wikis.maxConnections"));
+    this.maxConnectionsPerRouteField = new JTextField(COLUMNS);
+    this.maxConnectionsPerRouteField.setName(UI.BUNDLE.getString("prefs.wikis.maxConnectionsPerRoute"));
     this.layoutComponents();
     subController.setView(this);
   }
@@ -65,6 +73,14 @@ public final class WikiSubPanel extends SubPanel<WikiModel> {
     return passwordField;
   }
 
+  JTextField getMaxConnectionsField() {
+    return maxConnectionsField;
+  }
+
+  JTextField getMaxConnectionsPerRouteField() {
+    return maxConnectionsPerRouteField;
+  }
+
   @Override
   protected void doLayoutComponents(final GroupLayout layout) {
     final JLabel[] labels = new JLabel[] {
@@ -72,7 +88,9 @@ public final class WikiSubPanel extends SubPanel<WikiModel> {
         new AssociatedLabel("prefs.wikis.url", urlField),
         new AssociatedLabel("prefs.wikis.displayName", displayNameField),
         new AssociatedLabel("prefs.wikis.login", loginField),
-        new AssociatedLabel("prefs.wikis.password", passwordField)
+        new AssociatedLabel("prefs.wikis.password", passwordField),
+        new AssociatedLabel("prefs.wikis.maxConnections", maxConnectionsField),
+        new AssociatedLabel("prefs.wikis.maxConnectionsPerRoute", maxConnectionsPerRouteField)
     };
     layout.setVerticalGroup(
         layout.createSequentialGroup()
@@ -81,11 +99,13 @@ public final class WikiSubPanel extends SubPanel<WikiModel> {
         .addGroup(layout.createParallelGroup().addComponent(labels[2]).addComponent(displayNameField))
         .addGroup(layout.createParallelGroup().addComponent(labels[3]).addComponent(loginField))
         .addGroup(layout.createParallelGroup().addComponent(labels[4]).addComponent(passwordField))
+        .addGroup(layout.createParallelGroup().addComponent(labels[5]).addComponent(maxConnectionsField))
+        .addGroup(layout.createParallelGroup().addComponent(labels[6]).addComponent(maxConnectionsPerRouteField))
     );
     layout.setHorizontalGroup(
         layout.createSequentialGroup()
-        .addGroup(layout.createParallelGroup().addComponent(labels[0]).addComponent(labels[1]).addComponent(labels[2]).addComponent(labels[3]).addComponent(labels[4]))
-        .addGroup(layout.createParallelGroup().addComponent(nameField).addComponent(urlField).addComponent(displayNameField).addComponent(loginField).addComponent(passwordField))
+        .addGroup(layout.createParallelGroup().addComponent(labels[0]).addComponent(labels[1]).addComponent(labels[2]).addComponent(labels[3]).addComponent(labels[4]).addComponent(labels[5]).addComponent(labels[6]))
+        .addGroup(layout.createParallelGroup().addComponent(nameField).addComponent(urlField).addComponent(displayNameField).addComponent(loginField).addComponent(passwordField).addComponent(maxConnectionsField).addComponent(maxConnectionsPerRouteField))
     );
   }
   
@@ -96,5 +116,9 @@ public final class WikiSubPanel extends SubPanel<WikiModel> {
     validationGroup.add(displayNameField, StringValidators.REQUIRE_NON_EMPTY_STRING);
     validationGroup.add(loginField, StringValidators.REQUIRE_NON_EMPTY_STRING);
     validationGroup.add(passwordField, StringValidators.REQUIRE_NON_EMPTY_STRING);    
+    validationGroup.add(maxConnectionsField, StringValidators.REQUIRE_VALID_INTEGER,
+        StringValidators.REQUIRE_NON_NEGATIVE_NUMBER);
+    validationGroup.add(maxConnectionsPerRouteField, StringValidators.REQUIRE_VALID_INTEGER,
+        StringValidators.REQUIRE_NON_NEGATIVE_NUMBER);
   }
 }
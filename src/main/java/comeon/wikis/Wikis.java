@@ -12,4 +12,8 @@ public interface Wikis extends WithPreferences {
   void save() throws BackingStoreException;
   Wiki getActiveWiki();
   void setActiveWiki(Wiki wiki);
+  /**
+   * Makes this wiki the active one until the application exits, leaving the active wiki of the preferences as it is.
+   */
+  void useWiki(Wiki wiki);
 }
@@ -66,6 +66,8 @@ public final class WikisImpl implements Wikis, WithPreferences {
     for (final Wiki wiki : wikis) {
       final Preferences node = preferences.node(wiki.getName());
       node.put(WikiPreferencesKeys.URL.name(), wiki.getUrl());
+      node.putInt(WikiPreferencesKeys.MAX_CONNECTIONS.name(), wiki.getMaxConnections());
+      node.putInt(WikiPreferencesKeys.MAX_CONNECTIONS_PER_ROUTE.name(), wiki.getMaxConnectionsPerRoute());
       final Preferences userNode = node.node("user");
       userNode.put(UserPreferencesKeys.LOGIN.name(), wiki.getUser().getLogin());
       userNode.put(UserPreferencesKeys.PASSWORD.name(), wiki.getUser().getPassword());
@@ -80,16 +82,24 @@ public final class WikisImpl implements Wikis, WithPreferences {
   
   @Override
   public void setActiveWiki(final Wiki wiki) {
+    preferences.put(WikiPreferencesKeys.ACTIVE.name(), wiki.getName());
+    useWiki(wiki);
+  }
+
+  @Override
+  public void useWiki(final Wiki wiki) {
     final ActiveWikiChangeEvent event = new ActiveWikiChangeEvent(this.activeWiki, wiki);
     this.activeWiki = wiki;
-    preferences.put(WikiPreferencesKeys.ACTIVE.name(), wiki.getName());
     bus.post(event);
   }
   
   private Wiki readWiki(final String name) throws BackingStoreException {
     final Preferences node = preferences.node(name);
     final String url = node.get(WikiPreferencesKeys.URL.name(), null);
-    final Wiki wiki = new Wiki(name, url, this.readUser(node));
+    final int maxConnections = node.getInt(WikiPreferencesKeys.MAX_CONNECTIONS.name(), Wiki.DEFAULT_MAX_CONNECTIONS);
+    final int maxConnectionsPerRoute = node.getInt(WikiPreferencesKeys.MAX_CONNECTIONS_PER_ROUTE.name(),
+        Wiki.DEFAULT_MAX_CONNECTIONS_PER_ROUTE);
+    final Wiki wiki = new Wiki(name, url, this.readUser(node), maxConnections, maxConnectionsPerRoute);
     wikis.add(wiki);
     return wiki;
   }
@@ -103,7 +113,7 @@ public final class WikisImpl implements Wikis, WithPreferences {
   }
   
   private enum WikiPreferencesKeys {
-    URL, ACTIVE
+    URL, ACTIVE, MAX_CONNECTIONS, MAX_CONNECTIONS_PER_ROUTE
   }
 
   private enum UserPreferencesKeys {
@@ -0,0 +1,48 @@
+package comeon;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+
+import comeon.core.events.PictureTransferDoneEvent;
+import comeon.core.events.PictureTransferFailedEvent;
+import comeon.core.events.PicturesAddedEvent;
+import comeon.model.Picture;
+import comeon.model.TestPictures;
+
+public class ProgressPrinterTest {
+  private static Picture newPicture(final String name) {
+    return TestPictures.newPicture(new File(name));
+  }
+
+  @Test
+  public void testPrintsOneLinePerStep() throws Exception {
+    final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    final ProgressPrinter printer = new ProgressPrinter(new PrintStream(buffer, true, Charsets.UTF_8.name()), 3);
+    final Picture uploaded = newPicture("a.jpg");
+    final Picture failed = newPicture("b.jpg");
+    printer.picturesAdded(new PicturesAddedEvent(Arrays.asList(uploaded, failed)));
+    printer.transferDone(new PictureTransferDoneEvent(uploaded));
+    printer.transferFailed(new PictureTransferFailedEvent(failed, new IOException("Broken\tpipe\n")));
+    Assert.assertEquals(BatchMode.STATUS_FAILURES, printer.printSummary());
+    Assert.assertEquals("read\ta.jpg\nread\tb.jpg\nuploaded\ta.jpg\nfailed\tb.jpg\tBroken pipe \n"
+        + "done\t1\t0\t0\t1\t1\n", buffer.toString(Charsets.UTF_8.name()).replace(System.lineSeparator(), "\n"));
+  }
+
+  @Test
+  public void testSucceedsWhenEveryPictureIsUploaded() throws Exception {
+    final ProgressPrinter printer = new ProgressPrinter(new PrintStream(new ByteArrayOutputStream()), 1);
+    final Picture picture = newPicture("a.jpg");
+    printer.picturesAdded(new PicturesAddedEvent(Collections.singletonList(picture)));
+    printer.transferDone(new PictureTransferDoneEvent(picture));
+    Assert.assertEquals(BatchMode.STATUS_SUCCESS, printer.printSummary());
+  }
+}
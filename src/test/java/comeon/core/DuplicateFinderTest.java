@@ -0,0 +1,57 @@
+package comeon.core;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+
+import comeon.mediawiki.MediaWiki;
+import comeon.model.Picture;
+import comeon.model.TestPictures;
+
+public class DuplicateFinderTest {
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private static String sha1(final String content) {
+    return Hashing.sha1().hashString(content, Charsets.UTF_8).toString();
+  }
+
+  @Test
+  public void testReportsEachPictureWithItsHash() throws Exception {
+    final Picture known = TestPictures.newPicture(temp, "known.jpg", "known");
+    final Picture unknown = TestPictures.newPicture(temp, "unknown.jpg", "unknown");
+    final Picture unreachable = TestPictures.newPicture(temp, "unreachable.jpg", "unreachable");
+    final MediaWiki mediaWiki = Mockito.mock(MediaWiki.class);
+    Mockito.when(mediaWiki.findDuplicates(Mockito.anyString())).thenReturn(Collections.<String> emptyList());
+    Mockito.when(mediaWiki.findDuplicates(sha1("known"))).thenReturn(Arrays.asList("Known.jpg"));
+    Mockito.when(mediaWiki.findDuplicates(sha1("unreachable"))).thenThrow(new IOException("unreachable"));
+
+    final Map<Picture, String> hashes = new ConcurrentHashMap<>();
+    final Map<Picture, List<String>> duplicates = new ConcurrentHashMap<>();
+    new DuplicateFinder().find(mediaWiki, Arrays.asList(known, unknown, unreachable), new DuplicateFinder.Listener() {
+      @Override
+      public void lookedUp(final Picture picture, final String sha1, final List<String> existingFiles) {
+        hashes.put(picture, sha1);
+        duplicates.put(picture, existingFiles);
+      }
+    });
+    Assert.assertEquals(sha1("known"), hashes.get(known));
+    Assert.assertEquals(sha1("unknown"), hashes.get(unknown));
+    Assert.assertEquals(sha1("unreachable"), hashes.get(unreachable));
+    Assert.assertEquals(Arrays.asList("Known.jpg"), duplicates.get(known));
+    Assert.assertTrue(duplicates.get(unknown).isEmpty());
+    Assert.assertTrue(duplicates.get(unreachable).isEmpty());
+  }
+}
@@ -0,0 +1,130 @@
+package comeon.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.drew.lang.GeoLocation;
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+public class FileMetadataCacheTest {
+  private static final long NO_COMPACTION = Long.MAX_VALUE;
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private Path cacheFile;
+
+  private File picture;
+
+  @Before
+  public void createPicture() throws IOException {
+    this.cacheFile = temp.getRoot().toPath().resolve("metadata.cache");
+    this.picture = temp.newFile("picture.jpg");
+    Files.write("picture", picture, Charsets.UTF_8);
+  }
+
+  private static ExtractedMetadata newMetadata(final String make) {
+    final Map<String, Object> processed = new LinkedHashMap<>();
+    processed.put("keywords", new String[] { "bridge", "river" });
+    processed.put("caption", "A bridge");
+    processed.put("location", new GeoLocation(48.8566, 2.3522));
+    processed.put("credit", null);
+    return new ExtractedMetadata(Collections.singletonList(new ExtractedMetadata.DirectoryValues("exif", "Exif IFD0",
+        new String[] { "Make", "Model" }, new String[] { make, null })), processed, new byte[] { 1, 2, 3 });
+  }
+
+  private void put(final ExtractedMetadata metadata, final long compactionThreshold) throws Exception {
+    final FileMetadataCache cache = new FileMetadataCache(cacheFile, compactionThreshold);
+    cache.put(picture, metadata);
+    cache.close();
+  }
+
+  private ExtractedMetadata reopenAndGet(final long compactionThreshold) throws Exception {
+    final FileMetadataCache cache = new FileMetadataCache(cacheFile, compactionThreshold);
+    try {
+      return cache.get(picture);
+    } finally {
+      cache.close();
+    }
+  }
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    put(newMetadata("Canon"), NO_COMPACTION);
+
+    final ExtractedMetadata cached = reopenAndGet(NO_COMPACTION);
+    Assert.assertNotNull(cached);
+    final ExtractedMetadata.DirectoryValues directory = cached.getDirectories().get(0);
+    Assert.assertEquals("exif", directory.getKey());
+    Assert.assertEquals("Exif IFD0", directory.getName());
+    Assert.assertArrayEquals(new String[] { "Make", "Model" }, directory.getTagNames());
+    Assert.assertArrayEquals(new String[] { "Canon", null }, directory.getValues());
+    Assert.assertArrayEquals(new String[] { "bridge", "river" }, (String[]) cached.getProcessed().get("keywords"));
+    Assert.assertEquals("A bridge", cached.getProcessed().get("caption"));
+    final GeoLocation location = (GeoLocation) cached.getProcessed().get("location");
+    Assert.assertEquals(48.8566, location.getLatitude(), 0);
+    Assert.assertEquals(2.3522, location.getLongitude(), 0);
+    Assert.assertTrue(cached.getProcessed().containsKey("credit"));
+    Assert.assertNull(cached.getProcessed().get("credit"));
+    Assert.assertArrayEquals(new byte[] { 1, 2, 3 }, cached.getThumbnail());
+  }
+
+  @Test
+  public void testForgetsChangedFile() throws Exception {
+    put(newMetadata("Canon"), NO_COMPACTION);
+    Files.append(" edited", picture, Charsets.UTF_8);
+    Assert.assertNull(reopenAndGet(NO_COMPACTION));
+  }
+
+  @Test
+  public void testDropsTruncatedTail() throws Exception {
+    put(newMetadata("Canon"), NO_COMPACTION);
+    final long intact = java.nio.file.Files.size(cacheFile);
+    java.nio.file.Files.write(cacheFile, new byte[] { 0, 0, 1, 0, 0, 4, 'p' }, StandardOpenOption.APPEND);
+
+    Assert.assertEquals("Canon", reopenAndGet(NO_COMPACTION).getDirectories().get(0).getValues()[0]);
+    Assert.assertEquals(intact, java.nio.file.Files.size(cacheFile));
+    put(newMetadata("Nikon"), NO_COMPACTION);
+    Assert.assertEquals("Nikon", reopenAndGet(NO_COMPACTION).getDirectories().get(0).getValues()[0]);
+  }
+
+  @Test
+  public void testIgnoresTornPayload() throws Exception {
+    put(newMetadata("Canon"), NO_COMPACTION);
+    try (final FileChannel channel = FileChannel.open(cacheFile, StandardOpenOption.WRITE)) {
+      // The thumbnail is the last field of the payload.
+      channel.write(ByteBuffer.wrap(new byte[] { 0 }), channel.size() - 1);
+    }
+
+    Assert.assertNull(reopenAndGet(NO_COMPACTION));
+    put(newMetadata("Nikon"), NO_COMPACTION);
+    Assert.assertEquals("Nikon", reopenAndGet(NO_COMPACTION).getDirectories().get(0).getValues()[0]);
+  }
+
+  @Test
+  public void testCompactsSupersededRecordsWhenOpened() throws Exception {
+    for (final String make : Arrays.asList("Canon", "Nikon", "Pentax", "Sony")) {
+      put(newMetadata(make), NO_COMPACTION);
+    }
+    final long uncompacted = java.nio.file.Files.size(cacheFile);
+
+    Assert.assertEquals("Sony", reopenAndGet(0).getDirectories().get(0).getValues()[0]);
+    Assert.assertTrue(java.nio.file.Files.size(cacheFile) * 3 < uncompacted);
+    Assert.assertEquals("Sony", reopenAndGet(NO_COMPACTION).getDirectories().get(0).getValues()[0]);
+  }
+}
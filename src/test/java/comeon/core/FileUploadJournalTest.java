@@ -0,0 +1,134 @@
+package comeon.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+import comeon.core.UploadJournal.Outcome;
+import comeon.model.Picture;
+import comeon.model.Picture.State;
+import comeon.model.TestPictures;
+
+public class FileUploadJournalTest {
+  private static final String WIKI = "https://commons.wikimedia.org/w/api.php";
+
+  /**
+   * SHA-1 of "picture".
+   */
+  private static final String SHA1 = Hashing.sha1().hashString("picture", Charsets.UTF_8).toString();
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private Path journalFile;
+
+  private Picture picture;
+
+  private final List<FileUploadJournal> journals = new ArrayList<>();
+
+  @Before
+  public void createPicture() throws IOException {
+    this.journalFile = temp.getRoot().toPath().resolve("uploads.journal");
+    this.picture = TestPictures.newPicture(temp, "picture.jpg", "picture");
+  }
+
+  @After
+  public void closeJournals() {
+    for (final FileUploadJournal journal : journals) {
+      journal.close();
+    }
+  }
+
+  private FileUploadJournal openJournal() {
+    final FileUploadJournal journal = new FileUploadJournal(journalFile);
+    journals.add(journal);
+    return journal;
+  }
+
+  @Test
+  public void testReplaysLatestOutcome() {
+    final FileUploadJournal journal = openJournal();
+    journal.record(WIKI, picture, Outcome.Started, null);
+    journal.record(WIKI, picture, Outcome.Uploaded, SHA1);
+
+    final FileUploadJournal replayed = openJournal();
+    Assert.assertEquals(State.UploadedSuccessfully, replayed.replay(WIKI, picture));
+    Assert.assertNull(replayed.replay("https://test.wikipedia.org/w/api.php", picture));
+  }
+
+  @Test
+  public void testInterruptedUploadIsNotComplete() {
+    openJournal().record(WIKI, picture, Outcome.Started, null);
+    Assert.assertEquals(State.FailedUpload, openJournal().replay(WIKI, picture));
+  }
+
+  @Test
+  public void testDropsTornRecord() throws IOException {
+    openJournal().record(WIKI, picture, Outcome.Uploaded, SHA1);
+    java.nio.file.Files.write(journalFile, new byte[] { 0, 0, 0, 42, 1, 2 }, StandardOpenOption.APPEND);
+
+    final FileUploadJournal replayed = openJournal();
+    Assert.assertEquals(State.UploadedSuccessfully, replayed.replay(WIKI, picture));
+    replayed.record(WIKI, picture, Outcome.Failed, null);
+    Assert.assertEquals(State.FailedUpload, openJournal().replay(WIKI, picture));
+  }
+
+  @Test
+  public void testSkipsRecordOfUnknownOutcome() throws IOException {
+    final Picture other = TestPictures.newPicture(temp, "other.jpg", "other");
+    final FileUploadJournal journal = openJournal();
+    journal.record(WIKI, picture, Outcome.Uploaded, SHA1);
+    final long start = java.nio.file.Files.size(journalFile);
+    journal.record(WIKI, other, Outcome.Uploaded, null);
+    journal.close();
+    // As written by a later version, with an outcome this one doesn't know and a valid checksum.
+    final byte[] bytes = java.nio.file.Files.readAllBytes(journalFile);
+    bytes[bytes.length - 1] = 99;
+    final CRC32 crc = new CRC32();
+    crc.update(bytes, (int) start + 8, bytes.length - (int) start - 8);
+    ByteBuffer.wrap(bytes).putInt((int) start + 4, (int) crc.getValue());
+    java.nio.file.Files.write(journalFile, bytes);
+
+    final FileUploadJournal replayed = openJournal();
+    Assert.assertEquals(State.UploadedSuccessfully, replayed.replay(WIKI, picture));
+    Assert.assertNull(replayed.replay(WIKI, other));
+    replayed.record(WIKI, other, Outcome.Failed, null);
+    Assert.assertEquals(State.FailedUpload, openJournal().replay(WIKI, other));
+  }
+
+  @Test
+  public void testRecognisesTouchedFileBySentHash() {
+    openJournal().record(WIKI, picture, Outcome.Uploaded, SHA1);
+    Assert.assertTrue(picture.getFile().setLastModified(picture.getFile().lastModified() - 60000));
+    Assert.assertEquals(State.UploadedSuccessfully, openJournal().replay(WIKI, picture));
+  }
+
+  @Test
+  public void testForgetsTouchedFileWithoutSentHash() {
+    openJournal().record(WIKI, picture, Outcome.Started, null);
+    Assert.assertTrue(picture.getFile().setLastModified(picture.getFile().lastModified() - 60000));
+    Assert.assertNull(openJournal().replay(WIKI, picture));
+  }
+
+  @Test
+  public void testForgetsChangedFile() throws IOException {
+    openJournal().record(WIKI, picture, Outcome.Uploaded, SHA1);
+    Files.append(" edited", picture.getFile(), Charsets.UTF_8);
+    Assert.assertNull(openJournal().replay(WIKI, picture));
+  }
+}
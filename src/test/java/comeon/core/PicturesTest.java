@@ -48,7 +48,7 @@ public class PicturesTest {
     Files.copy(Resources.newInputStreamSupplier(Resources.getResource("long-category-titles.jpg")), file);
     final Template mockTemplate = Mockito.mock(Template.class);
     Mockito.when(mockTemplate.getTemplateText()).thenReturn("");
-    final PicturesBatch pics = new PicturesBatch(new File[0], mockTemplate, (ExecutorService) null, Sets.newHashSet(new IptcPreProcessor(), new GpsPreProcessor()), new NullMetadataSource());
+    final PicturesBatch pics = new PicturesBatch(new File[0], mockTemplate, (ExecutorService) null, Sets.newHashSet(new IptcPreProcessor(), new GpsPreProcessor()), new NullMetadataSource(), Mockito.mock(MetadataCache.class), Mockito.mock(ThumbnailStore.class));
     this.reader = pics.new PictureReader(file, null);
   }
 
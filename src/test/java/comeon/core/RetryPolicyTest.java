@@ -0,0 +1,49 @@
+package comeon.core;
+
+import java.io.FileNotFoundException;
+import java.net.SocketException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import comeon.mediawiki.FailedUploadException;
+import comeon.mediawiki.HttpStatusException;
+
+public class RetryPolicyTest {
+  private final RetryPolicy policy = new RetryPolicy();
+
+  @Test
+  public void testRetriesTransientFailures() {
+    Assert.assertNotEquals(RetryPolicy.NO_RETRY, policy.getDelay(1, new FailedUploadException("ratelimited", "")));
+    Assert.assertNotEquals(RetryPolicy.NO_RETRY,
+        policy.getDelay(1, new FailedUploadException(new HttpStatusException(502, "Bad Gateway", 0))));
+    Assert.assertNotEquals(RetryPolicy.NO_RETRY,
+        policy.getDelay(1, new FailedUploadException(new SocketException("Connection reset"))));
+  }
+
+  @Test
+  public void testFailsAtOnceOnFatalErrors() {
+    Assert.assertEquals(RetryPolicy.NO_RETRY,
+        policy.getDelay(1, new FailedUploadException("fileexists-no-change", "")));
+    Assert.assertEquals(RetryPolicy.NO_RETRY,
+        policy.getDelay(1, new FailedUploadException(new HttpStatusException(403, "Forbidden", 0))));
+    Assert.assertEquals(RetryPolicy.NO_RETRY, policy.getDelay(1, new FileNotFoundException()));
+  }
+
+  @Test
+  public void testCapsAttempts() {
+    Assert.assertEquals(RetryPolicy.NO_RETRY, policy.getDelay(5, new FailedUploadException("maxlag", "")));
+  }
+
+  @Test
+  public void testHonoursRetryAfter() {
+    Assert.assertTrue(policy.getDelay(1, new FailedUploadException("maxlag", "", 60000)) >= 60000);
+  }
+
+  @Test
+  public void testBacksOffExponentially() {
+    final FailedUploadException cause = new FailedUploadException("ratelimited", "");
+    Assert.assertTrue(policy.getDelay(1, cause) <= 2000);
+    Assert.assertTrue(policy.getDelay(4, cause) >= 8000);
+  }
+}
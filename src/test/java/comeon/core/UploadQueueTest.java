@@ -0,0 +1,113 @@
+package comeon.core;
+
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Strings;
+
+import comeon.model.Picture;
+import comeon.model.TestPictures;
+
+public class UploadQueueTest {
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private Upload newUpload(final String name, final int size) throws IOException {
+    return new Upload(TestPictures.newPicture(temp, name, Strings.repeat("x", size)), size);
+  }
+
+  @Test
+  public void testAppliesPolicyChangesToWaitingUploads() throws Exception {
+    final UploadQueue queue = new UploadQueue(UploadPolicies.Queued);
+    final Upload medium = newUpload("medium.jpg", 20);
+    final Upload small = newUpload("small.jpg", 10);
+    final Upload large = newUpload("large.jpg", 30);
+    queue.offer(medium);
+    queue.offer(small);
+    queue.offer(large);
+    Assert.assertSame(medium, queue.take());
+    queue.setPolicy(UploadPolicies.SmallestFirst);
+    Assert.assertSame(small, queue.take());
+    Assert.assertSame(large, queue.take());
+    Assert.assertNull(queue.poll());
+  }
+
+  @Test
+  public void testInterleavesLargeAndSmallUploads() throws Exception {
+    final UploadQueue queue = new UploadQueue(UploadPolicies.Interleaved);
+    final Upload first = newUpload("1.jpg", 10);
+    final Upload second = newUpload("2.jpg", 20);
+    final Upload third = newUpload("3.jpg", 30);
+    final Upload fourth = newUpload("4.jpg", 40);
+    queue.offer(first);
+    queue.offer(second);
+    queue.offer(third);
+    queue.offer(fourth);
+    Assert.assertSame(fourth, queue.take());
+    Assert.assertSame(first, queue.take());
+    Assert.assertSame(third, queue.take());
+    Assert.assertSame(second, queue.take());
+  }
+
+  @Test
+  public void testKeepsInterleavingUploadsQueuedBetweenTakes() throws Exception {
+    final UploadQueue queue = new UploadQueue(UploadPolicies.Interleaved);
+    final Upload small = newUpload("small.jpg", 10);
+    final Upload large = newUpload("large.jpg", 40);
+    final Upload medium = newUpload("medium.jpg", 20);
+    final Upload larger = newUpload("larger.jpg", 50);
+    final Upload tiny = newUpload("tiny.jpg", 5);
+    queue.offer(small);
+    queue.offer(large);
+    Assert.assertSame(large, queue.take());
+    queue.offer(medium);
+    Assert.assertSame(small, queue.take());
+    queue.offer(larger);
+    queue.offer(tiny);
+    Assert.assertSame(larger, queue.take());
+    Assert.assertSame(tiny, queue.take());
+    Assert.assertSame(medium, queue.take());
+  }
+
+  @Test
+  public void testPinnedUploadGoesFirst() throws Exception {
+    final UploadQueue queue = new UploadQueue(UploadPolicies.SmallestFirst);
+    final Upload small = newUpload("small.jpg", 10);
+    final Upload large = newUpload("large.jpg", 30);
+    queue.offer(small);
+    queue.offer(large);
+    large.getPicture().setPriority(queue.getHighestPriority() + 1);
+    Assert.assertEquals(1, queue.getHighestPriority());
+    Assert.assertSame(large, queue.take());
+    Assert.assertSame(small, queue.take());
+  }
+
+  private static final class Upload implements Runnable, UploadQueue.Item {
+    private final Picture picture;
+
+    private final long size;
+
+    Upload(final Picture picture, final long size) {
+      this.picture = picture;
+      this.size = size;
+    }
+
+    @Override
+    public Picture getPicture() {
+      return picture;
+    }
+
+    @Override
+    public long getSize() {
+      return size;
+    }
+
+    @Override
+    public void run() {
+    }
+  }
+}
@@ -0,0 +1,238 @@
+package comeon.core;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Strings;
+import com.google.common.base.Ticker;
+import com.google.common.eventbus.EventBus;
+
+import comeon.mediawiki.FailedUploadException;
+import comeon.mediawiki.HttpStatusException;
+import comeon.model.Picture;
+import comeon.model.TestPictures;
+
+public class UploadSchedulerTest {
+  private static final long MILLISECOND = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  private static final long MEGABYTE = 1024 * 1024;
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private final List<String> started = Collections.synchronizedList(new ArrayList<String>());
+
+  private final List<CountDownLatch> gates = new ArrayList<>();
+
+  @After
+  public void openGates() {
+    for (final CountDownLatch gate : gates) {
+      gate.countDown();
+    }
+  }
+
+  private Picture newPicture(final String name, final int size) throws IOException {
+    return TestPictures.newPicture(temp, name, Strings.repeat("x", size));
+  }
+
+  /**
+   * Occupies an upload thread until the returned gate is opened.
+   */
+  private CountDownLatch block(final UploadScheduler scheduler) throws Exception {
+    final CountDownLatch running = new CountDownLatch(1);
+    final CountDownLatch gate = new CountDownLatch(1);
+    gates.add(gate);
+    scheduler.submit(newPicture("blocker" + gates.size() + ".jpg", 0), new Callable<Void>() {
+      @Override
+      public Void call() throws InterruptedException {
+        running.countDown();
+        gate.await();
+        return null;
+      }
+    });
+    Assert.assertTrue(running.await(10, TimeUnit.SECONDS));
+    return gate;
+  }
+
+  private Callable<Void> record(final String name, final CountDownLatch done) {
+    return new Callable<Void>() {
+      @Override
+      public Void call() {
+        started.add(name);
+        done.countDown();
+        return null;
+      }
+    };
+  }
+
+  private static UploadScheduler newScheduler(final Ticker ticker) {
+    return new UploadScheduler(new EventBus(), UploadPolicies.Queued, ticker);
+  }
+
+  /**
+   * Completes a round of uploads of a megabyte each.
+   */
+  private static void round(final UploadScheduler scheduler, final int uploads, final long elapsedNanos) {
+    for (int i = 0; i < uploads; i++) {
+      scheduler.uploadSucceeded(MEGABYTE, elapsedNanos);
+    }
+  }
+
+  private static void raiseToFour(final UploadScheduler scheduler, final FakeTicker ticker) {
+    ticker.advance(SECOND);
+    round(scheduler, 2, MILLISECOND);
+    ticker.advance(SECOND);
+    round(scheduler, 3, MILLISECOND);
+    Assert.assertEquals(4, scheduler.getLimit());
+  }
+
+  @Test
+  public void testStartsUploadsInPolicyOrder() throws Exception {
+    final UploadScheduler scheduler = new UploadScheduler(new EventBus(), UploadPolicies.SmallestFirst);
+    final CountDownLatch first = block(scheduler);
+    block(scheduler);
+    final CountDownLatch done = new CountDownLatch(3);
+    scheduler.submit(newPicture("medium.jpg", 20), record("medium", done));
+    scheduler.submit(newPicture("large.jpg", 30), record("large", done));
+    scheduler.submit(newPicture("small.jpg", 10), record("small", done));
+    first.countDown();
+    Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+    Assert.assertEquals(Arrays.asList("small", "medium", "large"), started);
+  }
+
+  @Test
+  public void testStartsPrioritizedUploadFirst() throws Exception {
+    final UploadScheduler scheduler = new UploadScheduler(new EventBus(), UploadPolicies.SmallestFirst);
+    final CountDownLatch first = block(scheduler);
+    block(scheduler);
+    final CountDownLatch done = new CountDownLatch(2);
+    final Picture large = newPicture("large.jpg", 30);
+    scheduler.submit(newPicture("small.jpg", 10), record("small", done));
+    scheduler.submit(large, record("large", done));
+    scheduler.prioritize(large);
+    first.countDown();
+    Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+    Assert.assertEquals(Arrays.asList("large", "small"), started);
+  }
+
+  @Test
+  public void testProbesLargerLimitAfterEachRound() {
+    final FakeTicker ticker = new FakeTicker();
+    final UploadScheduler scheduler = newScheduler(ticker);
+    Assert.assertEquals(2, scheduler.getLimit());
+    Assert.assertEquals(UploadScheduler.Decision.Initial, scheduler.getLastDecision());
+    ticker.advance(SECOND);
+    scheduler.uploadSucceeded(MEGABYTE, MILLISECOND);
+    // A round lasts as many uploads as the limit.
+    Assert.assertEquals(2, scheduler.getLimit());
+    scheduler.uploadSucceeded(MEGABYTE, MILLISECOND);
+    Assert.assertEquals(3, scheduler.getLimit());
+    Assert.assertEquals(UploadScheduler.Decision.Increase, scheduler.getLastDecision());
+    ticker.advance(SECOND);
+    round(scheduler, 3, MILLISECOND);
+    Assert.assertEquals(4, scheduler.getLimit());
+  }
+
+  @Test
+  public void testStepsBackWithoutThroughputGain() {
+    final FakeTicker ticker = new FakeTicker();
+    final UploadScheduler scheduler = newScheduler(ticker);
+    ticker.advance(SECOND);
+    round(scheduler, 2, MILLISECOND);
+    Assert.assertEquals(3, scheduler.getLimit());
+    // As many bytes per second as with one upload less.
+    ticker.advance(SECOND * 3 / 2);
+    round(scheduler, 3, MILLISECOND);
+    Assert.assertEquals(2, scheduler.getLimit());
+    Assert.assertEquals(UploadScheduler.Decision.Saturated, scheduler.getLastDecision());
+  }
+
+  @Test
+  public void testStepsBackWhenLatencyGrows() {
+    final FakeTicker ticker = new FakeTicker();
+    final UploadScheduler scheduler = newScheduler(ticker);
+    ticker.advance(SECOND);
+    round(scheduler, 2, MILLISECOND);
+    // Twice as fast, but each upload takes four times as long.
+    ticker.advance(SECOND * 3 / 4);
+    round(scheduler, 3, 4 * MILLISECOND);
+    Assert.assertEquals(2, scheduler.getLimit());
+    Assert.assertEquals(UploadScheduler.Decision.Saturated, scheduler.getLastDecision());
+  }
+
+  @Test
+  public void testHoldsSaturatedLimitBeforeProbingAgain() {
+    final FakeTicker ticker = new FakeTicker();
+    final UploadScheduler scheduler = newScheduler(ticker);
+    ticker.advance(SECOND);
+    round(scheduler, 2, MILLISECOND);
+    ticker.advance(SECOND * 3 / 2);
+    round(scheduler, 3, MILLISECOND);
+    Assert.assertEquals(2, scheduler.getLimit());
+    for (int i = 0; i < 4; i++) {
+      ticker.advance(SECOND);
+      round(scheduler, 2, MILLISECOND);
+      Assert.assertEquals(2, scheduler.getLimit());
+    }
+    ticker.advance(SECOND);
+    round(scheduler, 2, MILLISECOND);
+    Assert.assertEquals(3, scheduler.getLimit());
+    Assert.assertEquals(UploadScheduler.Decision.Increase, scheduler.getLastDecision());
+  }
+
+  @Test
+  public void testHalvesLimitWhenThrottled() {
+    final FakeTicker ticker = new FakeTicker();
+    final UploadScheduler scheduler = newScheduler(ticker);
+    raiseToFour(scheduler, ticker);
+    scheduler.uploadFailed(new FailedUploadException(new IOException("Connection reset")));
+    Assert.assertEquals(4, scheduler.getLimit());
+    scheduler.uploadFailed(new FailedUploadException("ratelimited", "Slow down"));
+    Assert.assertEquals(2, scheduler.getLimit());
+    Assert.assertEquals(UploadScheduler.Decision.Throttled, scheduler.getLastDecision());
+  }
+
+  @Test
+  public void testReactsToThrottlingOnceInFlightUploadsDrained() throws Exception {
+    final FakeTicker ticker = new FakeTicker();
+    final UploadScheduler scheduler = newScheduler(ticker);
+    raiseToFour(scheduler, ticker);
+    block(scheduler);
+    block(scheduler);
+    final Exception throttled = new HttpStatusException(429, "Too Many Requests", 0);
+    scheduler.uploadFailed(throttled);
+    Assert.assertEquals(2, scheduler.getLimit());
+    // Both uploads in flight were sent before the wiki throttled us.
+    scheduler.uploadFailed(throttled);
+    Assert.assertEquals(2, scheduler.getLimit());
+    scheduler.uploadFailed(throttled);
+    Assert.assertEquals(1, scheduler.getLimit());
+  }
+
+  private static final class FakeTicker extends Ticker {
+    private long nanos;
+
+    void advance(final long elapsedNanos) {
+      nanos += elapsedNanos;
+    }
+
+    @Override
+    public long read() {
+      return nanos;
+    }
+  }
+}
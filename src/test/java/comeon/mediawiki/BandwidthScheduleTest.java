@@ -0,0 +1,35 @@
+package comeon.mediawiki;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BandwidthScheduleTest {
+  @Test
+  public void testAppliesFirstMatchingWindow() {
+    final BandwidthSchedule schedule = BandwidthSchedule.parse("09:00-18:00=8; 08:00-20:00=20");
+    Assert.assertEquals(1000000, schedule.getBytesPerSecond(9 * 60));
+    Assert.assertEquals(2500000, schedule.getBytesPerSecond(8 * 60 + 30));
+    Assert.assertEquals(2500000, schedule.getBytesPerSecond(18 * 60));
+    Assert.assertEquals(0, schedule.getBytesPerSecond(21 * 60));
+  }
+
+  @Test
+  public void testWindowMaySpanMidnight() {
+    final BandwidthSchedule schedule = BandwidthSchedule.parse("22:00-06:00=0.5");
+    Assert.assertEquals(62500, schedule.getBytesPerSecond(23 * 60));
+    Assert.assertEquals(62500, schedule.getBytesPerSecond(5 * 60 + 59));
+    Assert.assertEquals(0, schedule.getBytesPerSecond(6 * 60));
+  }
+
+  @Test
+  public void testWritesWhatItParses() {
+    Assert.assertEquals("09:00-18:00=8; 22:00-06:00=0.5",
+        BandwidthSchedule.parse(" 9:00 - 18:00 = 8 ;22:00-06:00=0.5;").toString());
+    Assert.assertSame(BandwidthSchedule.UNLIMITED, BandwidthSchedule.parse(" "));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRejectsInvalidTime() {
+    BandwidthSchedule.parse("09:00-25:00=8");
+  }
+}
@@ -0,0 +1,210 @@
+package comeon.mediawiki;
+
+import in.yuvi.http.fluent.ProgressListener;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class ChunkedUploadTest {
+  private static final String FILE_KEY = "stub-key";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private HttpServer server;
+
+  private StubApi api;
+
+  private String apiUrl;
+
+  @Before
+  public void setUp() throws IOException {
+    this.api = new StubApi();
+    this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/w/api.php", api);
+    server.start();
+    this.apiUrl = "http://localhost:" + server.getAddress().getPort() + "/w/api.php";
+  }
+
+  @After
+  public void tearDown() {
+    server.stop(0);
+  }
+
+  @Test
+  public void testResumesFromLastAcknowledgedOffset() throws Exception {
+    testResumesFromLastAcknowledgedOffset(new BlockingApiClient(new DefaultHttpClient(), apiUrl));
+  }
+
+  @Test
+  public void testResumesFromLastAcknowledgedOffsetWithoutBlocking() throws Exception {
+    final CloseableHttpAsyncClient client = HttpAsyncClients.createDefault();
+    client.start();
+    try {
+      testResumesFromLastAcknowledgedOffset(new AsyncApiClient(client, apiUrl));
+    } finally {
+      client.close();
+    }
+  }
+
+  private void testResumesFromLastAcknowledgedOffset(final ApiClient client) throws Exception {
+    final byte[] content = new byte[10000];
+    new Random(42).nextBytes(content);
+    final File file = folder.newFile("picture.jpg");
+    Files.write(content, file);
+    api.failRequest(2);
+    final long[] progress = new long[1];
+
+    final ContentHasher hasher = new ContentHasher();
+    final ChunkedUpload upload = new ChunkedUpload(client, file, "picture.jpg", 4096, hasher,
+        new BandwidthLimiter(BandwidthSchedule.UNLIMITED));
+    upload.stash("token", new ProgressListener() {
+      @Override
+      public void onProgress(final long transferred, final long total) {
+        progress[0] = transferred;
+      }
+    });
+    Assert.assertArrayEquals(content, api.getStashed());
+    Assert.assertEquals(Arrays.asList(0L, 4096L, 4096L, 8192L), api.getOffsets());
+    Assert.assertEquals(FILE_KEY, upload.getFileKey());
+    Assert.assertEquals(content.length, progress[0]);
+    Assert.assertEquals(Hashing.sha1().hashBytes(content).toString(), hasher.getHash());
+
+    upload.commit("token", "text", "comment", true);
+    Assert.assertEquals(FILE_KEY, api.getCommittedFileKey());
+  }
+
+  /**
+   * Just enough of the upload API to stash chunks and publish the stashed file.
+   */
+  private static final class StubApi implements HttpHandler {
+    private final List<Long> offsets = new ArrayList<>();
+
+    private byte[] stashed = new byte[0];
+
+    private String committedFileKey;
+
+    private int requests = 0;
+
+    private int failingRequest = -1;
+
+    void failRequest(final int request) {
+      this.failingRequest = request;
+    }
+
+    List<Long> getOffsets() {
+      return offsets;
+    }
+
+    byte[] getStashed() {
+      return stashed;
+    }
+
+    String getCommittedFileKey() {
+      return committedFileKey;
+    }
+
+    @Override
+    public void handle(final HttpExchange exchange) throws IOException {
+      requests++;
+      final byte[] body = ByteStreams.toByteArray(exchange.getRequestBody());
+      final String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+      final String response;
+      if (contentType.startsWith("multipart/form-data")) {
+        final Map<String, byte[]> parts = parseMultipart(body, contentType.substring(contentType.indexOf("boundary=")
+            + "boundary=".length()));
+        final long offset = Long.parseLong(new String(parts.get("offset"), Charsets.UTF_8));
+        offsets.add(offset);
+        if (requests == failingRequest) {
+          respond(exchange, 503, "Service Unavailable");
+          return;
+        }
+        Assert.assertEquals(stashed.length, offset);
+        final byte[] chunk = parts.get("chunk");
+        final byte[] newStashed = Arrays.copyOf(stashed, stashed.length + chunk.length);
+        System.arraycopy(chunk, 0, newStashed, stashed.length, chunk.length);
+        stashed = newStashed;
+        final long size = Long.parseLong(new String(parts.get("filesize"), Charsets.UTF_8));
+        if (stashed.length < size) {
+          response = "<api><upload result=\"Continue\" offset=\"" + stashed.length + "\" filekey=\"" + FILE_KEY
+              + "\"/></api>";
+        } else {
+          response = "<api><upload result=\"Success\" filekey=\"" + FILE_KEY + "\"/></api>";
+        }
+      } else {
+        final Map<String, String> parameters = new HashMap<>();
+        for (final String parameter : new String(body, Charsets.UTF_8).split("&")) {
+          final String[] pair = parameter.split("=", 2);
+          parameters.put(pair[0], URLDecoder.decode(pair[1], "UTF-8"));
+        }
+        committedFileKey = parameters.get("filekey");
+        response = "<api><upload result=\"Success\" filename=\"" + parameters.get("filename") + "\"/></api>";
+      }
+      respond(exchange, 200, response);
+    }
+
+    private static void respond(final HttpExchange exchange, final int status, final String response)
+        throws IOException {
+      final byte[] bytes = response.getBytes(Charsets.UTF_8);
+      exchange.sendResponseHeaders(status, bytes.length);
+      try (final OutputStream out = exchange.getResponseBody()) {
+        out.write(bytes);
+      }
+    }
+
+    private static Map<String, byte[]> parseMultipart(final byte[] body, final String boundary) {
+      final Map<String, byte[]> parts = new HashMap<>();
+      final byte[] delimiter = ("--" + boundary).getBytes(Charsets.UTF_8);
+      int start = indexOf(body, delimiter, 0) + delimiter.length + 2;
+      int end;
+      while ((end = indexOf(body, delimiter, start)) >= 0) {
+        final int headersEnd = indexOf(body, "\r\n\r\n".getBytes(Charsets.UTF_8), start);
+        final String headers = new String(body, start, headersEnd - start, Charsets.UTF_8);
+        final int nameStart = headers.indexOf("name=\"") + "name=\"".length();
+        final String name = headers.substring(nameStart, headers.indexOf('"', nameStart));
+        parts.put(name, Arrays.copyOfRange(body, headersEnd + 4, end - 2));
+        start = end + delimiter.length + 2;
+      }
+      return parts;
+    }
+
+    private static int indexOf(final byte[] array, final byte[] target, final int from) {
+      outer: for (int i = from; i <= array.length - target.length; i++) {
+        for (int j = 0; j < target.length; j++) {
+          if (array[i + j] != target[j]) {
+            continue outer;
+          }
+        }
+        return i;
+      }
+      return -1;
+    }
+  }
+}
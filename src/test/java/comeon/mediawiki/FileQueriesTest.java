@@ -0,0 +1,50 @@
+package comeon.mediawiki;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.Collections;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.apache.http.HttpEntity;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.w3c.dom.Document;
+
+import com.google.common.base.Charsets;
+
+public class FileQueriesTest {
+  private static Document parse(final String xml) throws Exception {
+    return DocumentBuilderFactory.newInstance().newDocumentBuilder()
+        .parse(new ByteArrayInputStream(xml.getBytes(Charsets.UTF_8)));
+  }
+
+  @Test
+  public void testFindsExistingFilesUnderNormalizedTitles() throws Exception {
+    final ApiClient client = Mockito.mock(ApiClient.class);
+    Mockito.when(client.post(Mockito.any(HttpEntity.class))).thenReturn(
+        parse("<api><query><normalized><n from=\"File:taken_picture.jpg\" to=\"File:Taken picture.jpg\"/>"
+            + "</normalized><pages><page ns=\"6\" title=\"File:Free.jpg\" missing=\"\"/>"
+            + "<page ns=\"6\" title=\"File:Taken picture.jpg\" pageid=\"42\"/></pages></query></api>"));
+
+    Assert.assertEquals(Collections.singleton("taken_picture.jpg"),
+        new FileQueries(client).findExisting(Arrays.asList("taken_picture.jpg", "Free.jpg")));
+  }
+
+  @Test
+  public void testReadsUploadLimits() throws Exception {
+    final ApiClient client = Mockito.mock(ApiClient.class);
+    Mockito.when(client.post(Mockito.any(HttpEntity.class))).thenReturn(
+        parse("<api><query><general maxuploadsize=\"4294967296\" minuploadchunksize=\"1024\"/>"
+            + "<fileextensions><fe ext=\"jpg\"/><fe ext=\"png\"/></fileextensions></query></api>"));
+
+    final SiteInfo siteInfo = new FileQueries(client).getSiteInfo();
+    Assert.assertTrue(siteInfo.allowsSize(4294967296L));
+    Assert.assertFalse(siteInfo.allowsSize(4294967297L));
+    Assert.assertTrue(siteInfo.allowsExtension("Picture.JPG"));
+    Assert.assertFalse(siteInfo.allowsExtension("picture.exe"));
+    Assert.assertEquals(4096, siteInfo.getChunkSize(4096));
+    Assert.assertEquals(1024, siteInfo.getChunkSize(512));
+  }
+}
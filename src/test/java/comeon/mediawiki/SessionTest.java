@@ -0,0 +1,162 @@
+package comeon.mediawiki;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mediawiki.api.MWApi;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.w3c.dom.Document;
+
+import com.google.common.base.Charsets;
+
+import comeon.model.Picture;
+import comeon.model.TestPictures;
+import comeon.model.User;
+import comeon.model.Wiki;
+
+public class SessionTest {
+  private static final int THREADS = 8;
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private final AtomicInteger logins = new AtomicInteger();
+
+  private final AtomicInteger tokenFetches = new AtomicInteger();
+
+  private ExecutorService pool;
+
+  private MWApi api;
+
+  private Session session;
+
+  private static Document parse(final String xml) throws Exception {
+    return DocumentBuilderFactory.newInstance().newDocumentBuilder()
+        .parse(new ByteArrayInputStream(xml.getBytes(Charsets.UTF_8)));
+  }
+
+  @Before
+  public void createSession() throws Exception {
+    this.pool = Executors.newFixedThreadPool(THREADS);
+    this.api = Mockito.mock(MWApi.class, Mockito.RETURNS_DEEP_STUBS);
+    Mockito.when(api.login("login", "password")).thenAnswer(new Answer<String>() {
+      @Override
+      public String answer(final InvocationOnMock invocation) throws InterruptedException {
+        logins.incrementAndGet();
+        // Leaves the other threads time to find the session closed.
+        Thread.sleep(50);
+        api.isLoggedIn = true;
+        return "Success";
+      }
+    });
+    Mockito.when(api.action("tokens").param("type", "edit").get().getString("/api/tokens/@edittoken")).thenAnswer(
+        new Answer<String>() {
+          @Override
+          public String answer(final InvocationOnMock invocation) throws InterruptedException {
+            final int fetch = tokenFetches.incrementAndGet();
+            Thread.sleep(50);
+            return "token-" + fetch;
+          }
+        });
+    this.session = new Session(new Wiki("test", "https://test.wikipedia.org/w/api.php", new User("login",
+        "password", "Tester")), api);
+  }
+
+  @After
+  public void shutdownPool() {
+    pool.shutdownNow();
+  }
+
+  /**
+   * Runs the task on every thread at once.
+   */
+  private <T> List<T> runConcurrently(final Callable<T> task) throws Exception {
+    final CountDownLatch start = new CountDownLatch(1);
+    final List<Future<T>> futures = new ArrayList<>(THREADS);
+    for (int i = 0; i < THREADS; i++) {
+      futures.add(pool.submit(new Callable<T>() {
+        @Override
+        public T call() throws Exception {
+          start.await();
+          return task.call();
+        }
+      }));
+    }
+    start.countDown();
+    final List<T> results = new ArrayList<>(THREADS);
+    for (final Future<T> future : futures) {
+      results.add(future.get(10, TimeUnit.SECONDS));
+    }
+    return results;
+  }
+
+  @Test
+  public void testLogsInAndGetsTokenOnce() throws Exception {
+    final List<String> tokens = runConcurrently(new Callable<String>() {
+      @Override
+      public String call() throws Exception {
+        return session.getEditToken();
+      }
+    });
+    for (final String token : tokens) {
+      Assert.assertEquals("token-1", token);
+    }
+    Assert.assertEquals(1, logins.get());
+    Assert.assertEquals(1, tokenFetches.get());
+    Assert.assertTrue(session.isLoggedIn());
+  }
+
+  @Test
+  public void testRenewsRejectedTokenOnce() throws Exception {
+    final Picture picture = TestPictures.newPicture(temp, "picture.jpg", "picture");
+    final CyclicBarrier rejected = new CyclicBarrier(THREADS);
+    final ApiClient client = Mockito.mock(ApiClient.class);
+    Mockito.when(client.post(Mockito.any(HttpEntity.class))).thenAnswer(new Answer<Document>() {
+      @Override
+      public Document answer(final InvocationOnMock invocation) throws Exception {
+        final HttpEntity entity = (HttpEntity) invocation.getArguments()[0];
+        if (!(entity instanceof MultipartBody)) {
+          // Verification, the wiki doesn't tell the SHA-1.
+          return parse("<api/>");
+        } else if (EntityUtils.toString(entity).contains("token-1")) {
+          // Every upload is rejected before any renews the token.
+          rejected.await(10, TimeUnit.SECONDS);
+          return parse("<api><error code=\"badtoken\" info=\"Invalid token\"/></api>");
+        } else {
+          return parse("<api><upload result=\"Success\" filename=\"Picture.jpg\"/></api>");
+        }
+      }
+    });
+    final FileUpload upload = new FileUpload(client, 0, new BandwidthLimiter(BandwidthSchedule.UNLIMITED));
+
+    runConcurrently(new Callable<String>() {
+      @Override
+      public String call() throws Exception {
+        return session.upload(upload, picture, null, "comment", null);
+      }
+    });
+    Assert.assertEquals(1, logins.get());
+    Assert.assertEquals(2, tokenFetches.get());
+  }
+}
@@ -0,0 +1,36 @@
+package comeon.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+/**
+ * Pictures for tests, with an empty template and no thumbnail.
+ */
+public final class TestPictures {
+  private TestPictures() {
+  }
+
+  public static Picture newPicture(final File file) {
+    final Template template = Mockito.mock(Template.class);
+    Mockito.when(template.getTemplateText()).thenReturn("");
+    return new Picture(file, file.getName(), template, Collections.<String, Object> emptyMap(),
+        Mockito.mock(Thumbnail.class));
+  }
+
+  /**
+   * @return a picture of a new file with this content in this folder.
+   */
+  public static Picture newPicture(final TemporaryFolder folder, final String name, final String content)
+      throws IOException {
+    final File file = folder.newFile(name);
+    Files.write(content, file, Charsets.UTF_8);
+    return newPicture(file);
+  }
+}